@@ -0,0 +1,179 @@
+package Experiment;
+
+import JISA.Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Chooses which gate voltages to use for a transfer curve, concentrating points where the curve changes fastest (ie
+ * around turn-on) rather than spacing them evenly.
+ * <p>
+ * Starts by measuring a coarse, evenly-spaced set of gate voltages. Then, in rounds, any interval between neighbouring
+ * points across which log10|Id| or sqrt|Id| changes by more than the given tolerance is bisected and the new midpoints
+ * are measured. This repeats until every interval is within tolerance or the point budget is used up. Each round is
+ * measured in sweep order. The resulting set of voltages is then used for the real forward and reverse sweeps.
+ */
+public class AdaptiveGateSampler {
+
+    private static final double CURRENT_FLOOR = 1e-15; // Smallest |Id| to take the log of [A]
+    private static final int    MIN_DIVISIONS = 1000;  // Intervals narrower than (max - min) / this are not divided
+
+    /**
+     * Measures the drain current at each of a monotonic series of gate voltages.
+     */
+    public interface Measurement {
+        double[] measure(double[] gateVoltages) throws Exception;
+    }
+
+    private final double start;
+    private final double stop;
+    private final int    coarseSteps;
+    private final int    maxPoints;
+    private final double logTolerance;
+    private final double sqrtTolerance;
+    private       int    readings = 0;
+
+    /**
+     * Creates a sampler for gate voltages between start and stop.
+     *
+     * @param start         First gate voltage in the forward sweep [V]
+     * @param stop          Last gate voltage in the forward sweep [V]
+     * @param coarseSteps   Number of evenly-spaced points to start with
+     * @param maxPoints     Maximum number of points to end up with
+     * @param logTolerance  Largest acceptable change in log10|Id| between neighbouring points [decades]
+     * @param sqrtTolerance Largest acceptable change in sqrt|Id| between neighbouring points, as a fraction of its range
+     */
+    public AdaptiveGateSampler(double start, double stop, int coarseSteps, int maxPoints, double logTolerance, double sqrtTolerance) {
+        this.start         = start;
+        this.stop          = stop;
+        this.coarseSteps   = Math.max(2, coarseSteps);
+        this.maxPoints     = Math.max(this.coarseSteps, maxPoints);
+        this.logTolerance  = logTolerance;
+        this.sqrtTolerance = sqrtTolerance;
+    }
+
+    /**
+     * Determines the gate voltages to use, measuring as it goes.
+     *
+     * @param measurement Used to measure the drain current at a set of gate voltages
+     *
+     * @return Gate voltages for the forward sweep, in sweep order
+     *
+     * @throws Exception Upon something going wrong whilst measuring
+     */
+    public double[] plan(Measurement measurement) throws Exception {
+
+        // Keep everything sorted in sweep order, whether that is increasing or decreasing voltage
+        Comparator<Double>      order    = start <= stop ? Comparator.naturalOrder() : Comparator.reverseOrder();
+        TreeMap<Double, Double> measured = new TreeMap<>(order);
+        double                  minWidth = Math.abs(stop - start) / MIN_DIVISIONS;
+
+        readings = 0;
+        measure(measurement, Util.makeLinearArray(start, stop, coarseSteps), measured);
+
+        while (measured.size() < maxPoints) {
+
+            double         sqrtRange = sqrtRange(measured);
+            List<double[]> needed    = new ArrayList<>(); // {midpoint, how far out of tolerance}
+            Double         previous  = null;
+
+            for (Double voltage : measured.keySet()) {
+
+                if (previous != null && Math.abs(voltage - previous) > minWidth) {
+
+                    double a     = measured.get(previous);
+                    double b     = measured.get(voltage);
+                    double dLog  = Math.abs(log(a) - log(b)) / logTolerance;
+                    double dSqrt = sqrtRange > 0 ? Math.abs(Math.sqrt(Math.abs(a)) - Math.sqrt(Math.abs(b))) / sqrtRange / sqrtTolerance : 0.0;
+                    double need  = Math.max(dLog, dSqrt);
+
+                    if (need > 1.0) {
+                        needed.add(new double[]{(previous + voltage) / 2.0, need});
+                    }
+
+                }
+
+                previous = voltage;
+
+            }
+
+            if (needed.isEmpty()) {
+                break;
+            }
+
+            // If we can't afford to divide every interval, divide the worst ones
+            int budget = maxPoints - measured.size();
+
+            if (needed.size() > budget) {
+                needed.sort((x, y) -> Double.compare(y[1], x[1]));
+                needed = needed.subList(0, budget);
+            }
+
+            double[] round = needed.stream().mapToDouble(p -> p[0]).sorted().toArray();
+
+            if (start > stop) {
+                reverse(round);
+            }
+
+            measure(measurement, round, measured);
+
+        }
+
+        return measured.keySet().stream().mapToDouble(Double::doubleValue).toArray();
+
+    }
+
+    /**
+     * Returns the number of readings taken by the last call to plan().
+     *
+     * @return Number of readings
+     */
+    public int getReadings() {
+        return readings;
+    }
+
+    private void measure(Measurement measurement, double[] voltages, TreeMap<Double, Double> measured) throws Exception {
+
+        double[] currents = measurement.measure(voltages);
+
+        for (int i = 0; i < voltages.length; i++) {
+            measured.put(voltages[i], currents[i]);
+        }
+
+        readings += voltages.length;
+
+    }
+
+    private static double sqrtRange(TreeMap<Double, Double> measured) {
+
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (double current : measured.values()) {
+            double root = Math.sqrt(Math.abs(current));
+            min = Math.min(min, root);
+            max = Math.max(max, root);
+        }
+
+        return max - min;
+
+    }
+
+    private static double log(double current) {
+        return Math.log10(Math.max(CURRENT_FLOOR, Math.abs(current)));
+    }
+
+    private static void reverse(double[] array) {
+
+        for (int i = 0, j = array.length - 1; i < j; i++, j--) {
+            double temp = array[i];
+            array[i] = array[j];
+            array[j] = temp;
+        }
+
+    }
+
+}
@@ -0,0 +1,598 @@
+package Experiment;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Analyses a directory tree of transfer and output curve CSV files (as written by ResultWriter or ResultList.output(...))
+ * in parallel, writing the figures of merit of each to one summary CSV file. Can be started directly
+ * (java Experiment.BatchAnalysis [directory] [summary file] [options]) or via Main with --analyse.
+ * <p>
+ * Files are split between the threads of a fork/join pool, so that threads that finish their share early take work
+ * from the others. Each file is parsed as a stream of bytes, keeping only the SD voltage, gate voltage, drain current
+ * and leakage columns (others are skipped without being parsed). Whether a file is a transfer or output curve is worked
+ * out from which voltage changes between its first two rows. Bias stress logs (with a "Time" column) and the transfer
+ * sweeps taken during them (with a "Stress Time" column) are recognised from their headers instead.
+ * <p>
+ * For a transfer curve, the saturation mobility, threshold voltage, subthreshold swing and on/off ratio are taken from
+ * the forward sweep at the largest |SD voltage|, and the linear mobility from the forward sweep at the smallest (see
+ * ParameterExtractor). Output curves and bias stress files just get the largest drain and leakage currents.
+ */
+public class BatchAnalysis {
+
+    public static final String[] COLUMNS = {
+            "File", "Type", "Rows", "Sat. Mobility [cm^2/Vs]", "Lin. Mobility [cm^2/Vs]", "Threshold [V]",
+            "Subthreshold Swing [V/dec]", "On/Off", "Max Drain Current [A]", "Max Leakage [A]"
+    };
+
+    private static final int    FILES_PER_TASK = 4;     // Files to analyse per task before it stops splitting
+    private static final int    READ_BUFFER    = 65536; // [bytes]
+    private static final int    MAX_FIELD      = 64;    // Longest number to expect in a file [characters]
+    private static final String EXTENSION      = ".csv";
+
+    // Where each column we need is kept in the parsed rows
+    private static final int SD      = 0;
+    private static final int GATE    = 1;
+    private static final int DRAIN   = 2;
+    private static final int LEAKAGE = 3;
+
+    // Columns that mark a bias stress file, skipped (like any other column with a negative place) when parsing
+    private static final int TIME        = -2;
+    private static final int STRESS_TIME = -3;
+
+    private final double width;
+    private final double length;
+    private final double capacitance;
+
+    /**
+     * Figures of merit of one file, or why it could not be analysed.
+     */
+    public static class Result {
+
+        public final Path     file;
+        public final String   type;
+        public final int      rows;
+        public final double[] figures;   // Sat. mobility, lin. mobility, threshold, swing, on/off, max Id, max Ig
+        public final long     bytes;
+        public final String   error;
+
+        Result(Path file, String type, int rows, double[] figures, long bytes, String error) {
+            this.file    = file;
+            this.type    = type;
+            this.rows    = rows;
+            this.figures = figures;
+            this.bytes   = bytes;
+            this.error   = error;
+        }
+
+    }
+
+    /**
+     * Creates an analysis for devices of the given geometry.
+     *
+     * @param width       Channel width [m]
+     * @param length      Channel length [m]
+     * @param capacitance Gate capacitance per unit area [F/m^2]
+     */
+    public BatchAnalysis(double width, double length, double capacitance) {
+        this.width       = width;
+        this.length      = length;
+        this.capacitance = capacitance;
+    }
+
+    /**
+     * Finds every CSV file under the given directory, in a fixed (sorted) order.
+     *
+     * @param directory Directory to search
+     *
+     * @return Paths of the files found
+     *
+     * @throws IOException Upon the directory not being readable
+     */
+    public static List<Path> find(Path directory) throws IOException {
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().toLowerCase().endsWith(EXTENSION))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+
+    }
+
+    /**
+     * Analyses the given files on the given pool, returning the results in the same order as the files.
+     *
+     * @param files Files to analyse
+     * @param pool  Fork/join pool to analyse them on
+     *
+     * @return Result for each file
+     */
+    public Result[] analyse(List<Path> files, ForkJoinPool pool) {
+
+        Result[] results = new Result[files.size()];
+        pool.invoke(new Task(files, results, 0, files.size()));
+        return results;
+
+    }
+
+    /**
+     * Analyses a single file, catching anything that goes wrong so that one bad file does not stop the rest.
+     *
+     * @param file File to analyse
+     *
+     * @return Result
+     */
+    public Result analyse(Path file) {
+
+        long bytes = 0;
+
+        try {
+
+            bytes = Files.size(file);
+
+            List<double[]> rows   = new ArrayList<>();
+            String         stress = parse(file, rows);
+
+            if (rows.size() < 2) {
+                return new Result(file, "empty", rows.size(), null, bytes, null);
+            }
+
+            double maxDrain   = 0.0;
+            double maxLeakage = 0.0;
+
+            for (double[] row : rows) {
+                maxDrain   = Math.max(maxDrain, Math.abs(row[DRAIN]));
+                maxLeakage = Math.max(maxLeakage, Math.abs(row[LEAKAGE]));
+            }
+
+            // Which voltage changes means nothing for a bias stress log, or a file of several sweeps
+            if (stress != null) {
+
+                double[] figures = {Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, maxDrain, maxLeakage};
+                return new Result(file, stress, rows.size(), figures, bytes, null);
+
+            }
+
+            // Output curves step the SD voltage between points, transfer curves the gate voltage
+            if (rows.get(0)[GATE] == rows.get(1)[GATE]) {
+
+                double[] figures = {Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, maxDrain, maxLeakage};
+                return new Result(file, "output", rows.size(), figures, bytes, null);
+
+            }
+
+            // The sweep starts at one end of the gate range, so the other end is the gate voltage furthest from it
+            double minGate = rows.get(0)[GATE];
+            double maxGate = minGate;
+
+            for (double[] row : rows) {
+                if (Math.abs(row[GATE] - minGate) > Math.abs(maxGate - minGate)) {
+                    maxGate = row[GATE];
+                }
+            }
+
+            double[] saturation = null;
+            double[] linear     = null;
+
+            for (double[] series : ParameterExtractor.extract(rows, minGate, maxGate, width, length, capacitance)) {
+
+                if (series[1] != 0) {
+                    continue;   // Reverse sweep
+                }
+
+                if (saturation == null || Math.abs(series[0]) > Math.abs(saturation[0])) {
+                    saturation = series;
+                }
+
+                if (linear == null || Math.abs(series[0]) < Math.abs(linear[0])) {
+                    linear = series;
+                }
+
+            }
+
+            double[] figures = {saturation[2], linear[3], saturation[4], saturation[5], saturation[6], maxDrain, maxLeakage};
+            return new Result(file, "transfer", rows.size(), figures, bytes, null);
+
+        } catch (Exception e) {
+            return new Result(file, "error", 0, null, bytes, e.getMessage() == null ? e.toString() : e.getMessage());
+        }
+
+    }
+
+    /**
+     * Writes the given results to a CSV file (see COLUMNS), leaving out any files that could not be analysed.
+     *
+     * @param path    Path to write to
+     * @param results Results to write
+     *
+     * @throws IOException Upon the file not being writable
+     */
+    public static void write(Path path, Result[] results) throws IOException {
+
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+
+            writer.append(String.join(",", COLUMNS)).append('\n');
+
+            for (Result result : results) {
+
+                if (result.figures == null) {
+                    continue;
+                }
+
+                writer.append('"').append(result.file.toString().replace("\"", "\"\"")).append('"')
+                      .append(',').append(result.type)
+                      .append(',').append(String.valueOf(result.rows));
+
+                for (double figure : result.figures) {
+                    writer.append(',').append(String.valueOf(figure));
+                }
+
+                writer.append('\n');
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Reads the SD voltage, gate voltage, drain current and leakage columns of a results file, a byte at a time out of
+     * a fixed-size buffer, so that neither the file nor its lines are ever held as strings. Only the fields of those four columns
+     * are turned into numbers.
+     *
+     * @param file File to read
+     *
+     * @return Rows of {SD voltage, gate voltage, drain current, leakage}
+     *
+     * @throws IOException Upon the file not being readable, or not having the columns needed
+     */
+    public static List<double[]> parse(Path file) throws IOException {
+
+        List<double[]> rows = new ArrayList<>();
+        parse(file, rows);
+        return rows;
+
+    }
+
+    /**
+     * Reads the rows of a results file into the given list (see parse(Path)), returning what sort of bias stress file it
+     * is going by its header: "stress" for a log of the stress itself, "stress sweeps" for the transfer sweeps taken
+     * during one, or null for neither.
+     */
+    private static String parse(Path file, List<double[]> rows) throws IOException {
+
+        String stress = null;
+
+        try (ByteReader stream = new ByteReader(Files.newInputStream(file))) {
+
+            int[]    wanted = header(stream, file);
+            char[]   field  = new char[MAX_FIELD];
+            double[] row    = new double[4];
+            int      column = 0;
+            int      length = 0;
+            int      found  = 0;
+            int      b;
+
+            for (int where : wanted) {
+
+                if (where == TIME) {
+                    stress = "stress";
+                } else if (where == STRESS_TIME) {
+                    stress = "stress sweeps";
+                }
+
+            }
+
+            while (true) {
+
+                b = stream.read();
+
+                if (b == ',' || b == '\n' || b == -1) {
+
+                    if (column < wanted.length && wanted[column] >= 0 && length > 0) {
+                        row[wanted[column]] = Double.parseDouble(new String(field, 0, length));
+                        found++;
+                    }
+
+                    column++;
+                    length = 0;
+
+                    if (b != ',') {
+
+                        if (found == row.length) {
+                            rows.add(row);
+                            row = new double[4];
+                        } else if (column > 1 || found > 0) {
+                            throw new IOException(String.format("Row %d of %s is missing values", rows.size() + 1, file));
+                        }
+
+                        column = 0;
+                        found  = 0;
+
+                        if (b == -1) {
+                            break;
+                        }
+
+                    }
+
+                } else if (b != '\r' && b != ' ' && b != '"') {
+
+                    if (length == MAX_FIELD) {
+                        throw new IOException(String.format("Row %d of %s has a value that is too long", rows.size() + 1, file));
+                    }
+
+                    field[length++] = (char) b;
+
+                }
+
+            }
+
+        }
+
+        return stress;
+
+    }
+
+    /**
+     * Reads the header line, returning where each column should go in a parsed row (-1 to skip it, or TIME or
+     * STRESS_TIME to skip it but mark the file as a bias stress file).
+     */
+    private static int[] header(ByteReader stream, Path file) throws IOException {
+
+        StringBuilder line = new StringBuilder();
+        int           b;
+
+        while ((b = stream.read()) != -1 && b != '\n') {
+            line.append((char) b);
+        }
+
+        String[] titles = line.toString().split(",");
+        int[]    wanted = new int[titles.length];
+        int      found  = 0;
+
+        for (int i = 0; i < titles.length; i++) {
+
+            // Titles may have units after them in square brackets, eg "SD Voltage [V]"
+            String title = titles[i].replace("\"", "").replaceAll("\\[.*]", "").trim();
+
+            switch (title) {
+
+                case "SD Voltage":
+                    wanted[i] = SD;
+                    break;
+
+                case "Gate Voltage":
+                    wanted[i] = GATE;
+                    break;
+
+                case "Drain Current":
+                    wanted[i] = DRAIN;
+                    break;
+
+                case "Leakage":
+                    wanted[i] = LEAKAGE;
+                    break;
+
+                case "Time":
+                    wanted[i] = TIME;
+                    continue;
+
+                case "Stress Time":
+                    wanted[i] = STRESS_TIME;
+                    continue;
+
+                default:
+                    wanted[i] = -1;
+                    continue;
+
+            }
+
+            found++;
+
+        }
+
+        if (found != 4) {
+            throw new IOException(String.format("%s does not have the SD Voltage, Gate Voltage, Drain Current and Leakage columns", file));
+        }
+
+        return wanted;
+
+    }
+
+    /**
+     * Hands out the bytes of a stream one at a time from a buffer it fills itself (unlike BufferedInputStream, whose
+     * read() is synchronized, which costs more than everything else the parser does per byte).
+     */
+    private static final class ByteReader implements AutoCloseable {
+
+        private final InputStream stream;
+        private final byte[]      buffer   = new byte[READ_BUFFER];
+        private       int         position = 0;
+        private       int         limit    = 0;
+
+        ByteReader(InputStream stream) {
+            this.stream = stream;
+        }
+
+        int read() throws IOException {
+
+            if (position == limit) {
+
+                limit    = stream.read(buffer, 0, buffer.length);
+                position = 0;
+
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+
+            }
+
+            return buffer[position++] & 0xFF;
+
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+    }
+
+    /**
+     * Analyses a range of files, splitting it in two (to be worked on in parallel) until it is small enough.
+     */
+    private class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final Result[]   results;
+        private final int        from;
+        private final int        to;
+
+        Task(List<Path> files, Result[] results, int from, int to) {
+            this.files   = files;
+            this.results = results;
+            this.from    = from;
+            this.to      = to;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from <= FILES_PER_TASK) {
+
+                for (int i = from; i < to; i++) {
+                    results[i] = analyse(files.get(i));
+                }
+
+                return;
+
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Task(files, results, from, middle), new Task(files, results, middle, to));
+
+        }
+
+    }
+
+    /**
+     * Analyses every CSV file under the directory given as the first argument, writing the summary to the file given
+     * as the second. Options: --threads N, --width W [m], --length L [m] and --capacitance C [F/m^2].
+     *
+     * @param args Command-line arguments
+     */
+    public static void main(String[] args) {
+
+        SweepParameters defaults = SweepParameters.transferDefaults();
+        List<String>    paths    = new ArrayList<>();
+        int             threads  = Runtime.getRuntime().availableProcessors();
+        double          width    = defaults.channelWidth;
+        double          length   = defaults.channelLength;
+        double          cap      = defaults.gateCapacitance;
+
+        try {
+
+            for (int i = 0; i < args.length; i++) {
+
+                switch (args[i]) {
+
+                    case "--analyse":
+                        break;
+
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+
+                    case "--width":
+                        width = Double.parseDouble(args[++i]);
+                        break;
+
+                    case "--length":
+                        length = Double.parseDouble(args[++i]);
+                        break;
+
+                    case "--capacitance":
+                        cap = Double.parseDouble(args[++i]);
+                        break;
+
+                    default:
+                        paths.add(args[i]);
+
+                }
+
+            }
+
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            paths.clear();
+        }
+
+        if (paths.size() != 2) {
+            System.err.println("Usage: BatchAnalysis [directory] [summary file] [--threads N] [--width W] [--length L] [--capacitance C]");
+            System.exit(1);
+        }
+
+        try {
+
+            long         start    = System.nanoTime();
+            List<Path>   files    = find(Paths.get(paths.get(0)));
+            double       found    = (System.nanoTime() - start) / 1e9;
+            ForkJoinPool pool     = new ForkJoinPool(threads);
+            Result[]     results  = new BatchAnalysis(width, length, cap).analyse(files, pool);
+            double       analysed = (System.nanoTime() - start) / 1e9 - found;
+
+            pool.shutdown();
+            write(Paths.get(paths.get(1)), results);
+
+            long bytes  = 0;
+            long rows   = 0;
+            int  errors = 0;
+
+            for (Result result : results) {
+
+                bytes += result.bytes;
+                rows  += result.rows;
+
+                if (result.error != null) {
+                    System.err.printf("Could not analyse %s: %s%n", result.file, result.error);
+                    errors++;
+                }
+
+            }
+
+            System.out.printf("Found %d files in %.3f s%n", files.size(), found);
+            System.out.printf(
+                    "Analysed %d files (%d failed, %d rows, %.1f MB) in %.3f s on %d threads: %.1f files/s, %.1f MB/s%n",
+                    files.size(),
+                    errors,
+                    rows,
+                    bytes / 1e6,
+                    analysed,
+                    threads,
+                    files.size() / analysed,
+                    bytes / 1e6 / analysed
+            );
+            System.out.printf("Summary written to %s%n", paths.get(1));
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+    }
+
+}
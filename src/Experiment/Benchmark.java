@@ -0,0 +1,340 @@
+package Experiment;
+
+import JISA.Experiment.ResultList;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures how long our side of a measurement takes, independent of any real instruments: the sweep loops driving a
+ * Simulation, storing rows in a ResultList or ColumnStore, writing them out as CSV and reducing them for plotting.
+ * Everything runs headless, and the simulated FET has a fixed noise seed and no settling, so results can be compared
+ * between runs and between machines.
+ * <p>
+ * Each benchmark is run WARMUP times (so that class loading and JIT compilation are out of the way) and then measured
+ * over a number of iterations, printing the mean, standard deviation and fastest time per operation. The sweeps are run
+ * with no bus latency or integration time unless asked for, so that all of their time is our own overhead. With
+ * --latency or --integration, the time the simulated instruments spent busy is subtracted to give the overhead (which
+ * then also includes however long Thread.sleep(...) oversleeps by each time they wait).
+ * Run with: java Experiment.Benchmark [--latency s] [--integration s] [--rows n] [--iterations n]
+ */
+public class Benchmark {
+
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int DEFAULT_ROWS       = 100_000;
+    private static final int WARMUP             = 3;
+    private static final int FRAME_ROWS         = 1000;  // Rows arriving between plot frames
+    private static final int PLOT_BUCKETS       = 1000;  // As Main.PLOT_BUCKETS
+
+    // Where anything a benchmark computes goes, so that the JIT cannot skip computing it
+    private static volatile long sink = 0;
+
+    private interface Task {
+
+        /**
+         * Runs the benchmark once.
+         *
+         * @return Number of operations performed
+         */
+        long run() throws Exception;
+
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        double latency     = 0.0;
+        double integration = 0.0;
+        int    rows        = DEFAULT_ROWS;
+        int    iterations  = DEFAULT_ITERATIONS;
+
+        try {
+
+            for (int i = 0; i < args.length; i++) {
+
+                switch (args[i]) {
+
+                    case "--latency":
+                        latency = Double.parseDouble(args[++i]);
+                        break;
+
+                    case "--integration":
+                        integration = Double.parseDouble(args[++i]);
+                        break;
+
+                    case "--rows":
+                        rows = Integer.parseInt(args[++i]);
+                        break;
+
+                    case "--iterations":
+                        iterations = Integer.parseInt(args[++i]);
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException(args[i]);
+
+                }
+
+            }
+
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Usage: Benchmark [--latency s] [--integration s] [--rows N] [--iterations N]");
+            System.exit(1);
+        }
+
+        System.out.printf("Latency %g s, integration time %g s, %d rows, %d iterations (after %d to warm up)%n%n", latency, integration, rows, iterations, WARMUP);
+        System.out.printf("%-22s %-6s %12s %12s %12s %12s %14s%n", "Benchmark", "Per", "Mean", "Std Dev", "Fastest", "Overhead", "Rate");
+
+        sweeps(latency, integration, iterations);
+        storage(rows, iterations);
+        output(rows, iterations);
+        plotting(rows, iterations);
+
+    }
+
+    // ==== Sweep Loops ================================================================================================
+
+    private static void sweeps(double latency, double integration, int iterations) throws Exception {
+
+        Simulation simulation = new Simulation(latency);
+        simulation.getFET().setSettleTime(0.0);
+
+        Channel sd   = simulation.getChannel(SimulatedFET.Terminal.DRAIN);
+        Channel gate = simulation.getChannel(SimulatedFET.Terminal.GATE);
+        Channel fpp1 = simulation.getChannel(SimulatedFET.Terminal.PROBE_1);
+        Channel fpp2 = simulation.getChannel(SimulatedFET.Terminal.PROBE_2);
+
+        SweepParameters transfer = SweepParameters.transferDefaults();
+        SweepParameters output   = SweepParameters.outputDefaults();
+
+        for (SweepParameters params : new SweepParameters[]{transfer, output}) {
+            params.averageCount    = 1;
+            params.delay           = 0.0;
+            params.integrationTime = integration;
+        }
+
+        measure("Transfer sweep", "point", iterations, simulation, () -> {
+            SweepEngine engine = new SweepEngine(new Cancellation());
+            engine.runTransfer(transfer, sd, gate, fpp1, fpp2, data -> { });
+            return engine.getNumPoints();
+        });
+
+        measure("Output sweep", "point", iterations, simulation, () -> {
+            SweepEngine engine = new SweepEngine(new Cancellation());
+            engine.runOutput(output, sd, gate, data -> { });
+            return engine.getNumPoints();
+        });
+
+    }
+
+    // ==== Storage ====================================================================================================
+
+    private static void storage(int rows, int iterations) throws Exception {
+
+        // ResultList keeps the array it is given, so it needs a new one for every row, whereas ColumnStore copies it
+        measure("ResultList.addData", "row", iterations, null, () -> {
+
+            ResultList list = new ResultList(SweepEngine.TRANSFER_COLUMNS);
+            list.setUnits(SweepEngine.TRANSFER_UNITS);
+
+            for (int i = 0; i < rows; i++) {
+                list.addData(row(i, new double[SweepEngine.TRANSFER_COLUMNS.length]));
+            }
+
+            return rows;
+
+        });
+
+        measure("ColumnStore.addData", "row", iterations, null, () -> {
+
+            ColumnStore store = new ColumnStore(SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS);
+            double[]    row   = new double[SweepEngine.TRANSFER_COLUMNS.length];
+
+            for (int i = 0; i < rows; i++) {
+                store.addData(row(i, row));
+            }
+
+            return rows;
+
+        });
+
+    }
+
+    // ==== CSV Output =================================================================================================
+
+    private static void output(int rows, int iterations) throws Exception {
+
+        Path        file  = Files.createTempFile("benchmark", ".csv");
+        ResultList  list  = new ResultList(SweepEngine.TRANSFER_COLUMNS);
+        ColumnStore store = new ColumnStore(SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS);
+
+        list.setUnits(SweepEngine.TRANSFER_UNITS);
+
+        for (int i = 0; i < rows; i++) {
+            double[] row = row(i, new double[SweepEngine.TRANSFER_COLUMNS.length]);
+            list.addData(row);
+            store.addData(row);
+        }
+
+        try {
+
+            // Timed up to the file being closed, so includes the writer thread catching up (but not fsync-ing)
+            measure("ResultWriter", "row", iterations, null, () -> {
+
+                double[] row = new double[SweepEngine.TRANSFER_COLUMNS.length];
+
+                try (ResultWriter writer = new ResultWriter(file.toString(), SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS, rows, Double.MAX_VALUE, false)) {
+
+                    for (int i = 0; i < rows; i++) {
+                        writer.addData(row(i, row));
+                    }
+
+                }
+
+                return rows;
+
+            });
+
+            measure("ResultList.output", "row", iterations, null, () -> {
+                list.output(file.toString());
+                return rows;
+            });
+
+            measure("ColumnStore.output", "row", iterations, null, () -> {
+                store.output(file.toString());
+                return rows;
+            });
+
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+    }
+
+    // ==== Plotting ===================================================================================================
+
+    /**
+     * Times the decimation each displayed series goes through, redrawing every FRAME_ROWS rows as LiveDisplay and
+     * StressDisplay would. Drawing the decimated points on an actual plot needs a running GUI, so is not included.
+     */
+    private static void plotting(int rows, int iterations) throws Exception {
+
+        measure("Decimator", "row", iterations, null, () -> {
+
+            Decimator decimator = new Decimator(PLOT_BUCKETS);
+            long      points    = 0;
+
+            for (int i = 0; i < rows; i++) {
+
+                decimator.add(i, Math.sin(i * 1e-3));
+
+                if ((i + 1) % FRAME_ROWS == 0) {
+                    points += decimator.getPoints().size();
+                }
+
+            }
+
+            sink = points;
+            return rows;
+
+        });
+
+        measure("LogTimeSeries", "row", iterations, null, () -> {
+
+            LogTimeSeries series = new LogTimeSeries(50);
+            long          points = 0;
+
+            for (int i = 0; i < rows; i++) {
+
+                series.add(i * 1e-3, Math.sin(i * 1e-3));
+
+                if ((i + 1) % FRAME_ROWS == 0) {
+                    points += series.getPoints().size();
+                }
+
+            }
+
+            sink = points;
+            return rows;
+
+        });
+
+    }
+
+    // ==== Helpers ====================================================================================================
+
+    /**
+     * Runs the given task WARMUP times unmeasured, then the given number of times measured, and prints the results.
+     * If a simulation is given, the time its instruments were busy for is subtracted from the mean to give the
+     * overhead, otherwise all of the time is overhead.
+     */
+    private static void measure(String name, String per, int iterations, Simulation simulation, Task task) throws Exception {
+
+        double sum     = 0.0;
+        double sumSq   = 0.0;
+        double fastest = Double.POSITIVE_INFINITY;
+        double busy    = 0.0;
+
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+
+        for (int i = 0; i < iterations; i++) {
+
+            if (simulation != null) {
+                simulation.resetBusyTime();
+            }
+
+            long   start = System.nanoTime();
+            long   ops   = task.run();
+            double time  = (System.nanoTime() - start) / 1e9 / Math.max(1, ops);
+
+            sum    += time;
+            sumSq  += time * time;
+            fastest = Math.min(fastest, time);
+
+            if (simulation != null) {
+                busy += simulation.getBusyTime() / Math.max(1, ops);
+            }
+
+        }
+
+
+        double mean = sum / iterations;
+        double std  = iterations > 1 ? Math.sqrt(Math.max(0.0, (sumSq - sum * mean) / (iterations - 1))) : 0.0;
+
+        System.out.printf(
+            "%-22s %-6s %12s %12s %12s %12s %10.0f /s%n",
+            name, per, time(mean), time(std), time(fastest), time(mean - busy / iterations), 1.0 / mean
+        );
+
+    }
+
+    /**
+     * Fills the given array with a plausible row of transfer curve results.
+     */
+    private static double[] row(int i, double[] row) {
+
+        row[0] = -5.0;
+        row[1] = -60.0 * (i % 61) / 60;
+        row[2] = -1e-9 * i;
+        row[3] = 1e-12;
+
+        return row;
+
+    }
+
+    private static String time(double seconds) {
+
+        if (Math.abs(seconds) >= 1.0) {
+            return String.format("%.3f s", seconds);
+        } else if (Math.abs(seconds) >= 1e-3) {
+            return String.format("%.3f ms", seconds * 1e3);
+        } else if (Math.abs(seconds) >= 1e-6) {
+            return String.format("%.3f us", seconds * 1e6);
+        } else {
+            return String.format("%.1f ns", seconds * 1e9);
+        }
+
+    }
+
+}
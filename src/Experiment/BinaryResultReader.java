@@ -0,0 +1,204 @@
+package Experiment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file written by BinaryResultWriter by mapping it into memory. Nothing is parsed: values are read straight out
+ * of the mapped file as they are asked for. A single mapping can be at most 2 GB, so the rows are mapped in chunks of
+ * CHUNK_ROWS rows. Can also be run on its own to convert a binary file to CSV:
+ * java Experiment.BinaryResultReader results.bin results.csv
+ */
+public class BinaryResultReader {
+
+    private static final int CHUNK_ROWS = 1 << 20;
+
+    private final String[]       names;
+    private final String[]       units;
+    private final long           rows;
+    private final DoubleBuffer[] chunks;
+
+    /**
+     * Maps the given binary result file.
+     *
+     * @param path Path of the file
+     *
+     * @throws IOException Upon the file not being readable, or not being a binary result file
+     */
+    public BinaryResultReader(String path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+
+            ByteBuffer start = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (channel.read(start, 0) < start.capacity() || start.getInt(0) != BinaryResultWriter.MAGIC) {
+                throw new IOException(path + " is not a binary result file.");
+            }
+
+            int version = start.getInt(4);
+
+            if (version != BinaryResultWriter.VERSION) {
+                throw new IOException(path + " is version " + version + ", only version " + BinaryResultWriter.VERSION + " is supported.");
+            }
+
+            int  columns = start.getInt(8);
+            int  header  = start.getInt(12);
+            long count   = start.getLong(BinaryResultWriter.ROWS_OFFSET);
+
+            if (columns < 0 || header < 24 || count < 0 || header + count * columns * Double.BYTES > channel.size()) {
+                throw new IOException(path + " is truncated.");
+            }
+
+            // The mappings stay valid after the channel is closed
+            MappedByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, 24, header - 24);
+            strings.order(ByteOrder.LITTLE_ENDIAN);
+
+            names = new String[columns];
+            units = new String[columns];
+
+            for (int i = 0; i < columns; i++) {
+                names[i] = getString(strings);
+                units[i] = getString(strings);
+            }
+
+            rows   = count;
+            chunks = new DoubleBuffer[(int) ((rows + CHUNK_ROWS - 1) / CHUNK_ROWS)];
+
+            for (int i = 0; i < chunks.length; i++) {
+
+                long first = (long) i * CHUNK_ROWS;
+                long size  = Math.min(CHUNK_ROWS, rows - first) * columns * Double.BYTES;
+
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, header + first * columns * Double.BYTES, size)
+                                   .order(ByteOrder.LITTLE_ENDIAN)
+                                   .asDoubleBuffer();
+
+            }
+
+        }
+
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public String[] getUnits() {
+        return units.clone();
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Returns a single value.
+     *
+     * @param row    Row number
+     * @param column Column number
+     *
+     * @return Value
+     */
+    public double get(long row, int column) {
+        return chunks[(int) (row / CHUNK_ROWS)].get((int) (row % CHUNK_ROWS) * names.length + column);
+    }
+
+    /**
+     * Returns a copy of a whole column.
+     *
+     * @param column Column number
+     *
+     * @return Values in that column, in row order
+     *
+     * @throws IllegalStateException If there are too many rows to fit in an array
+     */
+    public double[] getColumn(int column) {
+
+        double[] values = new double[toInt(rows)];
+
+        for (int row = 0; row < values.length; row++) {
+            values[row] = get(row, column);
+        }
+
+        return values;
+
+    }
+
+    /**
+     * Copies everything into a ColumnStore, eg to write it out as CSV.
+     *
+     * @return Column store holding every row
+     *
+     * @throws IllegalStateException If there are too many rows to fit in a ColumnStore
+     */
+    public ColumnStore toColumnStore() {
+
+        ColumnStore store = new ColumnStore(names, units);
+        double[]    row   = new double[names.length];
+
+        toInt(rows);
+
+        for (DoubleBuffer chunk : chunks) {
+
+            DoubleBuffer buffer = chunk.duplicate();
+
+            while (buffer.hasRemaining()) {
+                buffer.get(row);
+                store.addData(row);
+            }
+
+        }
+
+        return store;
+
+    }
+
+    private static int toInt(long rows) {
+
+        if (rows > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many rows (" + rows + ") to copy at once.");
+        }
+
+        return (int) rows;
+
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Converts a binary result file to CSV.
+     *
+     * @param args Binary file, CSV file
+     *
+     * @throws IOException Upon either file not being readable/writable
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.err.println("Usage: BinaryResultReader [binary file] [CSV file]");
+            System.exit(1);
+        }
+
+        BinaryResultReader reader = new BinaryResultReader(args[0]);
+        reader.toColumnStore().output(args[1]);
+
+        System.out.printf("Converted %d rows of %d columns to %s%n", reader.getRowCount(), reader.getColumnCount(), args[1]);
+
+    }
+
+}
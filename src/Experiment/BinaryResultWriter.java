@@ -0,0 +1,260 @@
+package Experiment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes rows of results to a compact binary file through a memory-mapped buffer, so that writing a row is just copying
+ * its doubles into memory. The layout (all little-endian) is:
+ * <pre>
+ * int    magic      ("FETR")
+ * int    version    (1)
+ * int    columns
+ * int    header     (size of everything before the first row, in bytes, a multiple of 8)
+ * long   rows       (kept up to date as rows are written)
+ * then for each column: short length + UTF-8 name, short length + UTF-8 unit
+ * then zero padding up to the header size
+ * then rows * columns doubles, row by row
+ * </pre>
+ * The file is extended (and mapped) in regions of REGION_ROWS rows, so until it is closed it may be longer than the rows
+ * it holds: the row count in the header is what counts. On closing, it is cut back to just those rows. See
+ * BinaryResultReader for reading it back.
+ */
+public class BinaryResultWriter implements SweepEngine.RowSink, AutoCloseable {
+
+    public static final  int MAGIC       = 0x52544546;   // "FETR" when read as little-endian bytes
+    public static final  int VERSION     = 1;
+    public static final  int ROWS_OFFSET = 16;
+    private static final int REGION_ROWS = 16384;
+
+    private final String           path;
+    private final int              columns;
+    private final int              headerSize;
+    private final FileChannel      channel;
+    private final MappedByteBuffer header;
+    private       MappedByteBuffer region;
+    private       long             regionStart;
+    private       long             rows   = 0;
+    private       boolean          closed = false;
+
+    /**
+     * Creates a new binary result file (replacing any existing one) and writes its header.
+     *
+     * @param path  Path of the file to write
+     * @param names Column names
+     * @param units Column units (or null for none)
+     *
+     * @throws IOException Upon the file not being creatable
+     */
+    public BinaryResultWriter(String path, String[] names, String[] units) throws IOException {
+        this(path, names, units, false);
+    }
+
+    /**
+     * Opens a binary result file, either replacing any existing one or (if appending) adding rows to the end of it.
+     *
+     * @param path   Path of the file to write
+     * @param names  Column names
+     * @param units  Column units (or null for none)
+     * @param append Whether to add to the end of an existing file (if there is one) rather than replace it
+     *
+     * @throws IOException Upon the file not being creatable, or the existing file having different columns
+     */
+    public BinaryResultWriter(String path, String[] names, String[] units, boolean append) throws IOException {
+
+        this.path    = path;
+        this.columns = names.length;
+
+        ByteBuffer strings = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < columns; i++) {
+            putString(strings, names[i]);
+            putString(strings, units == null ? "" : units[i]);
+        }
+
+        strings.flip();
+
+        headerSize = (24 + strings.remaining() + 7) / 8 * 8;
+
+        if (append) {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else {
+            channel = FileChannel.open(
+                    Paths.get(path),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING
+            );
+        }
+
+        boolean existing = channel.size() >= headerSize;
+
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (existing && header.getInt(0) == MAGIC) {
+
+            if (header.getInt(8) != columns || header.getInt(12) != headerSize) {
+                channel.close();
+                throw new IOException(path + " has different columns, cannot add to it.");
+            }
+
+            rows = header.getLong(ROWS_OFFSET);
+
+        } else {
+            header.putInt(MAGIC).putInt(VERSION).putInt(columns).putInt(headerSize).putLong(0L).put(strings);
+        }
+
+        regionStart = headerSize + rows * columns * Double.BYTES;
+        mapRegion();
+
+    }
+
+    /**
+     * Writes a row. Missing values (if the row is shorter than the number of columns) are written as NaN.
+     *
+     * @param data Row of data
+     *
+     * @throws IOException Upon the file not being extendable
+     */
+    @Override
+    public synchronized void addData(double... data) throws IOException {
+
+        if (closed) {
+            throw new IOException("Binary result writer has been closed.");
+        }
+
+        if (!region.hasRemaining()) {
+            regionStart += region.capacity();
+            mapRegion();
+        }
+
+        for (int c = 0; c < columns; c++) {
+            region.putDouble(c < data.length ? data[c] : Double.NaN);
+        }
+
+        // Only now is the row complete, so only now does it count
+        header.putLong(ROWS_OFFSET, ++rows);
+
+    }
+
+    public synchronized long getRowCount() {
+        return rows;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Forces everything written so far out to disk and closes the file.
+     *
+     * @throws IOException Upon the data not being writable
+     */
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        region.force();
+        header.force();
+
+        // Drop the unused end of the last region. Some systems (ie Windows) refuse while it is still mapped, in which
+        // case the file is left as it is: the row count in the header still says where the rows end.
+        try {
+            channel.truncate(headerSize + rows * columns * Double.BYTES);
+        } catch (IOException ignored) {
+        }
+
+        channel.close();
+
+    }
+
+    public String getSummary() {
+        return String.format("Wrote %d rows (%d bytes) to %s", getRowCount(), headerSize + getRowCount() * columns * Double.BYTES, path);
+    }
+
+    /**
+     * Returns how many rows an existing binary result file says it holds, reading only its header (so, unlike opening
+     * it with a BinaryResultReader, leaves nothing mapped that would stop it being truncated on Windows).
+     *
+     * @param path Path of the file
+     *
+     * @return Number of rows
+     *
+     * @throws IOException Upon the file not being readable, or not being a binary result file
+     */
+    public static long rowCount(String path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+
+            ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (channel.read(header, 0) < header.capacity() || header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a binary result file.");
+            }
+
+            return header.getLong(ROWS_OFFSET);
+
+        }
+
+    }
+
+    /**
+     * Cuts an existing binary result file back to the given number of rows.
+     *
+     * @param path Path of the file
+     * @param rows Number of rows to keep
+     *
+     * @throws IOException Upon the file not being writable, or not being a binary result file
+     */
+    public static void truncate(String path, long rows) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (channel.read(header, 0) < header.capacity() || header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a binary result file.");
+            }
+
+            int  columns = header.getInt(8);
+            int  size    = header.getInt(12);
+            long kept    = Math.min(rows, header.getLong(ROWS_OFFSET));
+
+            ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, kept);
+            channel.write(count, ROWS_OFFSET);
+            channel.truncate(size + kept * columns * Double.BYTES);
+
+        }
+
+    }
+
+    private void mapRegion() throws IOException {
+
+        if (region != null) {
+            region.force();
+        }
+
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, (long) REGION_ROWS * columns * Double.BYTES);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+}
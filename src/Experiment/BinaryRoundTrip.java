@@ -0,0 +1,132 @@
+package Experiment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks that what BinaryResultWriter writes is what BinaryResultReader reads back: every value, bit for bit, after
+ * writing, appending and truncating, and that closed files hold nothing past their last row. The default number of rows
+ * is enough for the writer to map several regions and the reader several chunks.
+ * Run with: java Experiment.BinaryRoundTrip [rows]
+ */
+public class BinaryRoundTrip {
+
+    private static final int DEFAULT_ROWS = 2_500_000;
+
+    public static void main(String[] args) throws Exception {
+
+        int  rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        Path file = Files.createTempFile("round-trip", ".bin");
+
+        try {
+
+            // Write the first half, then append the second half, as a resumed sweep would
+            write(file, 0, rows / 2, false);
+            check(file, rows / 2);
+
+            write(file, rows / 2, rows, true);
+            check(file, rows);
+
+            BinaryResultWriter.truncate(file.toString(), rows / 3);
+            check(file, rows / 3);
+
+            System.out.printf("OK: %d rows of %d columns written, appended, truncated and read back%n", rows, SweepEngine.TRANSFER_COLUMNS.length);
+
+        } catch (IllegalStateException e) {
+            System.err.println("FAILED: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+    }
+
+    private static void write(Path file, int from, int to, boolean append) throws IOException {
+
+        try (BinaryResultWriter writer = new BinaryResultWriter(file.toString(), SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS, append)) {
+
+            double[] row = new double[SweepEngine.TRANSFER_COLUMNS.length];
+
+            for (int r = from; r < to; r++) {
+
+                for (int c = 0; c < row.length; c++) {
+                    row[c] = value(r, c);
+                }
+
+                writer.addData(row);
+
+            }
+
+        }
+
+    }
+
+    private static void check(Path file, int rows) throws IOException {
+
+        BinaryResultReader reader  = new BinaryResultReader(file.toString());
+        int                columns = SweepEngine.TRANSFER_COLUMNS.length;
+
+        expect(reader.getRowCount() == rows, "expected %d rows, read %d", rows, reader.getRowCount());
+        expect(reader.getColumnCount() == columns, "expected %d columns, read %d", columns, reader.getColumnCount());
+
+        for (int c = 0; c < columns; c++) {
+            expect(reader.getNames()[c].equals(SweepEngine.TRANSFER_COLUMNS[c]), "column %d is named %s", c, reader.getNames()[c]);
+            expect(reader.getUnits()[c].equals(SweepEngine.TRANSFER_UNITS[c]), "column %d has units %s", c, reader.getUnits()[c]);
+        }
+
+        for (int r = 0; r < rows; r++) {
+
+            for (int c = 0; c < columns; c++) {
+
+                double read = reader.get(r, c);
+
+                expect(Double.doubleToRawLongBits(read) == Double.doubleToRawLongBits(value(r, c)), "row %d, column %d: expected %s, read %s", r, c, value(r, c), read);
+
+            }
+
+        }
+
+        // Nothing but whole rows after the header (the header is the first row's offset, rounded up to 8 bytes)
+        long size  = Files.size(file);
+        long extra = (size - (long) rows * columns * Double.BYTES) % Double.BYTES;
+
+        expect(extra == 0 && size - (long) rows * columns * Double.BYTES < 64 * 1024, "file is %d bytes for %d rows", size, rows);
+
+    }
+
+    /**
+     * Returns a different value for every cell, including some awkward ones (NaN, infinities, -0 and subnormals).
+     */
+    private static double value(int row, int column) {
+
+        switch ((row + column) % 16) {
+
+            case 0:
+                return Double.NaN;
+
+            case 1:
+                return Double.POSITIVE_INFINITY;
+
+            case 2:
+                return -0.0;
+
+            case 3:
+                return Double.MIN_VALUE * row;
+
+            default:
+                return (row * 31 + column) * -1.2345e-9;
+
+        }
+
+    }
+
+    private static void expect(boolean condition, String format, Object... args) {
+
+        if (!condition) {
+            throw new IllegalStateException(String.format(format, args));
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package Experiment;
+
+/**
+ * A channel that can run a whole voltage sweep by itself (ie using the instrument's own source list, trigger model and
+ * reading buffer) rather than having each point set, waited-for and read over the bus.
+ */
+public interface BufferedChannel extends Channel {
+
+    /**
+     * Returns whether this channel can perform a buffered sweep whilst measuring the current on all the given channels
+     * (for instance, they might all need to be on the same instrument to share its trigger model).
+     *
+     * @param measured Channels whose current is to be measured at each point
+     *
+     * @return Can it be done?
+     */
+    boolean canSweep(Channel... measured);
+
+    /**
+     * Sources each voltage in turn, waits the given delay then measures the current on each of the given channels. All
+     * readings are returned in one go at the end.
+     *
+     * @param voltages  Voltages to source, in order
+     * @param delayMSec Delay between setting each voltage and measuring, in milliseconds
+     * @param measured  Channels whose current to measure at each point
+     *
+     * @return Readings, indexed as [point][measured channel]
+     *
+     * @throws Exception Upon something going wrong
+     */
+    double[][] sweepVoltage(double[] voltages, long delayMSec, Channel... measured) throws Exception;
+
+}
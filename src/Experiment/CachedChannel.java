@@ -0,0 +1,297 @@
+package Experiment;
+
+import JISA.Devices.SMU;
+
+import java.util.Objects;
+
+/**
+ * Wraps a channel, remembering the last state it was put into and not sending commands that would not change it (eg
+ * setting the same voltage twice in a row, or re-applying the same averaging settings at the start of every run).
+ * <p>
+ * Anything unknown (ie before the first command, or after invalidate()) is always sent. Any exception thrown by the
+ * underlying channel invalidates everything, since we can no longer be sure what state the instrument is in. turnOff()
+ * is always sent regardless, as it is what makes things safe. Readings are never cached.
+ */
+public class CachedChannel implements BufferedChannel {
+
+    private final Channel   channel;
+
+    // ==== Shadowed State (null = unknown) ============================================================================
+    private       Boolean   on;
+    private       Boolean   voltageSource;
+    private       Double    level;
+    private       Boolean   autoRanges;
+    private       Double    currentRange;
+    private       SMU.AMode averageMode;
+    private       Integer   averageCount;
+    private       Boolean   fourProbe;
+    private       Double    integrationTime;
+
+    // ==== Statistics =================================================================================================
+    private       long      sent       = 0;
+    private       long      suppressed = 0;
+
+    public CachedChannel(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Forgets everything we think we know about the state of the instrument, so that the next command of every type
+     * is sent. Should be called after reconnecting, or whenever the instrument might have been changed behind our back.
+     */
+    public synchronized void invalidate() {
+        on              = null;
+        voltageSource   = null;
+        level           = null;
+        autoRanges      = null;
+        currentRange    = null;
+        averageMode     = null;
+        averageCount    = null;
+        fourProbe       = null;
+        integrationTime = null;
+    }
+
+    /**
+     * Returns the number of (non-reading) commands passed on to the channel since the last resetCounts().
+     *
+     * @return Number of commands sent
+     */
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    /**
+     * Returns the number of commands not sent (because they would have changed nothing) since the last resetCounts().
+     *
+     * @return Number of commands suppressed
+     */
+    public synchronized long getSuppressed() {
+        return suppressed;
+    }
+
+    public synchronized void resetCounts() {
+        sent       = 0;
+        suppressed = 0;
+    }
+
+    @Override
+    public Object getInstrument() {
+        return channel.getInstrument();
+    }
+
+    @Override
+    public Channel unwrap() {
+        return channel.unwrap();
+    }
+
+    @Override
+    public synchronized void voltageSet(double voltage) {
+        voltageSource = true;
+        level         = voltage;
+        channel.voltageSet(voltage);
+    }
+
+    @Override
+    public synchronized void turnOn() throws Exception {
+
+        if (skip(same(on, true))) {
+            return;
+        }
+
+        send(channel::turnOn);
+        on = true;
+
+    }
+
+    @Override
+    public synchronized void turnOff() throws Exception {
+        send(channel::turnOff);
+        on = false;
+    }
+
+    @Override
+    public synchronized void setVoltage(double voltage) throws Exception {
+
+        if (skip(same(voltageSource, true) && same(level, voltage))) {
+            return;
+        }
+
+        send(() -> channel.setVoltage(voltage));
+        voltageSource = true;
+        level         = voltage;
+
+    }
+
+    @Override
+    public synchronized void setCurrent(double current) throws Exception {
+
+        if (skip(same(voltageSource, false) && same(level, current))) {
+            return;
+        }
+
+        send(() -> channel.setCurrent(current));
+        voltageSource = false;
+        level         = current;
+
+    }
+
+    @Override
+    public synchronized double getVoltage() throws Exception {
+        return read(channel::getVoltage);
+    }
+
+    @Override
+    public synchronized double getCurrent() throws Exception {
+        return read(channel::getCurrent);
+    }
+
+    @Override
+    public synchronized void useAutoRanges() throws Exception {
+
+        if (skip(same(autoRanges, true))) {
+            return;
+        }
+
+        send(channel::useAutoRanges);
+        autoRanges   = true;
+        currentRange = null;
+
+    }
+
+    @Override
+    public synchronized void setCurrentRange(double range) throws Exception {
+
+        if (skip(same(currentRange, range))) {
+            return;
+        }
+
+        send(() -> channel.setCurrentRange(range));
+        currentRange = range;
+        autoRanges   = false;
+
+    }
+
+    @Override
+    public synchronized void setAveraging(SMU.AMode mode, int count) throws Exception {
+
+        if (skip(same(averageMode, mode) && same(averageCount, count))) {
+            return;
+        }
+
+        send(() -> channel.setAveraging(mode, count));
+        averageMode  = mode;
+        averageCount = count;
+
+    }
+
+    @Override
+    public synchronized void useFourProbe(boolean fourProbe) throws Exception {
+
+        if (skip(same(this.fourProbe, fourProbe))) {
+            return;
+        }
+
+        send(() -> channel.useFourProbe(fourProbe));
+        this.fourProbe = fourProbe;
+
+    }
+
+    @Override
+    public synchronized void setIntegrationTime(double time) throws Exception {
+
+        if (skip(same(integrationTime, time))) {
+            return;
+        }
+
+        send(() -> channel.setIntegrationTime(time));
+        integrationTime = time;
+
+    }
+
+    @Override
+    public boolean canSweep(Channel... measured) {
+        return channel instanceof BufferedChannel && ((BufferedChannel) channel).canSweep(unwrap(measured));
+    }
+
+    @Override
+    public synchronized double[][] sweepVoltage(double[] voltages, long delayMSec, Channel... measured) throws Exception {
+
+        sent++;
+
+        try {
+
+            double[][] readings = ((BufferedChannel) channel).sweepVoltage(voltages, delayMSec, unwrap(measured));
+
+            // The instrument is left sourcing the last voltage in the list
+            voltageSource = true;
+            level         = voltages.length > 0 ? voltages[voltages.length - 1] : level;
+
+            return readings;
+
+        } catch (Exception e) {
+            invalidate();
+            throw e;
+        }
+
+    }
+
+    private interface Command {
+        void run() throws Exception;
+    }
+
+    private interface Reading {
+        double read() throws Exception;
+    }
+
+    private static boolean same(Object known, Object wanted) {
+        return known != null && Objects.equals(known, wanted);
+    }
+
+    private boolean skip(boolean unchanged) {
+
+        // If the command would change nothing, count it as suppressed
+        if (unchanged) {
+            suppressed++;
+        }
+
+        return unchanged;
+
+    }
+
+    private void send(Command command) throws Exception {
+
+        sent++;
+
+        try {
+            command.run();
+        } catch (Exception e) {
+            invalidate();
+            throw e;
+        }
+
+    }
+
+    private double read(Reading reading) throws Exception {
+
+        try {
+            return reading.read();
+        } catch (Exception e) {
+            invalidate();
+            throw e;
+        }
+
+    }
+
+    private static Channel[] unwrap(Channel[] channels) {
+
+        Channel[] unwrapped = new Channel[channels.length];
+
+        for (int i = 0; i < channels.length; i++) {
+            unwrapped[i] = channels[i].unwrap();
+        }
+
+        return unwrapped;
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package Experiment;
+
+import JISA.Devices.SMU;
+
+/**
+ * Wraps a channel so that, once the given Cancellation has been cancelled, any further command to it throws a
+ * CancellationException instead of being sent. The only exception is turnOff(), which always goes through, so that
+ * after pressing Stop the next thing the instrument hears is to turn its output off.
+ */
+public class CancellableChannel implements BufferedChannel {
+
+    private final Channel      channel;
+    private final Cancellation cancellation;
+
+    public CancellableChannel(Channel channel, Cancellation cancellation) {
+        this.channel      = channel;
+        this.cancellation = cancellation;
+    }
+
+    @Override
+    public Object getInstrument() {
+        return channel.getInstrument();
+    }
+
+    @Override
+    public Channel unwrap() {
+        return channel.unwrap();
+    }
+
+    @Override
+    public void voltageSet(double voltage) {
+        channel.voltageSet(voltage);
+    }
+
+    @Override
+    public void turnOn() throws Exception {
+        cancellation.check();
+        channel.turnOn();
+    }
+
+    @Override
+    public void turnOff() throws Exception {
+        channel.turnOff();
+    }
+
+    @Override
+    public void setVoltage(double voltage) throws Exception {
+        cancellation.check();
+        channel.setVoltage(voltage);
+    }
+
+    @Override
+    public void setCurrent(double current) throws Exception {
+        cancellation.check();
+        channel.setCurrent(current);
+    }
+
+    @Override
+    public double getVoltage() throws Exception {
+        cancellation.check();
+        return channel.getVoltage();
+    }
+
+    @Override
+    public double getCurrent() throws Exception {
+        cancellation.check();
+        return channel.getCurrent();
+    }
+
+    @Override
+    public void useAutoRanges() throws Exception {
+        cancellation.check();
+        channel.useAutoRanges();
+    }
+
+    @Override
+    public void setCurrentRange(double range) throws Exception {
+        cancellation.check();
+        channel.setCurrentRange(range);
+    }
+
+    @Override
+    public void setAveraging(SMU.AMode mode, int count) throws Exception {
+        cancellation.check();
+        channel.setAveraging(mode, count);
+    }
+
+    @Override
+    public void useFourProbe(boolean fourProbe) throws Exception {
+        cancellation.check();
+        channel.useFourProbe(fourProbe);
+    }
+
+    @Override
+    public void setIntegrationTime(double time) throws Exception {
+        cancellation.check();
+        channel.setIntegrationTime(time);
+    }
+
+    @Override
+    public boolean canSweep(Channel... measured) {
+        return channel instanceof BufferedChannel && ((BufferedChannel) channel).canSweep(measured);
+    }
+
+    @Override
+    public double[][] sweepVoltage(double[] voltages, long delayMSec, Channel... measured) throws Exception {
+        cancellation.check();
+        return ((BufferedChannel) channel).sweepVoltage(voltages, delayMSec, measured);
+    }
+
+}
@@ -0,0 +1,76 @@
+package Experiment;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A request to stop something (eg a sweep) as soon as possible, which can be shared between threads. Once cancelled,
+ * it stays cancelled: make a new one for each run.
+ * <p>
+ * Anything waiting via sleep(...) is woken up straight away when cancelled, and check() lets code bail out between
+ * steps by throwing a CancellationException.
+ */
+public class Cancellation implements BooleanSupplier {
+
+    private final    CountDownLatch latch     = new CountDownLatch(1);
+    private volatile long           requested = 0;
+
+    /**
+     * Cancels, waking up anything currently waiting in sleep(...). Does nothing if already cancelled.
+     */
+    public synchronized void cancel() {
+
+        if (latch.getCount() > 0) {
+            requested = System.nanoTime();
+            latch.countDown();
+        }
+
+    }
+
+    public boolean isCancelled() {
+        return latch.getCount() == 0;
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+        return isCancelled();
+    }
+
+    /**
+     * Throws a CancellationException if cancelled, otherwise does nothing.
+     *
+     * @throws CancellationException If cancelled
+     */
+    public void check() {
+
+        if (isCancelled()) {
+            throw new CancellationException("Stopped.");
+        }
+
+    }
+
+    /**
+     * Waits for the given time, or until cancelled, whichever comes first.
+     *
+     * @param mSec Time to wait [ms]
+     *
+     * @return Whether the wait was cut short by being cancelled
+     *
+     * @throws InterruptedException If the thread is interrupted whilst waiting
+     */
+    public boolean sleep(long mSec) throws InterruptedException {
+        return latch.await(mSec, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the System.nanoTime() at which cancel() was first called, or 0 if it has not been.
+     *
+     * @return Time of cancellation [ns]
+     */
+    public long getRequestTime() {
+        return requested;
+    }
+
+}
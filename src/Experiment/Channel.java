@@ -0,0 +1,58 @@
+package Experiment;
+
+import JISA.Devices.SMU;
+
+/**
+ * The subset of SMU functionality used by the sweep engine. Allows the engine to be driven by real instruments (via
+ * SMUChannel) or by simulated ones (via SimulatedSMU) without caring which.
+ */
+public interface Channel {
+
+    /**
+     * Returns an object representing the physical instrument this channel belongs to. Channels on the same instrument
+     * return the same object, and commands to them must not be sent concurrently.
+     *
+     * @return Instrument
+     */
+    Object getInstrument();
+
+    /**
+     * Returns the channel underlying this one, if this channel is just a wrapper around another (eg CachedChannel).
+     *
+     * @return Underlying channel
+     */
+    default Channel unwrap() {
+        return this;
+    }
+
+    /**
+     * Called when this channel's source voltage has been set by some other means than setVoltage(...), eg by its
+     * instrument setting several channels at once, so that any wrapper can keep track of it.
+     *
+     * @param voltage The voltage it was set to [V]
+     */
+    default void voltageSet(double voltage) {}
+
+    void turnOn() throws Exception;
+
+    void turnOff() throws Exception;
+
+    void setVoltage(double voltage) throws Exception;
+
+    void setCurrent(double current) throws Exception;
+
+    double getVoltage() throws Exception;
+
+    double getCurrent() throws Exception;
+
+    void useAutoRanges() throws Exception;
+
+    void setCurrentRange(double range) throws Exception;
+
+    void setAveraging(SMU.AMode mode, int count) throws Exception;
+
+    void useFourProbe(boolean fourProbe) throws Exception;
+
+    void setIntegrationTime(double time) throws Exception;
+
+}
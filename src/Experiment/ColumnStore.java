@@ -0,0 +1,235 @@
+package Experiment;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores rows of results column-by-column in chunks of primitive doubles, rather than as one object per row. Adding a
+ * row allocates nothing except, every CHUNK_SIZE rows, one new chunk per column. Has the same named columns with units
+ * as a ResultList and writes the same CSV layout.
+ */
+public class ColumnStore implements SweepEngine.RowSink {
+
+    public static final int CHUNK_SIZE = 8192;
+
+    private final String[]     names;
+    private final String[]     units;
+    private       double[][][] chunks;     // [column][chunk][index within chunk]
+    private       int          numChunks = 0;
+    private       int          rows      = 0;
+
+    /**
+     * Creates an empty store with the given columns.
+     *
+     * @param names Column names
+     * @param units Column units (or null for none)
+     */
+    public ColumnStore(String[] names, String[] units) {
+        this.names  = names.clone();
+        this.units  = units == null ? null : units.clone();
+        this.chunks = new double[names.length][16][];
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public String[] getUnits() {
+        return units == null ? null : units.clone();
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    public synchronized int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Adds a row of data. Missing values (if the row is shorter than the number of columns) are stored as NaN.
+     *
+     * @param data Row of data
+     */
+    @Override
+    public synchronized void addData(double... data) {
+
+        int chunk = rows / CHUNK_SIZE;
+        int index = rows % CHUNK_SIZE;
+
+        if (chunk == numChunks) {
+            addChunk();
+        }
+
+        for (int c = 0; c < names.length; c++) {
+            chunks[c][chunk][index] = c < data.length ? data[c] : Double.NaN;
+        }
+
+        rows++;
+
+    }
+
+    /**
+     * Returns a single value.
+     *
+     * @param row    Row number
+     * @param column Column number
+     *
+     * @return Value
+     */
+    public synchronized double get(int row, int column) {
+        checkRow(row);
+        return chunks[column][row / CHUNK_SIZE][row % CHUNK_SIZE];
+    }
+
+    /**
+     * Copies a single row into the given array (which must have at least getColumnCount() elements).
+     *
+     * @param row         Row number
+     * @param destination Array to copy into
+     *
+     * @return The destination array
+     */
+    public synchronized double[] getRow(int row, double[] destination) {
+
+        checkRow(row);
+
+        for (int c = 0; c < names.length; c++) {
+            destination[c] = chunks[c][row / CHUNK_SIZE][row % CHUNK_SIZE];
+        }
+
+        return destination;
+
+    }
+
+    /**
+     * Returns a copy of a whole column.
+     *
+     * @param column Column number
+     *
+     * @return Values in that column, in row order
+     */
+    public synchronized double[] getColumn(int column) {
+
+        double[] values = new double[rows];
+
+        for (int chunk = 0, copied = 0; copied < rows; chunk++) {
+            int length = Math.min(CHUNK_SIZE, rows - copied);
+            System.arraycopy(chunks[column][chunk], 0, values, copied, length);
+            copied += length;
+        }
+
+        return values;
+
+    }
+
+    /**
+     * Returns the rows from (inclusive) to (exclusive) as separate arrays, eg to re-fill a ResultList behind a table.
+     *
+     * @param from First row
+     * @param to   One past the last row
+     *
+     * @return Rows
+     */
+    public synchronized List<double[]> getRows(int from, int to) {
+
+        List<double[]> list = new ArrayList<>(Math.max(0, to - from));
+
+        for (int row = Math.max(0, from); row < Math.min(to, rows); row++) {
+            list.add(getRow(row, new double[names.length]));
+        }
+
+        return list;
+
+    }
+
+    /**
+     * Removes all rows. The chunks already allocated are kept for re-use.
+     */
+    public synchronized void clear() {
+        rows = 0;
+    }
+
+    /**
+     * Returns the number of bytes taken up by the chunks allocated so far (ie not including object headers).
+     *
+     * @return Size in bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) numChunks * names.length * CHUNK_SIZE * Double.BYTES;
+    }
+
+    /**
+     * Writes all rows to a CSV file, with the same layout as ResultList.output(...) and ResultWriter.
+     *
+     * @param path Path of the file to write
+     *
+     * @throws IOException Upon the file not being writable
+     */
+    public synchronized void output(String path) throws IOException {
+
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+
+            List<String> titles = new ArrayList<>();
+
+            for (int i = 0; i < names.length; i++) {
+                titles.add(units == null ? names[i] : String.format("%s [%s]", names[i], units[i]));
+            }
+
+            writer.append(String.join(",", titles)).append('\n');
+
+            StringBuilder line = new StringBuilder();
+
+            for (int row = 0; row < rows; row++) {
+
+                line.setLength(0);
+
+                for (int c = 0; c < names.length; c++) {
+
+                    if (c > 0) {
+                        line.append(',');
+                    }
+
+                    line.append(chunks[c][row / CHUNK_SIZE][row % CHUNK_SIZE]);
+
+                }
+
+                writer.append(line).append('\n');
+
+            }
+
+        }
+
+    }
+
+    private void addChunk() {
+
+        if (numChunks == chunks[0].length) {
+            for (int c = 0; c < names.length; c++) {
+                chunks[c] = Arrays.copyOf(chunks[c], numChunks * 2);
+            }
+        }
+
+        for (int c = 0; c < names.length; c++) {
+            chunks[c][numChunks] = new double[CHUNK_SIZE];
+        }
+
+        numChunks++;
+
+    }
+
+    private void checkRow(int row) {
+
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+        }
+
+    }
+
+}
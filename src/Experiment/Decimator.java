@@ -0,0 +1,167 @@
+package Experiment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reduces a series of (x, y) points to a bounded number of points for plotting, whilst preserving its visual shape.
+ * <p>
+ * Points are grouped, in the order they were added, into buckets of consecutive points. Each bucket only remembers its
+ * minimum and maximum point (in y), so spikes are never lost. When the number of buckets reaches the limit, neighbouring
+ * buckets are merged pairwise and the bucket size doubles. Memory use is therefore fixed, however many points are added.
+ * Bucketing by acquisition order (rather than by x) keeps the forward and reverse halves of a sweep separate.
+ */
+public class Decimator {
+
+    private final int      maxBuckets;
+    private final double[] minX;
+    private final double[] minY;
+    private final long[]   minN;
+    private final double[] maxX;
+    private final double[] maxY;
+    private final long[]   maxN;
+    private       int      buckets    = 0;
+    private       int      bucketSize = 1;
+    private       int      inBucket   = 0;
+    private       long     count      = 0;
+
+    /**
+     * Creates a decimator that will output at most 2 * maxBuckets points.
+     *
+     * @param maxBuckets Maximum number of buckets (ie roughly the width of the plot in pixels)
+     */
+    public Decimator(int maxBuckets) {
+
+        this.maxBuckets = Math.max(2, maxBuckets & ~1);
+
+        minX = new double[this.maxBuckets];
+        minY = new double[this.maxBuckets];
+        minN = new long[this.maxBuckets];
+        maxX = new double[this.maxBuckets];
+        maxY = new double[this.maxBuckets];
+        maxN = new long[this.maxBuckets];
+
+    }
+
+    /**
+     * Adds a point to the series.
+     *
+     * @param x X value
+     * @param y Y value
+     */
+    public void add(double x, double y) {
+
+        if (inBucket == 0 || inBucket >= bucketSize) {
+
+            if (buckets == maxBuckets) {
+                merge();
+            }
+
+            int b = buckets++;
+
+            minX[b] = maxX[b] = x;
+            minY[b] = maxY[b] = y;
+            minN[b] = maxN[b] = count;
+            inBucket = 0;
+
+        } else {
+
+            int b = buckets - 1;
+
+            if (y < minY[b]) {
+                minX[b] = x;
+                minY[b] = y;
+                minN[b] = count;
+            }
+
+            if (y > maxY[b]) {
+                maxX[b] = x;
+                maxY[b] = y;
+                maxN[b] = count;
+            }
+
+        }
+
+        inBucket++;
+        count++;
+
+    }
+
+    /**
+     * Returns the total number of points that have been added.
+     *
+     * @return Number of points
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the decimated points, in the order they were originally added, as {x, y} pairs.
+     *
+     * @return Decimated points
+     */
+    public List<double[]> getPoints() {
+
+        List<double[]> points = new ArrayList<>(2 * buckets);
+
+        for (int b = 0; b < buckets; b++) {
+
+            if (minN[b] == maxN[b]) {
+                points.add(new double[]{minX[b], minY[b]});
+            } else if (minN[b] < maxN[b]) {
+                points.add(new double[]{minX[b], minY[b]});
+                points.add(new double[]{maxX[b], maxY[b]});
+            } else {
+                points.add(new double[]{maxX[b], maxY[b]});
+                points.add(new double[]{minX[b], minY[b]});
+            }
+
+        }
+
+        return points;
+
+    }
+
+    public void clear() {
+        buckets    = 0;
+        bucketSize = 1;
+        inBucket   = 0;
+        count      = 0;
+    }
+
+    private void merge() {
+
+        for (int i = 0; i < buckets / 2; i++) {
+
+            int a = 2 * i;
+            int b = a + 1;
+
+            if (minY[b] < minY[a]) {
+                minX[i] = minX[b];
+                minY[i] = minY[b];
+                minN[i] = minN[b];
+            } else {
+                minX[i] = minX[a];
+                minY[i] = minY[a];
+                minN[i] = minN[a];
+            }
+
+            if (maxY[b] > maxY[a]) {
+                maxX[i] = maxX[b];
+                maxY[i] = maxY[b];
+                maxN[i] = maxN[b];
+            } else {
+                maxX[i] = maxX[a];
+                maxY[i] = maxY[a];
+                maxN[i] = maxN[a];
+            }
+
+        }
+
+        buckets /= 2;
+        bucketSize *= 2;
+
+    }
+
+}
@@ -0,0 +1,406 @@
+package Experiment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the sweeps for several devices at the same time, one thread per device. Each device's sweeps are run in order
+ * and written to their own files. Where two or more devices share an instrument, their channels on it are wrapped in a
+ * LockedChannel so that only one device talks to it at a time; devices on instruments of their own are not held up.
+ * <p>
+ * If one device fails, the others carry on. Its error is reported in the summary. Each step keeps a journal of its
+ * progress, so an interrupted run can be resumed (see setResume(...)), and each finished step can be recorded in a run
+ * store (see setRunStore(...)).
+ */
+public class DeviceScheduler {
+
+    private static final int     FLUSH_ROWS = 50;
+    private static final double  FLUSH_TIME = 2.0;
+    private static final boolean FLUSH_SYNC = true;
+
+    /**
+     * A device being measured, and how it went.
+     */
+    public static class Device {
+
+        public final String                              name;
+        public final Map<SimulatedFET.Terminal, Channel> channels;
+        public final List<Recipe.Step>                   steps;
+
+        private final List<String[]> results   = new ArrayList<>();
+        private final RangePlanner   ranges    = new RangePlanner();   // Shared by all its steps
+        private       int            completed = 0;
+        private       double         duration  = 0.0;
+        private       Exception      error     = null;
+
+        Device(String name, Map<SimulatedFET.Terminal, Channel> channels, List<Recipe.Step> steps) {
+            this.name     = name;
+            this.channels = new EnumMap<>(channels);
+            this.steps    = steps;
+        }
+
+        public boolean isFinished() {
+            return error == null && completed == steps.size();
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public double getDuration() {
+            return duration;
+        }
+
+    }
+
+    private final    List<Device> devices      = new ArrayList<>();
+    private final    Cancellation cancellation = new Cancellation();
+    private          boolean      resume       = false;
+    private          RunStore     runStore     = null;
+    private          double       duration     = 0.0;
+
+    /**
+     * Sets the run store to record each finished step in (as Main does with its own runs), or null not to record them.
+     * Steps that are stopped are left until they have been resumed and finished, so that each is only recorded once.
+     *
+     * @param runStore Run store, or null
+     */
+    public void setRunStore(RunStore runStore) {
+        this.runStore = runStore;
+    }
+
+    /**
+     * Adds a device to be run.
+     *
+     * @param name     Name of the device, used in progress messages
+     * @param channels Channels connected to each of its terminals (at least DRAIN and GATE)
+     * @param steps    Sweeps to run on it, in order
+     */
+    public void add(String name, Map<SimulatedFET.Terminal, Channel> channels, List<Recipe.Step> steps) {
+
+        if (!channels.containsKey(SimulatedFET.Terminal.DRAIN) || !channels.containsKey(SimulatedFET.Terminal.GATE)) {
+            throw new IllegalArgumentException(name + ": both an sd and a gate channel are needed.");
+        }
+
+        devices.add(new Device(name, channels, steps));
+
+    }
+
+    /**
+     * Sets whether steps should pick up where they left off if a previous run of them was interrupted (and be skipped
+     * altogether if they were completed), rather than starting again from scratch. A step whose results file exists but
+     * has no journal then fails, rather than being overwritten. See SweepJournal.
+     *
+     * @param resume Resume interrupted steps?
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public List<Device> getDevices() {
+        return devices;
+    }
+
+    /**
+     * Stops every device straight away (ie without sending any more commands other than turning their outputs off).
+     * No further steps are started.
+     */
+    public void stop() {
+        cancellation.cancel();
+    }
+
+    /**
+     * Runs every device, returning once they have all finished (or failed, or been stopped).
+     *
+     * @throws InterruptedException If interrupted while waiting for the devices to finish
+     */
+    public void run() throws InterruptedException {
+
+        lockSharedInstruments();
+
+        List<Thread> threads = new ArrayList<>();
+        long         start   = System.nanoTime();
+
+        for (Device device : devices) {
+
+            Thread thread = new Thread(() -> runDevice(device), "Device: " + device.name);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            threads.add(thread);
+            thread.start();
+
+        }
+
+        try {
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+        } catch (InterruptedException e) {
+            stop();
+            throw e;
+        } finally {
+            duration = (System.nanoTime() - start) / 1e9;
+        }
+
+    }
+
+    /**
+     * Returns the number of devices that completed all of their steps, per hour of run() time.
+     *
+     * @return Devices per hour
+     */
+    public double getDevicesPerHour() {
+        long finished = devices.stream().filter(Device::isFinished).count();
+        return duration > 0 ? 3600.0 * finished / duration : 0.0;
+    }
+
+    /**
+     * Returns the wall-clock time taken by the last run(), in seconds.
+     *
+     * @return Duration, in seconds
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns a table of how long each step on each device took, followed by the overall throughput.
+     *
+     * @return Summary text
+     */
+    public String getSummary() {
+
+        StringBuilder builder = new StringBuilder();
+        double        serial  = 0.0;
+
+        builder.append(String.format("%-12s %-50s %8s %10s %12s%n", "Device", "Step", "Points", "Duration", "Per Point"));
+
+        for (Device device : devices) {
+
+            for (String[] row : device.results) {
+                builder.append(String.format("%-12s %-50s %8s %10s %12s%n", device.name, row[0], row[1], row[2], row[3]));
+            }
+
+            if (device.error != null) {
+                builder.append(String.format("%-12s FAILED: %s%n", device.name, device.error.getMessage()));
+            } else if (device.completed < device.steps.size()) {
+                builder.append(String.format("%-12s stopped after %d of %d steps%n", device.name, device.completed, device.steps.size()));
+            }
+
+            serial += device.duration;
+
+        }
+
+        long finished = devices.stream().filter(Device::isFinished).count();
+
+        builder.append(String.format(
+                "%d of %d devices completed in %.2f s (%.1f s if run one at a time): %.1f devices/hour",
+                finished,
+                devices.size(),
+                duration,
+                serial,
+                getDevicesPerHour()
+        ));
+
+        return builder.toString();
+
+    }
+
+    /**
+     * Wraps the channels of any instrument used by more than one device so that access to it is taken in turns.
+     */
+    private void lockSharedInstruments() {
+
+        Map<Object, Set<Device>> users = new HashMap<>();
+
+        for (Device device : devices) {
+            for (Channel channel : device.channels.values()) {
+                users.computeIfAbsent(channel.getInstrument(), i -> new HashSet<>()).add(device);
+            }
+        }
+
+        for (Device device : devices) {
+
+            for (Map.Entry<SimulatedFET.Terminal, Channel> entry : device.channels.entrySet()) {
+
+                Channel channel = entry.getValue();
+
+                if (users.get(channel.getInstrument()).size() > 1 && !(channel instanceof LockedChannel)) {
+                    entry.setValue(new LockedChannel(channel));
+                }
+
+            }
+
+        }
+
+    }
+
+    private void runDevice(Device device) {
+
+        long start = System.nanoTime();
+
+        try {
+
+            for (int i = 0; i < device.steps.size() && !cancellation.isCancelled(); i++) {
+
+                Recipe.Step step = device.steps.get(i);
+                System.out.printf("[%s] [%d/%d] %s%n", device.name, i + 1, device.steps.size(), step.getName());
+                runStep(device, step);
+
+            }
+
+        } catch (Exception e) {
+            device.error = e;
+            System.err.printf("[%s] Failed: %s%n", device.name, e.getMessage());
+        } finally {
+            device.duration = (System.nanoTime() - start) / 1e9;
+        }
+
+    }
+
+    private void runStep(Device device, Recipe.Step step) throws Exception {
+
+        String type = step.type == Recipe.Type.TRANSFER ? "transfer" : "output";
+
+        if (resume && SweepJournal.isComplete(step.file)) {
+            System.out.printf("[%s] %s was already completed, skipping.%n", device.name, step.getName());
+            device.results.add(new String[]{step.getName(), "-", "-", "(already done)"});
+            device.completed++;
+            return;
+        }
+
+        Channel     sd       = device.channels.get(SimulatedFET.Terminal.DRAIN);
+        Channel     gate     = device.channels.get(SimulatedFET.Terminal.GATE);
+        Channel     fpp1     = device.channels.get(SimulatedFET.Terminal.PROBE_1);
+        Channel     fpp2     = device.channels.get(SimulatedFET.Terminal.PROBE_2);
+        SweepEngine engine   = new SweepEngine(cancellation);
+
+        // Carry on from where an interrupted run of this step got to, if there was one (failing if its file has no journal)
+        SweepJournal.Position position = resume ? SweepJournal.resume(step.file, null) : null;
+        SweepParameters       params   = position != null ? position.params : step.params;
+
+        Map<String, String> instruments = new LinkedHashMap<>();
+        instruments.put("sd", SweepJournal.describe(sd));
+        instruments.put("gate", SweepJournal.describe(gate));
+
+        if (step.type == Recipe.Type.TRANSFER && params.fourProbe) {
+
+            if (fpp1 == null || fpp2 == null) {
+                throw new IllegalArgumentException(step.getName() + ": four-point-probe requires fpp1 and fpp2 SMUs.");
+            }
+
+            instruments.put("fpp1", SweepJournal.describe(fpp1));
+            instruments.put("fpp2", SweepJournal.describe(fpp2));
+
+        }
+
+        if (position != null) {
+            position.check(type, instruments);
+            System.out.printf("[%s] Resuming %s after %d rows.%n", device.name, step.getName(), position.rows);
+        }
+
+        String[] columns = step.type == Recipe.Type.TRANSFER ? SweepEngine.TRANSFER_COLUMNS : SweepEngine.OUTPUT_COLUMNS;
+        String[] units   = step.type == Recipe.Type.TRANSFER ? SweepEngine.TRANSFER_UNITS : SweepEngine.OUTPUT_UNITS;
+
+        // Keep all of this step's rows (including any measured before it was interrupted), to record once it has finished
+        ColumnStore run     = new ColumnStore(columns, units);
+        long        started = System.currentTimeMillis();
+
+        if (position != null && runStore != null) {
+            readExisting(step.file, run);
+        }
+
+        SweepEngine.RowSink rows = runStore != null ? run::addData : data -> { };
+
+        try (
+                ResultWriter writer = new ResultWriter(step.file, columns, units, FLUSH_ROWS, FLUSH_TIME, FLUSH_SYNC, position != null);
+                SweepJournal journal = position != null ? SweepJournal.reopen(step.file, position) : SweepJournal.create(step.file, type, params, instruments)
+        ) {
+
+            engine.setJournal(journal, position);
+            engine.setRangePlanner(device.ranges);
+
+            if (step.type == Recipe.Type.TRANSFER) {
+                engine.runTransfer(params, sd, gate, fpp1, fpp2, writer.andThen(rows));
+            } else {
+                engine.runOutput(params, sd, gate, writer.andThen(rows));
+            }
+
+        }
+
+        int    points   = engine.getNumPoints();
+        double duration = engine.getDuration();
+
+        // All in one go, so that it is not interleaved with what other devices' steps print
+        StringBuilder summary = new StringBuilder();
+
+        for (String line : engine.getSummary().split("\\R")) {
+            summary.append(String.format("[%s] %s%n", device.name, line));
+        }
+
+        System.out.print(summary);
+
+        device.results.add(new String[]{
+                step.getName(),
+                String.valueOf(points),
+                String.format("%.2f s", duration),
+                points > 0 ? String.format("%.1f ms", 1e3 * duration / points) : "-"
+        });
+
+        if (!cancellation.isCancelled()) {
+            device.completed++;
+            recordRun(device, type, params, started, step.file, run);
+        }
+
+    }
+
+    /**
+     * Records a finished step in the run store (if any). Failing to record it is reported but does not count as the step
+     * failing. Devices record their steps from their own threads, which RunStore.record(...) allows for.
+     */
+    private void recordRun(Device device, String type, SweepParameters params, long started, String file, ColumnStore run) {
+
+        if (runStore == null) {
+            return;
+        }
+
+        try {
+            RunStore.Run record = runStore.record(type, params, started, file, run);
+            System.out.printf("[%s] Recorded run #%d in the run store%n", device.name, record.id);
+        } catch (IOException e) {
+            System.err.printf("[%s] Could not record run in the run store: %s%n", device.name, e.getMessage());
+        }
+
+    }
+
+    /**
+     * Reads the rows already in a results file (eg when resuming an interrupted step) into the given store.
+     */
+    private static void readExisting(String file, ColumnStore store) throws IOException {
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file))) {
+
+            // Skip the header line
+            String line = reader.readLine();
+
+            while ((line = reader.readLine()) != null) {
+                store.addData(Arrays.stream(line.split(",")).mapToDouble(Double::parseDouble).toArray());
+            }
+
+        }
+
+    }
+
+}
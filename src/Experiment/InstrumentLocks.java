@@ -0,0 +1,27 @@
+package Experiment;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out one lock per physical instrument, so that anything talking to an instrument from more than one thread can
+ * make sure only one of them does so at a time.
+ */
+public class InstrumentLocks {
+
+    private static final Map<Object, ReentrantLock> locks = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Returns the lock for the given instrument (see Channel.getInstrument()).
+     *
+     * @param instrument Instrument
+     *
+     * @return Lock for that instrument
+     */
+    public static ReentrantLock get(Object instrument) {
+        return locks.computeIfAbsent(instrument, i -> new ReentrantLock(true));
+    }
+
+}
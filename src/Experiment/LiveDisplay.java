@@ -0,0 +1,246 @@
+package Experiment;
+
+import JISA.Experiment.ResultList;
+import JISA.GUI.Plot;
+import JISA.GUI.Series;
+import JISA.Util;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleFunction;
+
+/**
+ * Updates a results list (and therefore any table watching it) and a plot at a fixed frame rate, rather than every
+ * time a new row arrives.
+ * <p>
+ * Rows handed to it (as a pipeline consumer) are simply queued. Once per frame all queued rows are added to the column
+ * store in one batch, and each plot series that has changed is redrawn from a Decimator, so that the plot never holds
+ * more points than it can usefully show. The column store always gets every row, at full resolution. The results list
+ * only ever holds the most recent rows (at most tableRows), for the table to show, so that a long run does not fill the
+ * heap with one object per row.
+ */
+public class LiveDisplay implements Pipeline.Consumer {
+
+    private static final Color[] COLOURS = {
+            Color.RED, Color.BLUE, Color.GREEN, Color.ORANGE, Color.PURPLE, Color.TEAL, Color.MAGENTA, Color.BROWN
+    };
+
+    private final ColumnStore              store;
+    private final ResultList               results;
+    private final int                      tableRows;
+    private final Plot                     plot;
+    private final int                      xColumn;
+    private final int                      yColumn;
+    private final int                      seriesColumn;
+    private final DoubleFunction<String>   seriesName;
+    private final int                      buckets;
+    private final Map<Double, Line>        lines   = new LinkedHashMap<>();
+    private final List<double[]>           pending = new ArrayList<>();
+    private final ScheduledExecutorService timer;
+    private       int                      shown   = 0;
+
+    private static class Line {
+
+        final Series    series;
+        final Decimator decimator;
+        boolean         dirty = false;
+
+        Line(Series series, Decimator decimator) {
+            this.series    = series;
+            this.decimator = decimator;
+        }
+
+    }
+
+    /**
+     * Creates a live display and starts its frame timer.
+     *
+     * @param store        Column store to add every row to
+     * @param results      Results list to show the most recent rows in
+     * @param tableRows    Maximum number of rows to keep in the results list
+     * @param plot         Plot to draw on
+     * @param xColumn      Column to use for x values
+     * @param yColumn      Column to use for y values
+     * @param seriesColumn Column whose value determines which series a row belongs to
+     * @param seriesName   Gives the name of the series for a given value of the series column
+     * @param frameRate    Number of updates per second
+     * @param buckets      Maximum number of decimation buckets per series (2 points each)
+     */
+    public LiveDisplay(ColumnStore store, ResultList results, int tableRows, Plot plot, int xColumn, int yColumn, int seriesColumn, DoubleFunction<String> seriesName, double frameRate, int buckets) {
+
+        this.store        = store;
+        this.results      = results;
+        this.tableRows    = Math.max(1, tableRows);
+        this.plot         = plot;
+        this.xColumn      = xColumn;
+        this.yColumn      = yColumn;
+        this.seriesColumn = seriesColumn;
+        this.seriesName   = seriesName;
+        this.buckets      = buckets;
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Live Display");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long period = (long) (1e6 / frameRate);
+        timer.scheduleAtFixedRate(this::frame, period, period, TimeUnit.MICROSECONDS);
+
+    }
+
+    /**
+     * Queues rows to be displayed on the next frame.
+     *
+     * @param rows Rows of data
+     */
+    @Override
+    public void consume(List<double[]> rows) {
+
+        synchronized (pending) {
+            pending.addAll(rows);
+        }
+
+    }
+
+    /**
+     * Displays anything still queued straight away, without waiting for the next frame.
+     */
+    public void flush() {
+        runOnTimer(this::frame);
+    }
+
+    /**
+     * Clears the column store, results list and the plot.
+     */
+    public void clear() {
+
+        runOnTimer(() -> {
+
+            synchronized (pending) {
+                pending.clear();
+            }
+
+            store.clear();
+            results.clear();
+            shown = 0;
+
+            for (Line line : lines.values()) {
+                line.series.clear();
+                line.decimator.clear();
+            }
+
+            lines.clear();
+
+        });
+
+    }
+
+    private void runOnTimer(Runnable task) {
+
+        try {
+            timer.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Util.exceptionHandler(e);
+        }
+
+    }
+
+    private void frame() {
+
+        // An exception escaping from here would silently cancel all future frames
+        try {
+            drawFrame();
+        } catch (Exception e) {
+            Util.exceptionHandler(e);
+        }
+
+    }
+
+    private void drawFrame() {
+
+        List<double[]> rows;
+
+        synchronized (pending) {
+
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            rows = new ArrayList<>(pending);
+            pending.clear();
+
+        }
+
+        // Once the table is full, start it again from the most recent half of what it was showing
+        if (shown + rows.size() > tableRows) {
+
+            int keep = Math.max(0, tableRows / 2 - rows.size());
+
+            results.clear();
+            shown = 0;
+
+            for (double[] row : store.getRows(store.getRowCount() - keep, store.getRowCount())) {
+                results.addData(row);
+                shown++;
+            }
+
+        }
+
+        // A batch bigger than the whole table (eg existing results shown on resuming) only shows its most recent rows
+        int firstShown = Math.max(0, rows.size() - tableRows);
+
+        for (int i = 0; i < rows.size(); i++) {
+
+            double[] row = rows.get(i);
+
+            store.addData(row);
+
+            if (i >= firstShown && shown < tableRows) {
+                results.addData(row);
+                shown++;
+            }
+
+            Line line = lines.computeIfAbsent(row[seriesColumn], this::createLine);
+            line.decimator.add(row[xColumn], row[yColumn]);
+            line.dirty = true;
+
+        }
+
+        for (Line line : lines.values()) {
+
+            if (line.dirty) {
+
+                line.series.clear();
+
+                for (double[] point : line.decimator.getPoints()) {
+                    line.series.addPoint(point[0], point[1]);
+                }
+
+                line.dirty = false;
+
+            }
+
+        }
+
+    }
+
+    private Line createLine(double value) {
+
+        Series series = plot.createSeries(seriesName.apply(value), COLOURS[lines.size() % COLOURS.length]);
+        series.showMarkers(false);
+
+        return new Line(series, new Decimator(buckets));
+
+    }
+
+}
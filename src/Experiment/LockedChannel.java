@@ -0,0 +1,142 @@
+package Experiment;
+
+import JISA.Devices.SMU;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wraps a channel so that every command to it holds the lock for its instrument (see InstrumentLocks). Used when more
+ * than one device is being measured through the same instrument at once, so that the commands for one device are never
+ * interleaved with (half of) a command for another. A buffered sweep holds the lock for the whole sweep.
+ */
+public class LockedChannel implements BufferedChannel {
+
+    private final Channel       channel;
+    private final ReentrantLock lock;
+
+    public LockedChannel(Channel channel) {
+        this.channel = channel;
+        this.lock    = InstrumentLocks.get(channel.getInstrument());
+    }
+
+    @Override
+    public Object getInstrument() {
+        return channel.getInstrument();
+    }
+
+    @Override
+    public Channel unwrap() {
+        return channel.unwrap();
+    }
+
+    @Override
+    public void voltageSet(double voltage) {
+        channel.voltageSet(voltage);
+    }
+
+    @Override
+    public void turnOn() throws Exception {
+        locked(channel::turnOn);
+    }
+
+    @Override
+    public void turnOff() throws Exception {
+        locked(channel::turnOff);
+    }
+
+    @Override
+    public void setVoltage(double voltage) throws Exception {
+        locked(() -> channel.setVoltage(voltage));
+    }
+
+    @Override
+    public void setCurrent(double current) throws Exception {
+        locked(() -> channel.setCurrent(current));
+    }
+
+    @Override
+    public double getVoltage() throws Exception {
+        return read(channel::getVoltage);
+    }
+
+    @Override
+    public double getCurrent() throws Exception {
+        return read(channel::getCurrent);
+    }
+
+    @Override
+    public void useAutoRanges() throws Exception {
+        locked(channel::useAutoRanges);
+    }
+
+    @Override
+    public void setCurrentRange(double range) throws Exception {
+        locked(() -> channel.setCurrentRange(range));
+    }
+
+    @Override
+    public void setAveraging(SMU.AMode mode, int count) throws Exception {
+        locked(() -> channel.setAveraging(mode, count));
+    }
+
+    @Override
+    public void useFourProbe(boolean fourProbe) throws Exception {
+        locked(() -> channel.useFourProbe(fourProbe));
+    }
+
+    @Override
+    public void setIntegrationTime(double time) throws Exception {
+        locked(() -> channel.setIntegrationTime(time));
+    }
+
+    @Override
+    public boolean canSweep(Channel... measured) {
+        return channel instanceof BufferedChannel && ((BufferedChannel) channel).canSweep(measured);
+    }
+
+    @Override
+    public double[][] sweepVoltage(double[] voltages, long delayMSec, Channel... measured) throws Exception {
+
+        lock.lockInterruptibly();
+
+        try {
+            return ((BufferedChannel) channel).sweepVoltage(voltages, delayMSec, measured);
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    private interface Command {
+        void run() throws Exception;
+    }
+
+    private interface Reading {
+        double read() throws Exception;
+    }
+
+    private void locked(Command command) throws Exception {
+
+        lock.lockInterruptibly();
+
+        try {
+            command.run();
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    private double read(Reading reading) throws Exception {
+
+        lock.lockInterruptibly();
+
+        try {
+            return reading.read();
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+}
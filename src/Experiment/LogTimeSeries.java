@@ -0,0 +1,134 @@
+package Experiment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reduces a series of (time, value) points, such as a current logged over hours, to a bounded number of points for
+ * plotting, with finer resolution at early times than late ones.
+ * <p>
+ * Time is divided into buckets of equal width in log(time), PER_DECADE to each decade, from FIRST_TIME up to LAST_TIME
+ * (anything earlier goes in the first bucket, anything later in the last). Each bucket only keeps the sums needed for
+ * the mean of its points, and their smallest and largest values, so memory use is fixed when the series is created,
+ * however long it is added to. Compared with even decimation (see Decimator), the fast changes at the start of a bias
+ * stress measurement stay visible however long it goes on for.
+ */
+public class LogTimeSeries {
+
+    public static final double FIRST_TIME = 1e-2;  // Upper edge of the first bucket [s]
+    public static final double LAST_TIME  = 1e8;   // Lower edge of the last bucket [s] (about 3 years)
+
+    private final int      perDecade;
+    private final long[]   counts;
+    private final double[] sumTime;
+    private final double[] sumValue;
+    private final double[] minValue;
+    private final double[] maxValue;
+    private       long     total = 0;
+
+    /**
+     * Creates an empty series.
+     *
+     * @param perDecade Number of buckets per decade of time
+     */
+    public LogTimeSeries(int perDecade) {
+
+        this.perDecade = Math.max(1, perDecade);
+
+        int buckets = (int) Math.ceil(Math.log10(LAST_TIME / FIRST_TIME) * this.perDecade) + 2;
+
+        counts   = new long[buckets];
+        sumTime  = new double[buckets];
+        sumValue = new double[buckets];
+        minValue = new double[buckets];
+        maxValue = new double[buckets];
+
+    }
+
+    /**
+     * Adds a point to the series.
+     *
+     * @param time  Time [s]
+     * @param value Value
+     */
+    public synchronized void add(double time, double value) {
+
+        int bucket = bucket(time);
+
+        if (counts[bucket] == 0) {
+            minValue[bucket] = value;
+            maxValue[bucket] = value;
+        } else {
+            minValue[bucket] = Math.min(minValue[bucket], value);
+            maxValue[bucket] = Math.max(maxValue[bucket], value);
+        }
+
+        counts[bucket]++;
+        sumTime[bucket]  += time;
+        sumValue[bucket] += value;
+        total++;
+
+    }
+
+    /**
+     * Returns one point per non-empty bucket, in time order: {mean time, mean value, smallest value, largest value}.
+     *
+     * @return Points
+     */
+    public synchronized List<double[]> getPoints() {
+
+        List<double[]> points = new ArrayList<>();
+
+        for (int i = 0; i < counts.length; i++) {
+
+            if (counts[i] > 0) {
+                points.add(new double[]{sumTime[i] / counts[i], sumValue[i] / counts[i], minValue[i], maxValue[i]});
+            }
+
+        }
+
+        return points;
+
+    }
+
+    /**
+     * Returns the number of points added (not the number kept, which is at most one per bucket).
+     *
+     * @return Number of points added
+     */
+    public synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * Returns the number of buckets, ie the most points getPoints() will ever return.
+     *
+     * @return Number of buckets
+     */
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    public synchronized void clear() {
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i]   = 0;
+            sumTime[i]  = 0.0;
+            sumValue[i] = 0.0;
+        }
+
+        total = 0;
+
+    }
+
+    private int bucket(double time) {
+
+        if (!(time > FIRST_TIME)) {
+            return 0;
+        }
+
+        return (int) Math.min(counts.length - 1, 1 + Math.floor(Math.log10(time / FIRST_TIME) * perDecade));
+
+    }
+
+}
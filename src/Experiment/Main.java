@@ -9,8 +9,26 @@ import JISA.Experiment.ResultList;
 import JISA.GUI.*;
 import JISA.Util;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * JISA Template Application.
@@ -21,40 +39,74 @@ import java.util.LinkedList;
  */
 public class Main extends GUI {
 
-    // ==== DEFAULT VALUES =============================================================================================
-    private static final double MIN_SD_VOLTAGE            = -5.0;
-    private static final double MAX_SD_VOLTAGE            = -60;
-    private static final int    STEPS_SD_VOLTAGE          = 2;
-    private static final double MIN_G_VOLTAGE             = 0;
-    private static final double MAX_G_VOLTAGE             = -60;
-    private static final int    STEPS_G_VOLTAGE           = 61;
+    // ==== DEFAULT VALUES (sweep parameter defaults are in SweepParameters) ===========================================
     private static final double CURRENT_LIMIT             = 1e-3;
-    private static final int    AVERAGE_COUNT             = 5;
-    private static final double DELAY_TIME                = 0.5;
-    private static final double MIN_SD_VOLTAGE_OUTPUT     = 0.0;
-    private static final double MAX_SD_VOLTAGE_OUTPUT     = -60.0;
-    private static final int    STEPS_SD_VOLTAGE_OUTPUT   = 61;
-    private static final double MIN_GATE_VOLTAGE_OUTPUT   = 0.0;
-    private static final double MAX_GATE_VOLTAGE_OUTPUT   = -60.0;
-    private static final int    STEPS_GATE_VOLTAGE_OUTPUT = 7;
-    private static final double INTEGRATION_TIME          = 1D / 50D;
+
+    // ==== Result File Writing ========================================================================================
+    private static final int     FLUSH_ROWS = 50;   // Flush to disk after this many rows...
+    private static final double  FLUSH_TIME = 2.0;  // ...or this many seconds, whichever comes first
+    private static final boolean FLUSH_SYNC = true; // Force data onto the physical disk on each flush
+
+    // ==== Start-Up ===================================================================================================
+    private static final long   START_TIME      = System.nanoTime();
+    private static final double CONNECT_TIMEOUT = 10.0; // How long to wait for each instrument before logging it as missing [s]
+
+    // ==== Acquisition Pipeline =======================================================================================
+    private static final int PIPELINE_CAPACITY = 4096; // Rows that can be waiting to be stored/displayed at once
+
+    // ==== Live Display ===============================================================================================
+    private static final double FRAME_RATE   = 10.0;   // Plot and table updates per second
+    private static final int    PLOT_BUCKETS = 1000;   // Max. decimation buckets (2 points each) per plotted series
+    private static final int    TABLE_ROWS   = 2000;   // Max. (most recent) rows shown in each results table
+    private static final int    STRESS_STEPS = 50;     // Plotted points per decade of stress time
+
+    // ==== Timing Metrics =============================================================================================
+    private static final int METRICS_PORT = 9464; // Local port to serve the last run's timings on, for Prometheus
+
+    // ==== Run Store ==================================================================================================
+    private static final Path RUN_STORE = Paths.get(System.getProperty("user.home"), "FETCharacterisation", "runs");
 
     // ==== Transfer Curve Fields and Results ==========================================================================
-    private static Field<Double>  minGateT;
-    private static Field<Double>  maxGateT;
-    private static Field<Integer> gateStepsT;
-    private static Field<Double>  minSDT;
-    private static Field<Double>  maxSDT;
-    private static Field<Integer> sdStepsT;
-    private static Field<Double>  limitT;
-    private static Field<Integer> countT;
-    private static Field<Double>  delayT;
-    private static Field<Double>  intTimeT;
-    private static Field<String>  fileT;
-    private static Field<Boolean> fourProbeT;
-    private static ResultList     transferResults;
+    private static Field<String>      deviceT;
+    private static Field<Double>      minGateT;
+    private static Field<Double>      maxGateT;
+    private static Field<Integer>     gateStepsT;
+    private static Field<Double>      minSDT;
+    private static Field<Double>      maxSDT;
+    private static Field<Integer>     sdStepsT;
+    private static Field<Double>      limitT;
+    private static Field<Integer>     countT;
+    private static Field<Double>      delayT;
+    private static Field<Double>      intTimeT;
+    private static Field<String>      fileT;
+    private static Field<Boolean>     binaryT;
+    private static Field<Boolean>     resumeT;
+    private static Field<Boolean>     fourProbeT;
+    private static Field<Boolean>     bufferedT;
+    private static Field<Boolean>     adaptiveT;
+    private static Field<Double>      relTolT;
+    private static Field<Double>      absTolT;
+    private static Field<Boolean>     adaptiveGateT;
+    private static Field<Double>      logTolT;
+    private static Field<Double>      sqrtTolT;
+    private static Field<Boolean>     stepSettleT;
+    private static Field<Boolean>     sequentialT;
+    private static Field<Double>      precisionT;
+    private static Field<Integer>     minSamplesT;
+    private static Field<Integer>     maxSamplesT;
+    private static Field<Boolean>     rangesT;
+    private static Field<Double>      widthT;
+    private static Field<Double>      lengthT;
+    private static Field<Double>      capacitanceT;
+    private static ColumnStore        transferStore;
+    private static ResultList         transferResults;
+    private static LiveDisplay        transferDisplay;
+    private static TimingPanel        transferTiming;
+    private static ResultList         transferParameters;
+    private static ParameterExtractor transferExtractor;
 
     // ==== Output Curve Fields and Results ============================================================================
+    private static Field<String>  deviceO;
     private static Field<Double>  minGateO;
     private static Field<Double>  maxGateO;
     private static Field<Integer> gateStepsO;
@@ -66,12 +118,46 @@ public class Main extends GUI {
     private static Field<Double>  delayO;
     private static Field<Double>  intTimeO;
     private static Field<String>  fileO;
+    private static Field<Boolean> binaryO;
+    private static Field<Boolean> resumeO;
+    private static Field<Boolean> bufferedO;
+    private static Field<Boolean> adaptiveO;
+    private static Field<Double>  relTolO;
+    private static Field<Double>  absTolO;
+    private static Field<Boolean> stepSettleO;
+    private static Field<Boolean> sequentialO;
+    private static Field<Double>  precisionO;
+    private static Field<Integer> minSamplesO;
+    private static Field<Integer> maxSamplesO;
+    private static Field<Boolean> rangesO;
+    private static ColumnStore    outputStore;
     private static ResultList     outputResults;
+    private static LiveDisplay    outputDisplay;
+    private static TimingPanel    outputTiming;
+
+    // ==== Bias Stress Fields and Results =============================================================================
+    private static Field<String>  deviceS;
+    private static Field<Double>  gateS;
+    private static Field<Double>  sdS;
+    private static Field<Double>  timeS;
+    private static Field<Integer> countS;
+    private static Field<Double>  intTimeS;
+    private static Field<String>  fileS;
+    private static Field<Boolean> checksS;
+    private static Field<Double>  firstCheckS;
+    private static Field<Integer> perDecadeS;
+    private static ResultList     stressResults;
+    private static StressDisplay  stressDisplay;
+    private static ColumnStore    checkStore;
+    private static ResultList     checkResults;
+    private static LiveDisplay    checkDisplay;
+    private static TimingPanel    stressTiming;
 
     // ==== Tabs GUI (main window) =====================================================================================
     private static Tabs tabs;
 
-    private static boolean stopFlag = true;
+    private static volatile Cancellation              running = null;   // Cancels the experiment currently running (null if none)
+    private static final    Map<String, RangePlanner> ranges  = new HashMap<>();   // One per device name, shared by both tabs
 
     // ==== Connection Config Handles ==================================================================================
     private static InstrumentConfig<SMU> smu1;
@@ -79,6 +165,9 @@ public class Main extends GUI {
     private static InstrumentConfig<SMU> smu3;
     private static InstrumentConfig<SMU> smu4;
 
+    private static final List<InstrumentConfig<SMU>> instruments        = new ArrayList<>();
+    private static final Object                      UNKNOWN_INSTRUMENT = new Object();
+
     // ==== SMUs =======================================================================================================
     private static SMUConfig smuSD;
     private static SMUConfig smuG;
@@ -90,6 +179,18 @@ public class Main extends GUI {
     private static ArrayList<SRunnable> smuConfigs = new ArrayList<>();
     private static ConfigGrid  connections;
 
+    // ==== Channel State Caches (one per role) ========================================================================
+    private static final Map<SimulatedFET.Terminal, CachedChannel> cachedChannels = new EnumMap<>(SimulatedFET.Terminal.class);
+
+    // ==== Simulated Instruments (only when started with "--simulate") ================================================
+    private static Simulation simulation = null;
+
+    // ==== Metrics Endpoint (null if it could not be started) =========================================================
+    private static MetricsExporter metrics = null;
+
+    // ==== Store of Every Run (null if it could not be opened) ========================================================
+    private static RunStore runStore = null;
+
     /**
      * Runs at start, this is where it all begins.
      *
@@ -97,15 +198,32 @@ public class Main extends GUI {
      */
     private static void run(String[] args) throws Exception {
 
+        // Use simulated instruments instead of real ones if asked to
+        if (Arrays.asList(args).contains("--simulate")) {
+            simulation = new Simulation();
+        }
+
         // Create or load up config file
         config = new ConfigStore("FETCharacterisation");
 
-        // Create results storage
-        transferResults = new ResultList("SD Voltage", "Gate Voltage", "Drain Current", "Leakage", "4PP 1", "4PP 2");
-        transferResults.setUnits("V", "V", "A", "A", "V", "V");
+        // Create results storage (all rows go in the column stores, the result lists only hold what the tables show)
+        transferStore   = new ColumnStore(SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS);
+        transferResults = new ResultList(SweepEngine.TRANSFER_COLUMNS);
+        transferResults.setUnits(SweepEngine.TRANSFER_UNITS);
+
+        transferParameters = new ResultList(ParameterExtractor.COLUMNS);
+        transferParameters.setUnits(ParameterExtractor.UNITS);
 
-        outputResults = new ResultList("SD Voltage", "Gate Voltage", "Drain Current", "Leakage");
-        outputResults.setUnits("V", "V", "A", "A");
+        outputStore   = new ColumnStore(SweepEngine.OUTPUT_COLUMNS, SweepEngine.OUTPUT_UNITS);
+        outputResults = new ResultList(SweepEngine.OUTPUT_COLUMNS);
+        outputResults.setUnits(SweepEngine.OUTPUT_UNITS);
+
+        stressResults = new ResultList(SweepEngine.STRESS_COLUMNS);
+        stressResults.setUnits(SweepEngine.STRESS_UNITS);
+
+        checkStore   = new ColumnStore(SweepEngine.CHECK_COLUMNS, SweepEngine.CHECK_UNITS);
+        checkResults = new ResultList(SweepEngine.CHECK_COLUMNS);
+        checkResults.setUnits(SweepEngine.CHECK_UNITS);
 
         // Create the tabs which we shall use as the main window (ie everything else gets added to this one way or another)
         tabs = new Tabs("FET Characterisation");
@@ -115,12 +233,36 @@ public class Main extends GUI {
         createConfigSection();
         createTransferSection();
         createOutputSection();
+        createStressSection();
 
         // Make sure the window is maximised and show it
         tabs.setMaximised(true);
         tabs.setExitOnClose(true);
         tabs.show();
 
+        System.out.printf("Window shown after %.3f s%n", (System.nanoTime() - START_TIME) / 1e9);
+
+        // Serve the timings of each run locally, so they can be scraped by Prometheus (not essential, so carry on without)
+        try {
+            metrics = new MetricsExporter(METRICS_PORT);
+            System.out.printf("Serving run timings at http://localhost:%d/metrics%n", metrics.getPort());
+        } catch (IOException e) {
+            System.err.printf("Could not serve run timings on port %d: %s%n", METRICS_PORT, e.getMessage());
+        }
+
+        // Record every run in one place as well, so that they can be searched later (again, carry on without if need be)
+        try {
+            runStore = new RunStore(RUN_STORE);
+            System.out.printf("Recording runs in %s (%d so far)%n", RUN_STORE, runStore.size());
+        } catch (IOException e) {
+            System.err.printf("Could not open the run store in %s: %s%n", RUN_STORE, e.getMessage());
+        }
+
+        // Now that the window is up, connect to our instruments (in the background)
+        if (simulation == null) {
+            connectInstruments();
+        }
+
     }
 
     /**
@@ -134,16 +276,27 @@ public class Main extends GUI {
         Fields config = new Fields("Configuration");
 
         // Results displays
-        Table       table         = new Table("Table of Results", transferResults);
-        Plot        plot          = new Plot("Transfer Curve", "Gate Voltage [V]", "Drain Current [A]");
-        SeriesGroup transferCurve = plot.watchList(transferResults, 1, 2, 0);
+        Table table = new Table("Table of Results", transferResults);
+        Plot  plot  = new Plot("Transfer Curve", "Gate Voltage [V]", "Drain Current [A]");
+
+        // Rows are added to the table and plot in batches, at a fixed frame rate, with each plotted curve decimated
+        transferDisplay = new LiveDisplay(transferStore, transferResults, TABLE_ROWS, plot, 1, 2, 0, v -> seriesName(SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS, 0, v), FRAME_RATE, PLOT_BUCKETS);
+
+        // Where the time goes for each point, updated live as the sweep runs
+        transferTiming = new TimingPanel("Timing");
 
-        transferCurve.showMarkers(false);
+        // Mobility, threshold etc of each curve, extracted as the points come in
+        transferExtractor = new ParameterExtractor(transferParameters);
+        Table extracted   = new Table("Extracted Parameters", transferParameters);
 
         // Put them all in a grid
-        Grid transferGrid = new Grid("Transfer Curve", params, config, table, plot);
+        Grid transferGrid = new Grid("Transfer Curve", params, config, table, plot, extracted, transferTiming.getFields());
 
         // Add fields to panels, returning Field objects which allow use to query and set the value in each field
+        deviceT = params.addTextField("Device Name");
+
+        params.addSeparator();
+
         minGateT = params.addDoubleField("Min Gate [V]");
         maxGateT = params.addDoubleField("Max Gate [V]");
         gateStepsT = params.addIntegerField("No. Steps");
@@ -154,32 +307,65 @@ public class Main extends GUI {
         maxSDT = params.addDoubleField("Max SD [V]");
         sdStepsT = params.addIntegerField("No. Steps");
 
+        params.addSeparator();
+
+        widthT = params.addDoubleField("Channel Width [m]");
+        lengthT = params.addDoubleField("Channel Length [m]");
+        capacitanceT = params.addDoubleField("Gate Capacitance [F/m^2]");
+
         countT = config.addIntegerField("Averaging Count");
         delayT = config.addDoubleField("Delay Time [s]");
         intTimeT = config.addDoubleField("Integration Time [s]");
         fileT = config.addFileSave("Output File");
+        binaryT = config.addCheckBox("Also Write Binary (.bin)?");
+        resumeT = config.addCheckBox("Resume Interrupted Run?");
         fourProbeT = config.addCheckBox("Four Probe Measurement?");
+        bufferedT = config.addCheckBox("Buffered Sweep?");
+        adaptiveT = config.addCheckBox("Adaptive Settling?");
+        relTolT = config.addDoubleField("Settle Tolerance [%]");
+        absTolT = config.addDoubleField("Settle Tolerance [A]");
+        stepSettleT = config.addCheckBox("Scale Delay With Step Size?");
+        sequentialT = config.addCheckBox("Sequential Averaging?");
+        precisionT = config.addDoubleField("Target Precision [%]");
+        minSamplesT = config.addIntegerField("Min. Readings");
+        maxSamplesT = config.addIntegerField("Max. Readings");
+        rangesT = config.addCheckBox("Predict Current Ranges?");
+        adaptiveGateT = config.addCheckBox("Adaptive Gate Steps?");
+        logTolT = config.addDoubleField("Log(I) Tolerance [dec]");
+        sqrtTolT = config.addDoubleField("Sqrt(I) Tolerance [%]");
 
         // Set the default values
-        minGateT.set(MIN_G_VOLTAGE);
-        maxGateT.set(MAX_G_VOLTAGE);
-        gateStepsT.set(STEPS_G_VOLTAGE);
+        SweepParameters defaults = SweepParameters.transferDefaults();
+
+        deviceT.set(defaults.device);
 
-        minSDT.set(MIN_SD_VOLTAGE);
-        maxSDT.set(MAX_SD_VOLTAGE);
-        sdStepsT.set(STEPS_SD_VOLTAGE);
+        minGateT.set(defaults.minGate);
+        maxGateT.set(defaults.maxGate);
+        gateStepsT.set(defaults.gateSteps);
 
-        countT.set(AVERAGE_COUNT);
-        delayT.set(DELAY_TIME);
-        intTimeT.set(INTEGRATION_TIME);
+        minSDT.set(defaults.minSD);
+        maxSDT.set(defaults.maxSD);
+        sdStepsT.set(defaults.sdSteps);
+
+        widthT.set(defaults.channelWidth);
+        lengthT.set(defaults.channelLength);
+        capacitanceT.set(defaults.gateCapacitance);
+
+        countT.set(defaults.averageCount);
+        delayT.set(defaults.delay);
+        intTimeT.set(defaults.integrationTime);
+        relTolT.set(defaults.settleRelTolerance * 100.0); // Convert to percent
+        absTolT.set(defaults.settleAbsTolerance);
+        logTolT.set(defaults.logTolerance);
+        sqrtTolT.set(defaults.sqrtTolerance * 100.0);     // Convert to percent
+        precisionT.set(defaults.targetPrecision * 100.0); // Convert to percent
+        minSamplesT.set(defaults.minSamples);
+        maxSamplesT.set(defaults.maxSamples);
 
         // Add toolbar buttons
         transferGrid.addToolbarButton("Start Transfer", Main::doTransfer);
         transferGrid.addToolbarButton("Stop Experiment", Main::stopExperiment);
-        transferGrid.addToolbarButton("Clear", () -> {
-            transferResults.clear();
-            transferCurve.clear();
-        });
+        transferGrid.addToolbarButton("Clear", transferDisplay::clear);
 
         transferGrid.setNumColumns(2);
         tabs.add(transferGrid);
@@ -196,6 +382,10 @@ public class Main extends GUI {
         Fields params = new Fields("Experiment Parameters");
         Fields config = new Fields("Configuration");
 
+        deviceO = params.addTextField("Device Name");
+
+        params.addSeparator();
+
         minGateO = params.addDoubleField("Min Gate [V]");
         maxGateO = params.addDoubleField("Max Gate [V]");
         gateStepsO = params.addIntegerField("No. Steps");
@@ -210,38 +400,125 @@ public class Main extends GUI {
         delayO = config.addDoubleField("Delay Time [s]");
         intTimeO = config.addDoubleField("Integration Time [s]");
         fileO = config.addFileSave("Output File");
+        binaryO = config.addCheckBox("Also Write Binary (.bin)?");
+        resumeO = config.addCheckBox("Resume Interrupted Run?");
+        bufferedO = config.addCheckBox("Buffered Sweep?");
+        adaptiveO = config.addCheckBox("Adaptive Settling?");
+        relTolO = config.addDoubleField("Settle Tolerance [%]");
+        absTolO = config.addDoubleField("Settle Tolerance [A]");
+        stepSettleO = config.addCheckBox("Scale Delay With Step Size?");
+        sequentialO = config.addCheckBox("Sequential Averaging?");
+        precisionO = config.addDoubleField("Target Precision [%]");
+        minSamplesO = config.addIntegerField("Min. Readings");
+        maxSamplesO = config.addIntegerField("Max. Readings");
+        rangesO = config.addCheckBox("Predict Current Ranges?");
 
-        minGateO.set(MIN_GATE_VOLTAGE_OUTPUT);
-        maxGateO.set(MAX_GATE_VOLTAGE_OUTPUT);
-        gateStepsO.set(STEPS_GATE_VOLTAGE_OUTPUT);
+        SweepParameters defaults = SweepParameters.outputDefaults();
 
-        minSDO.set(MIN_SD_VOLTAGE_OUTPUT);
-        maxSDO.set(MAX_SD_VOLTAGE_OUTPUT);
-        sdStepsO.set(STEPS_SD_VOLTAGE_OUTPUT);
+        deviceO.set(defaults.device);
 
-        countO.set(AVERAGE_COUNT);
-        delayO.set(DELAY_TIME);
-        intTimeO.set(INTEGRATION_TIME);
+        minGateO.set(defaults.minGate);
+        maxGateO.set(defaults.maxGate);
+        gateStepsO.set(defaults.gateSteps);
 
-        Table       table       = new Table("Table of Results", outputResults);
-        Plot        plot        = new Plot("Output Curve", "SD Voltage [V]", "Drain Current [A]");
-        SeriesGroup outputCurve = plot.watchList(outputResults,0,2,1);
-        Grid        grid        = new Grid("Output Curve", params, config, table, plot);
+        minSDO.set(defaults.minSD);
+        maxSDO.set(defaults.maxSD);
+        sdStepsO.set(defaults.sdSteps);
 
-        outputCurve.showMarkers(false);
+        countO.set(defaults.averageCount);
+        delayO.set(defaults.delay);
+        intTimeO.set(defaults.integrationTime);
+        relTolO.set(defaults.settleRelTolerance * 100.0); // Convert to percent
+        absTolO.set(defaults.settleAbsTolerance);
+        precisionO.set(defaults.targetPrecision * 100.0); // Convert to percent
+        minSamplesO.set(defaults.minSamples);
+        maxSamplesO.set(defaults.maxSamples);
+
+        Table table = new Table("Table of Results", outputResults);
+        Plot  plot  = new Plot("Output Curve", "SD Voltage [V]", "Drain Current [A]");
+
+        outputTiming = new TimingPanel("Timing");
+
+        Grid grid = new Grid("Output Curve", params, config, table, plot, outputTiming.getFields());
+
+        outputDisplay = new LiveDisplay(outputStore, outputResults, TABLE_ROWS, plot, 0, 2, 1, v -> seriesName(SweepEngine.OUTPUT_COLUMNS, SweepEngine.OUTPUT_UNITS, 1, v), FRAME_RATE, PLOT_BUCKETS);
 
         grid.addToolbarButton("Start Output", Main::doOutput);
         grid.addToolbarButton("Stop Experiment", Main::stopExperiment);
+        grid.addToolbarButton("Clear", outputDisplay::clear);
+
+        grid.setNumColumns(2);
+
+        tabs.add(grid);
+
+
+    }
+
+    /**
+     * Creates the "Bias Stress" tab in the GUI, for holding the device at a fixed bias for a long time and watching how
+     * its current drifts.
+     */
+    private static void createStressSection() {
+
+        Fields params = new Fields("Experiment Parameters");
+        Fields config = new Fields("Configuration");
+
+        deviceS = params.addTextField("Device Name");
+
+        params.addSeparator();
+
+        gateS = params.addDoubleField("Gate [V]");
+        sdS = params.addDoubleField("SD [V]");
+        timeS = params.addDoubleField("Stress Time [s]");
+
+        params.addSeparator();
+
+        // The transfer sweeps themselves are set up in the "Transfer Curve" tab
+        checksS = params.addCheckBox("Transfer Sweeps During Stress?");
+        firstCheckS = params.addDoubleField("First Sweep After [s]");
+        perDecadeS = params.addIntegerField("Sweeps per Decade");
+
+        countS = config.addIntegerField("Averaging Count");
+        intTimeS = config.addDoubleField("Integration Time [s]");
+        fileS = config.addFileSave("Output File");
+
+        SweepParameters defaults = SweepParameters.stressDefaults();
+
+        deviceS.set(defaults.device);
+
+        gateS.set(defaults.stressGate);
+        sdS.set(defaults.stressSD);
+        timeS.set(defaults.stressTime);
+
+        firstCheckS.set(defaults.firstCheck);
+        perDecadeS.set(1);
+
+        countS.set(defaults.averageCount);
+        intTimeS.set(defaults.integrationTime);
+
+        Table table     = new Table("Table of Results", stressResults);
+        Plot  plot      = new Plot("Bias Stress", "Stress Time [s]", "|Current| [A]");
+        Plot  checkPlot = new Plot("Transfer Sweeps", "Gate Voltage [V]", "Drain Current [A]");
+
+        stressTiming = new TimingPanel("Timing");
+
+        Grid grid = new Grid("Bias Stress", params, config, table, plot, checkPlot, stressTiming.getFields());
+
+        // The stress data itself can go on for hours, so is plotted against log-time buckets and never all kept in memory
+        stressDisplay = new StressDisplay(stressResults, TABLE_ROWS, plot, STRESS_STEPS, FRAME_RATE);
+        checkDisplay  = new LiveDisplay(checkStore, checkResults, TABLE_ROWS, checkPlot, 2, 3, 0, v -> seriesName(SweepEngine.CHECK_COLUMNS, SweepEngine.CHECK_UNITS, 0, v), FRAME_RATE, PLOT_BUCKETS);
+
+        grid.addToolbarButton("Start Stress", Main::doStress);
+        grid.addToolbarButton("Stop Experiment", Main::stopExperiment);
         grid.addToolbarButton("Clear", () -> {
-            outputResults.clear();
-            outputCurve.clear();
+            stressDisplay.clear();
+            checkDisplay.clear();
         });
 
         grid.setNumColumns(2);
 
         tabs.add(grid);
 
-
     }
 
     /**
@@ -259,11 +536,69 @@ public class Main extends GUI {
         smu3 = connections.addInstrument("SMU 3", SMU.class);
         smu4 = connections.addInstrument("SMU 4", SMU.class);
 
+        instruments.add(smu1);
+        instruments.add(smu2);
+        instruments.add(smu3);
+        instruments.add(smu4);
+
         // Add this section to the tabs
         tabs.add(connections);
 
-        // Attempt to connect with whatever config has been loaded from our config storage
-        connections.connectAll();
+    }
+
+    /**
+     * Attempts to connect to all instruments, using whatever config has been loaded from our config storage, in the
+     * background and in parallel. Each instrument's config panel shows its status as and when it connects, and how
+     * long each one took (or that it has yet to respond) is logged.
+     */
+    private static void connectInstruments() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(instruments.size(), runnable -> {
+            Thread thread = new Thread(runnable, "Instrument Connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<Future<Double>> attempts = new ArrayList<>();
+
+        for (InstrumentConfig<SMU> instrument : instruments) {
+
+            attempts.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                instrument.connect();
+                return (System.nanoTime() - start) / 1e9;
+            }));
+
+        }
+
+        executor.shutdown();
+
+        // Wait for (and log) the results on yet another thread, so that nothing holds up the GUI
+        Thread logger = new Thread(() -> {
+
+            long deadline = System.nanoTime() + (long) (CONNECT_TIMEOUT * 1e9);
+
+            for (int i = 0; i < attempts.size(); i++) {
+
+                try {
+
+                    double taken = attempts.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    System.out.printf("SMU %d: connection attempt finished in %.3f s%n", i + 1, taken);
+
+                } catch (TimeoutException e) {
+                    System.out.printf("SMU %d: no response after %.1f s, still trying in the background%n", i + 1, CONNECT_TIMEOUT);
+                } catch (Exception e) {
+                    System.out.printf("SMU %d: connection attempt failed: %s%n", i + 1, e.getMessage());
+                }
+
+            }
+
+            System.out.printf("Start-up complete after %.3f s%n", (System.nanoTime() - START_TIME) / 1e9);
+
+        }, "Connection Logger");
+
+        logger.setDaemon(true);
+        logger.start();
 
     }
 
@@ -286,15 +621,25 @@ public class Main extends GUI {
     }
 
     /**
-     * Notifies all experiments to stop running
+     * Stops the running experiment. Nothing more is sent to its instruments other than turning their outputs off.
      */
     private static void stopExperiment() {
 
-        if (stopFlag) {
+        Cancellation cancellation = running;
+
+        if (cancellation == null) {
             GUI.errorAlert("Warning", "Nothing to Stop", "There is nothing running to stop.");
+            return;
         }
 
-        stopFlag = true;
+        cancellation.cancel();
+    }
+
+    /**
+     * Returns a line saying how quickly the outputs were turned off, if the given sweep was stopped.
+     */
+    private static String stopMessage(SweepEngine engine) {
+        return engine.getStopLatency() < 0 ? "" : String.format("\n\nOutputs turned off %.0f ms after pressing Stop.", engine.getStopLatency() * 1e3);
     }
 
     private static void applyChannelConfiguration() throws Exception {
@@ -304,6 +649,470 @@ public class Main extends GUI {
         }
     }
 
+    /**
+     * Returns the channel to use for the given SMU config, or the simulated channel connected to the given terminal if
+     * we are running in simulation mode.
+     *
+     * @param config   SMU config panel
+     * @param terminal FET terminal that this config panel represents
+     *
+     * @return Channel, null if not configured
+     *
+     * @throws Exception Upon something going wrong
+     */
+    private static Channel getChannel(SMUConfig config, SimulatedFET.Terminal terminal) throws Exception {
+
+        Channel channel;
+
+        if (simulation != null) {
+            channel = simulation.getChannel(terminal);
+        } else {
+
+            SMU smu = config.getSMU();
+
+            if (smu == null) {
+                return null;
+            }
+
+            channel = new SMUChannel(smu, getInstrument(smu));
+
+        }
+
+        // Keep using the same cache for as long as the same channel is used for this role, so that commands which
+        // would not change anything since the last run are not re-sent. A different (eg reconnected) channel gets a
+        // fresh cache.
+        CachedChannel cached = cachedChannels.get(terminal);
+
+        if (cached == null || !cached.unwrap().equals(channel)) {
+            cached = new CachedChannel(channel);
+            cachedChannels.put(terminal, cached);
+        }
+
+        return cached;
+
+    }
+
+    /**
+     * Resets the command counts of all cached channels, ready for a new run.
+     */
+    private static void resetCommandCounts() {
+        cachedChannels.values().forEach(CachedChannel::resetCounts);
+    }
+
+    /**
+     * Returns a summary of how many commands were sent and suppressed by the cached channels during the last run.
+     *
+     * @return Summary
+     */
+    private static String getCommandSummary() {
+
+        long sent       = 0;
+        long suppressed = 0;
+
+        for (CachedChannel cached : cachedChannels.values()) {
+            sent       += cached.getSent();
+            suppressed += cached.getSuppressed();
+        }
+
+        return String.format("Commands: %d sent, %d redundant ones suppressed", sent, suppressed);
+
+    }
+
+    /**
+     * Works out which of the connected instruments the given SMU (channel) belongs to, so that channels on the same
+     * instrument are never sent commands concurrently. If it cannot be worked out, a single shared object is returned
+     * so that all such channels are treated as being on one instrument (ie the safe option).
+     *
+     * @param smu SMU channel
+     *
+     * @return Object representing its instrument
+     *
+     * @throws Exception Upon something going wrong
+     */
+    private static Object getInstrument(SMU smu) throws Exception {
+
+        for (InstrumentConfig<SMU> config : instruments) {
+
+            SMU instrument = config.get();
+
+            if (instrument == smu) {
+                return instrument;
+            }
+
+            if (instrument instanceof MCSMU) {
+
+                MCSMU mcsmu = (MCSMU) instrument;
+
+                for (int i = 0; i < mcsmu.getNumChannels(); i++) {
+
+                    if (mcsmu.getChannel(i) == smu) {
+                        return mcsmu;
+                    }
+
+                }
+
+            }
+
+        }
+
+        return UNKNOWN_INSTRUMENT;
+
+    }
+
+    /**
+     * Runs the given acquisition task on its own (high priority) thread, waiting for it to finish. Everything done with
+     * the results (storage, GUI etc) happens on the pipeline's consumer threads so cannot slow this thread down.
+     *
+     * @param task Acquisition task
+     *
+     * @throws Exception Whatever the task threw
+     */
+    private static void runAcquisition(SRunnable task) throws Exception {
+
+        AtomicReference<Exception> error  = new AtomicReference<>();
+        Thread                     thread = new Thread(() -> {
+
+            try {
+                task.run();
+            } catch (Exception e) {
+                error.set(e);
+            }
+
+        }, "Acquisition");
+
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+        thread.join();
+
+        if (error.get() != null) {
+            throw error.get();
+        }
+
+    }
+
+    /**
+     * Returns the path to write binary results to, alongside the given CSV file (ie with its extension replaced by .bin).
+     */
+    private static String binaryPath(String outputFile) {
+        return siblingPath(outputFile, ".bin");
+    }
+
+    /**
+     * Returns the given CSV file's path with its extension replaced by the given one.
+     */
+    private static String siblingPath(String outputFile, String extension) {
+        return outputFile.toLowerCase().endsWith(".csv") ? outputFile.substring(0, outputFile.length() - 4) + extension : outputFile + extension;
+    }
+
+    /**
+     * Writes the phase timings of the given (finished) sweep to a metrics file alongside its results, and serves them
+     * from the metrics endpoint.
+     */
+    private static void publishMetrics(String outputFile, String type, SweepEngine engine) throws IOException {
+
+        String text = MetricsExporter.format(engine.getTimer(), type, engine.getNumPoints());
+
+        MetricsExporter.write(siblingPath(outputFile, ".metrics"), text);
+
+        if (metrics != null) {
+            metrics.publish(text);
+        }
+
+    }
+
+    /**
+     * Records a finished run in the run store (if open). Stopped runs are left until they have been resumed and finished,
+     * so that each run is only recorded once, and failing to record one is reported but does not count as the run failing.
+     */
+    private static void recordRun(String type, SweepParameters params, long started, String outputFile, ColumnStore run) {
+
+        if (runStore == null) {
+            return;
+        }
+
+        try {
+            RunStore.Run record = runStore.record(type, params, started, outputFile, run);
+            System.out.printf("Recorded run #%d in the run store%n", record.id);
+        } catch (IOException e) {
+            System.err.printf("Could not record run in the run store: %s%n", e.getMessage());
+        }
+
+    }
+
+    /**
+     * Returns a description of the instrument used for each role, to record in (or check against) a sweep journal. The
+     * four-point-probe roles are only included if they are to be used.
+     */
+    private static Map<String, String> describeInstruments(SweepParameters params, Channel sd, Channel gate, Channel fpp1, Channel fpp2) throws Exception {
+
+        Map<String, String> instruments = new LinkedHashMap<>();
+
+        instruments.put("sd", SweepJournal.describe(sd));
+        instruments.put("gate", SweepJournal.describe(gate));
+
+        if (params.fourProbe) {
+            instruments.put("fpp1", SweepJournal.describe(fpp1));
+            instruments.put("fpp2", SweepJournal.describe(fpp2));
+        }
+
+        return instruments;
+
+    }
+
+    /**
+     * Clears the given display and shows the rows already in a results file on it, eg when resuming an interrupted run.
+     * Returns the rows, for anything else that needs to catch up with them.
+     */
+    private static List<double[]> showExisting(String outputFile, LiveDisplay display) throws IOException {
+
+        List<double[]> rows = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(outputFile))) {
+
+            // Skip the header line
+            String line = reader.readLine();
+
+            while ((line = reader.readLine()) != null) {
+                rows.add(Arrays.stream(line.split(",")).mapToDouble(Double::parseDouble).toArray());
+            }
+
+        }
+
+        display.clear();
+        display.consume(rows);
+        display.flush();
+
+        return rows;
+
+    }
+
+    /**
+     * Opens the binary results file, if there is one to write. When resuming, it is added to, unless it has gone missing,
+     * in which case it is started afresh with the rows already in the results file so that it still holds the whole run.
+     */
+    private static BinaryResultWriter openBinary(String binaryFile, String[] columns, String[] units, boolean resuming, List<double[]> existing) throws IOException {
+
+        if (binaryFile == null) {
+            return null;
+        }
+
+        boolean            append = resuming && Files.exists(Paths.get(binaryFile));
+        BinaryResultWriter binary = new BinaryResultWriter(binaryFile, columns, units, append);
+
+        if (resuming && !append) {
+
+            try {
+
+                for (double[] row : existing) {
+                    binary.addData(row);
+                }
+
+            } catch (IOException e) {
+                binary.close();
+                throw e;
+            }
+
+        }
+
+        return binary;
+
+    }
+
+    /**
+     * Starts a pipeline that passes every row to the given writer(s) and live display, timing how long each takes, and
+     * keeps the given timing panel up to date.
+     *
+     * @param writer       Result file writer
+     * @param binary       Binary result file writer, or null if not writing one
+     * @param display      Live display (results list, table and plot)
+     * @param timer        Phase timer for the run
+     * @param timing       Timing panel to show the timer on
+     * @param extractor    Parameter extractor to pass every row to as well, or null if none
+     * @param run          Store to keep every row of the run in, to record in the run store at the end
+     * @param cancellation Cancellation of the run, to stop it if the results can no longer be written
+     *
+     * @return Running pipeline
+     */
+    private static Pipeline startPipeline(ResultWriter writer, BinaryResultWriter binary, LiveDisplay display, PhaseTimer timer, TimingPanel timing, ParameterExtractor extractor, ColumnStore run, Cancellation cancellation) {
+
+        SweepEngine.RowSink storage = binary == null ? writer : writer.andThen(binary);
+
+        timing.setTimer(timer);
+
+        // If the results can no longer be saved (eg the disk is full), stop rather than carry on measuring for nothing
+        Pipeline.Builder builder = new Pipeline.Builder(PIPELINE_CAPACITY)
+                .addLossless("Storage", timer.time(PhaseTimer.Phase.WRITE, rows -> {
+                    for (double[] row : rows) {
+                        storage.addData(row);
+                    }
+                }), cancellation)
+                .addLossless("Display", timer.time(PhaseTimer.Phase.DISPLAY, display))
+                .addLossless("Run Store", rows -> {
+                    for (double[] row : rows) {
+                        run.addData(row);
+                    }
+                })
+                .addLossy("Timing", timing);
+
+        // The extractor's fits need every point, so it can't be lossy
+        if (extractor != null) {
+            builder.addLossless("Extraction", extractor);
+        }
+
+        return builder.start();
+
+    }
+
+    /**
+     * Waits for the pipeline to empty, brings the display up to date, closes the writer(s) and prints a summary of how
+     * they all performed.
+     *
+     * @param pipeline Pipeline to close
+     * @param writer   Writer to close
+     * @param binary   Binary writer to close, or null if not writing one
+     * @param display  Display to bring up to date
+     * @param timing   Timing panel to bring up to date
+     *
+     * @throws Exception Upon any of them failing
+     */
+    private static void closePipeline(Pipeline pipeline, ResultWriter writer, BinaryResultWriter binary, LiveDisplay display, TimingPanel timing) throws Exception {
+
+        try {
+            pipeline.close();
+        } finally {
+
+            display.flush();
+            timing.refresh();
+
+            try {
+                writer.close();
+            } finally {
+                if (binary != null) {
+                    binary.close();
+                }
+            }
+
+            System.out.println(pipeline.getSummary());
+            System.out.println(writer.getSummary());
+
+            if (binary != null) {
+                System.out.println(binary.getSummary());
+            }
+
+            System.out.println(getCommandSummary());
+
+            if (simulation != null) {
+                System.out.printf("Simulated instruments have received %d commands in total%n", simulation.getCommandCount());
+            }
+
+        }
+
+    }
+
+    /**
+     * Returns the name to give a plotted series, eg "SD Voltage = -5.0 V".
+     */
+    private static String seriesName(String[] columns, String[] units, int column, double value) {
+        return String.format("%s = %s %s", columns[column], value, units[column]);
+    }
+
+    /**
+     * Reads the sweep parameters currently entered into the "Transfer Curve" tab.
+     *
+     * @return Sweep parameters
+     */
+    private static SweepParameters readTransferParameters() {
+
+        SweepParameters params = new SweepParameters();
+
+        params.device              = deviceT.get().trim();
+        params.minGate             = minGateT.get();
+        params.maxGate             = maxGateT.get();
+        params.gateSteps           = gateStepsT.get();
+        params.minSD               = minSDT.get();
+        params.maxSD               = maxSDT.get();
+        params.sdSteps             = sdStepsT.get();
+        params.averageCount        = countT.get();
+        params.delay               = delayT.get();
+        params.integrationTime     = intTimeT.get();
+        params.fourProbe           = fourProbeT.get();
+        params.buffered            = bufferedT.get();
+        params.adaptiveSettling    = adaptiveT.get();
+        params.settleRelTolerance  = relTolT.get() / 100.0; // Convert from percent
+        params.settleAbsTolerance  = absTolT.get();
+        params.stepSettling        = stepSettleT.get();
+        params.sequentialAveraging = sequentialT.get();
+        params.targetPrecision     = precisionT.get() / 100.0; // Convert from percent
+        params.minSamples          = minSamplesT.get();
+        params.maxSamples          = maxSamplesT.get();
+        params.rangePlanning       = rangesT.get();
+        params.adaptiveGate        = adaptiveGateT.get();
+        params.logTolerance        = logTolT.get();
+        params.sqrtTolerance       = sqrtTolT.get() / 100.0; // Convert from percent
+        params.channelWidth        = widthT.get();
+        params.channelLength       = lengthT.get();
+        params.gateCapacitance     = capacitanceT.get();
+
+        return params;
+
+    }
+
+    /**
+     * Reads the sweep parameters currently entered into the "Output Curve" tab.
+     *
+     * @return Sweep parameters
+     */
+    private static SweepParameters readOutputParameters() {
+
+        SweepParameters params = new SweepParameters();
+
+        params.device              = deviceO.get().trim();
+        params.minGate             = minGateO.get();
+        params.maxGate             = maxGateO.get();
+        params.gateSteps           = gateStepsO.get();
+        params.minSD               = minSDO.get();
+        params.maxSD               = maxSDO.get();
+        params.sdSteps             = sdStepsO.get();
+        params.averageCount        = countO.get();
+        params.delay               = delayO.get();
+        params.integrationTime     = intTimeO.get();
+        params.buffered            = bufferedO.get();
+        params.adaptiveSettling    = adaptiveO.get();
+        params.settleRelTolerance  = relTolO.get() / 100.0; // Convert from percent
+        params.settleAbsTolerance  = absTolO.get();
+        params.stepSettling        = stepSettleO.get();
+        params.sequentialAveraging = sequentialO.get();
+        params.targetPrecision     = precisionO.get() / 100.0; // Convert from percent
+        params.minSamples          = minSamplesO.get();
+        params.maxSamples          = maxSamplesO.get();
+        params.rangePlanning       = rangesO.get();
+
+        return params;
+
+    }
+
+    /**
+     * Reads the parameters currently entered into the "Bias Stress" tab.
+     *
+     * @return Stress parameters
+     */
+    private static SweepParameters readStressParameters() {
+
+        SweepParameters params = new SweepParameters();
+
+        params.device          = deviceS.get().trim();
+        params.stressGate      = gateS.get();
+        params.stressSD        = sdS.get();
+        params.stressTime      = timeS.get();
+        params.firstCheck      = firstCheckS.get();
+        params.checksPerDecade = checksS.get() ? perDecadeS.get() : 0;
+        params.averageCount    = countS.get();
+        params.integrationTime = intTimeS.get();
+
+        return params;
+
+    }
+
     /**
      * Performs a transfer curve characterisation, outputting the data to a CSV file.
      *
@@ -311,10 +1120,10 @@ public class Main extends GUI {
      */
     private static void doTransfer() throws Exception {
 
-        SMU smuSD = Main.smuSD.getSMU();
-        SMU smuG  = Main.smuG.getSMU();
-        SMU smu4P1 = Main.smu4P1.getSMU();
-        SMU smu4P2 = Main.smu4P2.getSMU();
+        Channel smuSD  = getChannel(Main.smuSD, SimulatedFET.Terminal.DRAIN);
+        Channel smuG   = getChannel(Main.smuG, SimulatedFET.Terminal.GATE);
+        Channel smu4P1 = getChannel(Main.smu4P1, SimulatedFET.Terminal.PROBE_1);
+        Channel smu4P2 = getChannel(Main.smu4P2, SimulatedFET.Terminal.PROBE_2);
 
         // Make sure we have applied our config before running
         applyChannelConfiguration();
@@ -339,8 +1148,8 @@ public class Main extends GUI {
             errors.add("To perform four-point-probe measurements, the 4PP SMUs must be configured.");
         }
 
-        // If stopFlag == false then another experiment must be currently running
-        if (!stopFlag) {
+        // If something is running then we'll have to wait for it to finish
+        if (running != null) {
             errors.add("Another experiment is already running.\n\nPlease wait until it has finished.");
         }
 
@@ -359,113 +1168,96 @@ public class Main extends GUI {
             return;
         }
 
-        // Set stopFlag to false so that the rest of the programme knows we're running
-        stopFlag = false;
-
-        // Get the values currently entered into the various parameter text-boxes
-        double minVG        = minGateT.get();
-        double maxVG        = maxGateT.get();
-        int    stepsVG      = gateStepsT.get();
-        double minSDV       = minSDT.get();
-        double maxSDV       = maxSDT.get();
-        int    stepsSDV     = sdStepsT.get();
-        int    averageCount = countT.get();
-        int    delayMSec    = (int) (delayT.get() * 1000); // Convert to milli-seconds
-        double intTime      = intTimeT.get();
-
-        // Create arrays of the voltages we are going to use
-        double[] gateVoltages = Util.symArray(Util.makeLinearArray(minVG, maxVG, stepsVG));
-        double[] sdVoltages   = Util.makeLinearArray(minSDV, maxSDV, stepsSDV);
-
-        // Configure the Source-Drain SMU channel
-        smuSD.turnOff();                                           // Make sure we're not outputting anything yet
-        smuSD.setVoltage(minSDV);                                  // Source voltage, initial value
-        smuSD.useAutoRanges();                                     // Use auto-ranging for both voltage and current
-        smuSD.setAveraging(SMU.AMode.MEAN_REPEAT, averageCount);   // Use repeated-mean averaging with user-inputted n
-        smuSD.useFourProbe(false);                                 // We only want 2-wire measurements
-        smuSD.setIntegrationTime(intTime);                         // Set the integration time
-
-        // Configure the Gate SMU channel
-        smuG.turnOff();                                            // Make sure we're not outputting anything yet
-        smuG.setVoltage(minVG);                                    // Source voltage, initial value
-        smuG.useAutoRanges();                                      // Use auto-ranging for both voltage and current
-        smuG.setAveraging(SMU.AMode.MEAN_REPEAT, averageCount);    // Set-up averaging
-        smuG.useFourProbe(false);                                  // 2-wire measurements
-        smuG.setIntegrationTime(intTime);                          // Set the integration time
-
-
-        if (useFourProbe) {
-
-            // Configure the 4PP-1 SMU channel to act as a voltmeter
-            smu4P1.turnOff();                                         // Make sure we're not outputting yet
-            smu4P1.setCurrent(0);                                     // We want to source 0 A of current
-            smu4P1.useAutoRanges();                                   // Auto-ranging
-            smu4P1.setAveraging(SMU.AMode.MEAN_REPEAT, averageCount); // Averaging mode and count
-            smu4P1.useFourProbe(false);                               // 2-wire measurements
-            smu4P1.setIntegrationTime(intTime);                       // Set the integration time
-            smu4P1.setCurrentRange(10E-12);
-            // Configure the 4PP-2 SMU channel to act as a voltmeter
-            smu4P2.turnOff();                                         // Make sure we're not outputting yet
-            smu4P2.setCurrent(0);                                     // We want to source 0 A of current
-            smu4P2.setAveraging(SMU.AMode.MEAN_REPEAT, averageCount); // Averaging mode and count
-            smu4P2.useFourProbe(false);                               // 2-wire measurements
-            smu4P2.setIntegrationTime(intTime);                       // Set the integration time
-
-            // Enable voltage probes (SMU channels)
-            smu4P1.turnOn();
-            smu4P2.turnOn();
-        }
-
-        // Enable the SMU channels
-        smuSD.turnOn();
-        smuG.turnOn();
-
-        // mainLoop: is a "label", marking this for loop as being our "mainLoop" so that we can tell Java to break out of
-        // this loop when needed
-        mainLoop:
-        for (double VSD : sdVoltages) {
-            smuSD.setVoltage(VSD);
-            for (double VG : gateVoltages) {
-                smuG.setVoltage(VG);
-
-                // Wait our delay time before measuring
-                Thread.sleep(delayMSec);
-
-                transferResults.addData(
-                        VSD,
-                        VG,
-                        smuSD.getCurrent(),
-                        smuG.getCurrent(),
-                        useFourProbe ? smu4P1.getVoltage() : 0,
-                        useFourProbe ? smu4P2.getVoltage() : 0
-                );
-
-                // If the stopFlag changes to true, then someone has pressed the Stop button
-                if (stopFlag) {
-                    break mainLoop; // Break out of mainLoop:
-                }
+        // If asked to, find where an interrupted run into this file got to, we then carry on with its parameters
+        String                binaryFile = binaryT.get() ? binaryPath(outputFile) : null;
+        SweepJournal.Position resume;
 
+        // A file that cannot be resumed (no journal, or already complete) must not be started again and overwritten
+        try {
+            resume = resumeT.get() ? SweepJournal.resume(outputFile, binaryFile) : null;
+        } catch (IOException e) {
+            GUI.errorAlert("Error", "Could Not Resume Experiment", e.getMessage(), 600);
+            return;
+        }
+
+        SweepParameters params = resume != null ? resume.params : readTransferParameters();
+
+        Map<String, String> instruments = describeInstruments(params, smuSD, smuG, smu4P1, smu4P2);
+        List<double[]>      existing    = new ArrayList<>();
+
+        if (resume != null) {
+
+            try {
+                resume.check("transfer", instruments);
+            } catch (IOException e) {
+                GUI.errorAlert("Error", "Could Not Resume Experiment", e.getMessage(), 600);
+                return;
             }
 
+            existing = showExisting(outputFile, transferDisplay);
+
         }
 
-        // Make sure all channels are turned back off
-        smuSD.turnOff();
-        smuG.turnOff();
+        // Extract parameters from this run's rows only (including any measured before it was interrupted)
+        transferExtractor.start(params.minGate, params.maxGate, params.channelWidth, params.channelLength, params.gateCapacitance);
+        transferExtractor.consume(existing);
 
-        if (useFourProbe) {
-            smu4P1.turnOff();
-            smu4P2.turnOff();
-        }
+        // Keep all of this run's rows, to record in the run store once it has finished
+        ColumnStore run     = new ColumnStore(SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS);
+        long        started = System.currentTimeMillis();
 
-        // Output our data as a CSV file
-        transferResults.output(outputFile);
+        existing.forEach(run::addData);
 
-        // Tell the user we're done
-        GUI.infoAlert("Complete", stopFlag ? "Measurement Stopped" : "Measurement Complete", "Transfer curve data saved to:\n" + outputFile, 600);
+        // Let the rest of the programme know we're running, and how to stop us
+        Cancellation cancellation = new Cancellation();
+        SweepEngine  engine       = new SweepEngine(cancellation);
+        running = cancellation;
+        engine.setRangePlanner(ranges.computeIfAbsent(params.device, k -> new RangePlanner()));
+
+        try {
+
+            resetCommandCounts();
+
+            // Write our data to a CSV file as we go, so that nothing is lost if something goes wrong part-way through,
+            // optionally also in binary, which is much quicker to load back in for analysis, and keep track of how far
+            // we get, so that we can resume from there if interrupted (each is closed again if opening the next fails)
+            try (
+                    ResultWriter       writer  = new ResultWriter(outputFile, SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS, FLUSH_ROWS, FLUSH_TIME, FLUSH_SYNC, resume != null);
+                    BinaryResultWriter binary  = openBinary(binaryFile, SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS, resume != null, existing);
+                    SweepJournal       journal = resume != null ? SweepJournal.reopen(outputFile, resume) : SweepJournal.create(outputFile, "transfer", params, instruments)
+            ) {
+
+                // Time every phase of every point, from setting voltages to drawing the results
+                PhaseTimer timer = new PhaseTimer();
+
+                // Run the sweep, pressing the Stop button cancels it (see stopExperiment())
+                Pipeline pipeline = startPipeline(writer, binary, transferDisplay, timer, transferTiming, transferExtractor, run, cancellation);
+
+                engine.setJournal(journal, resume);
+                engine.setTimer(timer);
+
+                try {
+                    runAcquisition(() -> engine.runTransfer(params, smuSD, smuG, smu4P1, smu4P2, pipeline));
+                } finally {
+                    closePipeline(pipeline, writer, binary, transferDisplay, transferTiming);
+                    transferExtractor.refresh();
+                }
+
+            }
 
-        // Reset the stop flag
-        stopFlag = true;
+            System.out.print(engine.getSummary());
+            publishMetrics(outputFile, "transfer", engine);
+
+            if (!cancellation.isCancelled()) {
+                recordRun("transfer", params, started, outputFile, run);
+            }
+
+        } finally {
+            running = null;
+        }
+
+        // Tell the user we're done
+        GUI.infoAlert("Complete", cancellation.isCancelled() ? "Measurement Stopped" : "Measurement Complete", "Transfer curve data saved to:\n" + outputFile + stopMessage(engine), 600);
 
     }
 
@@ -476,10 +1268,8 @@ public class Main extends GUI {
      */
     private static void doOutput() throws Exception {
 
-        SMU smuSD = Main.smuSD.getSMU();
-        SMU smuG  = Main.smuG.getSMU();
-        SMU smu4P1 = Main.smu4P1.getSMU();
-        SMU smu4P2 = Main.smu4P2.getSMU();
+        Channel smuSD = getChannel(Main.smuSD, SimulatedFET.Terminal.DRAIN);
+        Channel smuG  = getChannel(Main.smuG, SimulatedFET.Terminal.GATE);
 
         // Run that config code we stored previously
         applyChannelConfiguration();
@@ -495,8 +1285,8 @@ public class Main extends GUI {
             errors.add("The Source-Gate SMU is not configured.");
         }
 
-        // If stopFlag == false then another measurement must already be running
-        if (!stopFlag) {
+        // If something is already running then we can't start another
+        if (running != null) {
             errors.add("Another experiment is already running.\n\nPlease wait until it has finished.");
         }
 
@@ -515,107 +1305,214 @@ public class Main extends GUI {
             return;
         }
 
-        // Set the stopFlag to indicate we are now running
-        stopFlag = false;
-
-        // Get the values currently in the various configuration text-box fields
-        double minVG        = minGateO.get();
-        double maxVG        = maxGateO.get();
-        int    stepsVG      = gateStepsO.get();
-        double minSDV       = minSDO.get();
-        double maxSDV       = maxSDO.get();
-        int    stepsSDV     = sdStepsO.get();
-        int    averageCount = countO.get();
-        int    delayMSec    = (int) (delayO.get() * 1000); // Convert to milliseconds
-        double intTime      = intTimeO.get();
-
-        // Generate arrays of the voltage values we will use
-        double[] gateVoltages = Util.makeLinearArray(minVG, maxVG, stepsVG);
-        double[] sdVoltages   = Util.makeLinearArray(minSDV, maxSDV, stepsSDV);
-        double[] gateVoltagesRev = Util.makeLinearArray(maxVG, minVG, stepsVG);
-        double[] sdVoltagesRev   = Util.makeLinearArray(maxSDV, minSDV, stepsSDV);
-
-        // Configure Source-Drain SMU
-        smuSD.turnOff();                                         // Make sure we're not outputting yet
-        smuSD.setVoltage(minSDV);                                // Source voltage, set initial value
-        smuSD.useAutoRanges();                                   // Use auto-ranging for both quantities
-        smuSD.setAveraging(SMU.AMode.MEAN_REPEAT, averageCount); // Set averaging to mean and user-defined count
-        smuSD.useFourProbe(false);                               // We want 2-wire measurements
-        smuSD.setIntegrationTime(intTime);                       // Set the integration time to what the user entered
-
-        // Configure Source-Gate SMU
-        smuG.turnOff();                                          // Make sure we're not outputting yet
-        smuG.setVoltage(minVG);                                  // Source voltage, set initial value
-        smuG.useAutoRanges();                                    // Use auto-ranging for both quantities
-        smuG.setAveraging(SMU.AMode.MEAN_REPEAT, averageCount);  // Set averaging to mean and user-defined count
-        smuG.useFourProbe(false);                                // We want 2-wire measurements
-        smuG.setIntegrationTime(intTime);                        // Set the integration time to what the user entered
-
-        // Enable outputs
-        smuSD.turnOn();
-        smuG.turnOn();
-
-        // Label outer loop so we can break out of it if needed
-        mainLoop:
-        for (double VG : gateVoltages) {
-
-            smuG.setVoltage(VG);
-
-            for (double VSD : sdVoltages) {
-
-                smuSD.setVoltage(VSD);
-
-                // Wait our delay time before taking the measurement
-                Thread.sleep(delayMSec);
-
-                outputResults.addData(
-                        VSD,
-                        VG,
-                        smuSD.getCurrent(),
-                        smuG.getCurrent()
-                );
-
-                // If the stop flag has become true then the user has pressed the "Stop" button
-                if (stopFlag) {
-                    break mainLoop;
-                }
+        // Either carry on from an interrupted run into this file, or start afresh with the values currently entered
+        String                binaryFile = binaryO.get() ? binaryPath(outputFile) : null;
+        SweepJournal.Position resume;
+
+        // A file that cannot be resumed (no journal, or already complete) must not be started again and overwritten
+        try {
+            resume = resumeO.get() ? SweepJournal.resume(outputFile, binaryFile) : null;
+        } catch (IOException e) {
+            GUI.errorAlert("Error", "Could Not Resume Experiment", e.getMessage(), 600);
+            return;
+        }
+
+        SweepParameters params = resume != null ? resume.params : readOutputParameters();
+
+        Map<String, String> instruments = describeInstruments(params, smuSD, smuG, null, null);
+        List<double[]>      existing    = new ArrayList<>();
 
+        if (resume != null) {
+
+            try {
+                resume.check("output", instruments);
+            } catch (IOException e) {
+                GUI.errorAlert("Error", "Could Not Resume Experiment", e.getMessage(), 600);
+                return;
             }
-            for (double VSD : sdVoltagesRev) {
 
-                smuSD.setVoltage(VSD);
+            existing = showExisting(outputFile, outputDisplay);
+
+        }
+
+        // Keep all of this run's rows, to record in the run store once it has finished
+        ColumnStore run     = new ColumnStore(SweepEngine.OUTPUT_COLUMNS, SweepEngine.OUTPUT_UNITS);
+        long        started = System.currentTimeMillis();
 
-                // Wait our delay time before taking the measurement
-                Thread.sleep(delayMSec);
+        existing.forEach(run::addData);
+
+        // Indicate we are now running, and how to stop us
+        Cancellation cancellation = new Cancellation();
+        SweepEngine  engine       = new SweepEngine(cancellation);
+        running = cancellation;
+        engine.setRangePlanner(ranges.computeIfAbsent(params.device, k -> new RangePlanner()));
+
+        try {
 
-                outputResults.addData(
-                        VSD,
-                        VG,
-                        smuSD.getCurrent(),
-                        smuG.getCurrent()
-                );
+            resetCommandCounts();
 
-                // If the stop flag has become true then the user has pressed the "Stop" button
-                if (stopFlag) {
-                    break mainLoop;
+            try (
+                    ResultWriter       writer  = new ResultWriter(outputFile, SweepEngine.OUTPUT_COLUMNS, SweepEngine.OUTPUT_UNITS, FLUSH_ROWS, FLUSH_TIME, FLUSH_SYNC, resume != null);
+                    BinaryResultWriter binary  = openBinary(binaryFile, SweepEngine.OUTPUT_COLUMNS, SweepEngine.OUTPUT_UNITS, resume != null, existing);
+                    SweepJournal       journal = resume != null ? SweepJournal.reopen(outputFile, resume) : SweepJournal.create(outputFile, "output", params, instruments)
+            ) {
+
+                PhaseTimer timer    = new PhaseTimer();
+                Pipeline   pipeline = startPipeline(writer, binary, outputDisplay, timer, outputTiming, null, run, cancellation);
+
+                engine.setJournal(journal, resume);
+                engine.setTimer(timer);
+
+                try {
+                    runAcquisition(() -> engine.runOutput(params, smuSD, smuG, pipeline));
+                } finally {
+                    closePipeline(pipeline, writer, binary, outputDisplay, outputTiming);
                 }
 
             }
+
+            System.out.print(engine.getSummary());
+            publishMetrics(outputFile, "output", engine);
+
+            if (!cancellation.isCancelled()) {
+                recordRun("output", params, started, outputFile, run);
+            }
+
+        } finally {
+            running = null;
+        }
+
+        GUI.infoAlert("Complete", cancellation.isCancelled() ? "Measurement Stopped" : "Measurement Complete", "Output curve data saved to:\n" + outputFile + stopMessage(engine), 600);
+
+    }
+
+    /**
+     * Performs a bias stress run, outputting the data to a CSV file (and any transfer sweeps part-way through to another
+     * alongside it, ending "-sweeps.csv").
+     *
+     * @throws Exception Upon something going wrong
+     */
+    private static void doStress() throws Exception {
+
+        Channel smuSD = getChannel(Main.smuSD, SimulatedFET.Terminal.DRAIN);
+        Channel smuG  = getChannel(Main.smuG, SimulatedFET.Terminal.GATE);
+
+        applyChannelConfiguration();
+
+        LinkedList<String> errors = new LinkedList<>();
+
+        if (smuSD == null) {
+            errors.add("The Source-Drain SMU is not configured.");
+        }
+
+        if (smuG == null) {
+            errors.add("The Source-Gate SMU is not configured.");
+        }
+
+        if (running != null) {
+            errors.add("Another experiment is already running.\n\nPlease wait until it has finished.");
+        }
+
+        String outputFile = fileS.get();
+
+        if (outputFile.trim().equals("")) {
+            errors.add("You must specify a file to output to.");
         }
 
-        // Turn output back off again
-        smuSD.turnOff();
-        smuG.turnOff();
+        if (!errors.isEmpty()) {
+            GUI.errorAlert("Error", "Could Not Start Experiment", String.join("\n\n", errors), 600);
+            errors.clear();
+            return;
+        }
+
+        SweepParameters params = readStressParameters();
+
+        // Any transfer sweeps part-way through are as set up in the "Transfer Curve" tab, but without four-probe readings
+        SweepParameters check = readTransferParameters();
+        check.fourProbe = false;
+
+        Cancellation cancellation = new Cancellation();
+        SweepEngine  engine       = new SweepEngine(cancellation);
+        running = cancellation;
+
+        try {
+
+            resetCommandCounts();
+
+            // Every reading goes straight to disk, the display only keeps as much as it can plot
+            String checkFile = siblingPath(outputFile, "-sweeps.csv");
+
+            try (
+                    ResultWriter writer = new ResultWriter(outputFile, SweepEngine.STRESS_COLUMNS, SweepEngine.STRESS_UNITS, FLUSH_ROWS, FLUSH_TIME, FLUSH_SYNC, false);
+                    ResultWriter checks = params.checksPerDecade > 0 ? new ResultWriter(checkFile, SweepEngine.CHECK_COLUMNS, SweepEngine.CHECK_UNITS, FLUSH_ROWS, FLUSH_TIME, FLUSH_SYNC, false) : null
+            ) {
+
+                PhaseTimer timer = new PhaseTimer();
+
+                stressDisplay.clear();
+                checkDisplay.clear();
+                stressTiming.setTimer(timer);
+
+                Pipeline pipeline = new Pipeline.Builder(PIPELINE_CAPACITY)
+                        .addLossless("Storage", timer.time(PhaseTimer.Phase.WRITE, rows -> {
+                            for (double[] row : rows) {
+                                writer.addData(row);
+                            }
+                        }), cancellation)
+                        .addLossless("Display", timer.time(PhaseTimer.Phase.DISPLAY, stressDisplay))
+                        .addLossy("Timing", stressTiming)
+                        .start();
+
+                // The transfer sweeps are few and far between, so they can go straight to their file and display
+                SweepEngine.RowSink sweeps = checks == null ? null : checks.andThen(row -> checkDisplay.consume(Collections.singletonList(row)));
+
+                engine.setTimer(timer);
+
+                try {
+                    runAcquisition(() -> engine.runStress(params, check, smuSD, smuG, pipeline, sweeps));
+                } finally {
+
+                    try {
+                        closePipeline(pipeline, writer, null, checkDisplay, stressTiming);
+                    } finally {
+                        stressDisplay.flush();
+                    }
+
+                }
 
-        outputResults.output(outputFile);
+            }
+
+            System.out.print(engine.getSummary());
+            publishMetrics(outputFile, "stress", engine);
+
+        } finally {
+            running = null;
+        }
 
-        GUI.infoAlert("Complete", stopFlag ? "Measurement Stopped" : "Measurement Complete", "Output curve data saved to:\n" + outputFile, 600);
-        stopFlag = true;
+        GUI.infoAlert("Complete", cancellation.isCancelled() ? "Measurement Stopped" : "Measurement Complete", "Bias stress data saved to:\n" + outputFile + stopMessage(engine), 600);
 
     }
 
     public static void main(String[] args) {
 
+        // Headless: run the queued sweeps in the given recipe file, without ever showing the GUI
+        if (Arrays.asList(args).contains("--recipe")) {
+            RecipeRunner.main(args);
+            return;
+        }
+
+        // Headless: analyse a directory of old results files, without ever showing the GUI
+        if (Arrays.asList(args).contains("--analyse")) {
+            BatchAnalysis.main(args);
+            return;
+        }
+
+        // Headless: search the run store
+        if (Arrays.asList(args).contains("--query")) {
+            RunStore.main(args);
+            return;
+        }
+
         try {
             run(args);
         } catch (Exception e) {
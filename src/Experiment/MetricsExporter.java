@@ -0,0 +1,154 @@
+package Experiment;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Exports the phase timings of a sweep in the Prometheus text exposition format, to a file and/or over HTTP.
+ * <p>
+ * Each phase becomes a series of the fet_sweep_phase_seconds histogram, labelled with its phase. The HTTP endpoint
+ * (bound to the loopback address only) serves whatever was last published at /metrics, so a Prometheus server (or just
+ * curl) can pick up the timings of the most recent run.
+ */
+public class MetricsExporter implements AutoCloseable {
+
+    // Histogram bucket boundaries to export [s] (the timer itself has much finer buckets)
+    private static final double[] BOUNDS = {1e-6, 1e-5, 1e-4, 1e-3, 3e-3, 1e-2, 3e-2, 1e-1, 3e-1, 1.0, 3.0, 10.0};
+
+    private final    HttpServer server;
+    private volatile byte[]     latest = new byte[0];
+
+    /**
+     * Starts serving metrics over HTTP on the given port of the loopback address.
+     *
+     * @param port Port number
+     *
+     * @throws IOException If the port could not be bound
+     */
+    public MetricsExporter(int port) throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+        server.createContext("/metrics", exchange -> {
+
+            byte[] body = latest;
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream stream = exchange.getResponseBody()) {
+                stream.write(body);
+            }
+
+        });
+
+        // The handler only copies out a byte array, so the server's own thread is plenty
+        server.setExecutor(null);
+        server.start();
+
+    }
+
+    /**
+     * Returns the port being served on (useful if created with port 0, ie any free port).
+     *
+     * @return Port number
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Makes the given metrics text the one served from now on.
+     *
+     * @param metrics Metrics text (see format(...))
+     */
+    public void publish(String metrics) {
+        latest = metrics.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    /**
+     * Writes the given metrics text to a file.
+     *
+     * @param path    Path to write to
+     * @param metrics Metrics text (see format(...))
+     *
+     * @throws IOException Upon the file not being writable
+     */
+    public static void write(String path, String metrics) throws IOException {
+        Files.write(Paths.get(path), metrics.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Formats the timings of a sweep in the Prometheus text exposition format.
+     *
+     * @param timer  Timings to format
+     * @param type   Sweep type (eg "transfer"), added as a label to every series
+     * @param points Number of points measured
+     *
+     * @return Metrics text
+     */
+    public static String format(PhaseTimer timer, String type, int points) {
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("# HELP fet_sweep_phase_seconds Time spent in each phase of the last sweep, per point (per batch for consumers).\n");
+        builder.append("# TYPE fet_sweep_phase_seconds histogram\n");
+
+        for (PhaseTimer.Phase phase : PhaseTimer.Phase.values()) {
+
+            if (timer.getCount(phase) == 0) {
+                continue;
+            }
+
+            String labels = String.format("sweep=\"%s\",phase=\"%s\"", type, phase.getLabel());
+
+            for (double bound : BOUNDS) {
+                line(builder, "fet_sweep_phase_seconds_bucket{%s,le=\"%s\"} %d", labels, number(bound), timer.getCountBelow(phase, bound));
+            }
+
+            line(builder, "fet_sweep_phase_seconds_bucket{%s,le=\"+Inf\"} %d", labels, timer.getCount(phase));
+            line(builder, "fet_sweep_phase_seconds_sum{%s} %s", labels, number(timer.getTotal(phase)));
+            line(builder, "fet_sweep_phase_seconds_count{%s} %d", labels, timer.getCount(phase));
+
+        }
+
+        String labels = String.format("sweep=\"%s\"", type);
+
+        builder.append("# HELP fet_sweep_points Number of points measured in the last sweep.\n");
+        builder.append("# TYPE fet_sweep_points gauge\n");
+        line(builder, "fet_sweep_points{%s} %d", labels, points);
+
+        builder.append("# HELP fet_sweep_elapsed_seconds Time from the start of timing to the end of the last sweep.\n");
+        builder.append("# TYPE fet_sweep_elapsed_seconds gauge\n");
+        line(builder, "fet_sweep_elapsed_seconds{%s} %s", labels, number(timer.getElapsed()));
+
+        builder.append("# HELP fet_sweep_instrumentation_overhead_seconds Estimated time spent recording these timings.\n");
+        builder.append("# TYPE fet_sweep_instrumentation_overhead_seconds gauge\n");
+        line(builder, "fet_sweep_instrumentation_overhead_seconds{%s} %s", labels, number(timer.getOverhead()));
+
+        return builder.toString();
+
+    }
+
+    private static void line(StringBuilder builder, String format, Object... args) {
+        builder.append(String.format(Locale.ROOT, format, args)).append('\n');
+    }
+
+    private static String number(double value) {
+        return Double.toString(value);
+    }
+
+}
@@ -0,0 +1,216 @@
+package Experiment;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Takes a set of readings from several channels at once.
+ * <p>
+ * Readings are grouped by the instrument their channel belongs to. Each instrument's readings are taken in order, whilst
+ * holding that instrument's lock, but different instruments are read in parallel. So four readings on four separate
+ * SMUs take as long as one, whereas two readings on two channels of the same MCSMU still happen one after the other.
+ * The time at which each reading completed is recorded so that the skew between them can be checked.
+ */
+public class ParallelReader implements AutoCloseable {
+
+    public enum Quantity {
+        CURRENT,
+        VOLTAGE
+    }
+
+    /**
+     * A single reading to take: a channel and what to measure on it.
+     */
+    public static class Read {
+
+        final Channel  channel;
+        final Quantity quantity;
+
+        public Read(Channel channel, Quantity quantity) {
+            this.channel  = channel;
+            this.quantity = quantity;
+        }
+
+    }
+
+    private final ExecutorService executor;
+    private       long[]          timestamps = new long[0];
+    private       long            sets       = 0;
+    private       long            skewTotal  = 0;
+    private       long            skewMax    = 0;
+
+    public ParallelReader() {
+
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Parallel Reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+    public static Read current(Channel channel) {
+        return new Read(channel, Quantity.CURRENT);
+    }
+
+    public static Read voltage(Channel channel) {
+        return new Read(channel, Quantity.VOLTAGE);
+    }
+
+    /**
+     * Takes all the given readings, in parallel where they are on different instruments.
+     *
+     * @param reads Readings to take
+     *
+     * @return Values read, in the same order as given
+     *
+     * @throws Exception Upon any reading failing
+     */
+    public double[] read(Read... reads) throws Exception {
+
+        double[] values = new double[reads.length];
+        long[]   times  = new long[reads.length];
+
+        // Group the readings by instrument, keeping them in the order given
+        Map<Object, List<Integer>> groups = new LinkedHashMap<>();
+
+        for (int i = 0; i < reads.length; i++) {
+            groups.computeIfAbsent(reads[i].channel.getInstrument(), k -> new ArrayList<>()).add(i);
+        }
+
+        List<List<Integer>> work    = new ArrayList<>(groups.values());
+        List<Future<?>>     futures = new ArrayList<>();
+
+        // Farm out all but the first group, which we do ourselves on this thread
+        for (List<Integer> group : work.subList(1, work.size())) {
+
+            futures.add(executor.submit(() -> {
+                readGroup(reads, group, values, times);
+                return null;
+            }));
+
+        }
+
+        if (!work.isEmpty()) {
+            readGroup(reads, work.get(0), values, times);
+        }
+
+        try {
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+
+        record(times);
+
+        return values;
+
+    }
+
+    /**
+     * Returns the time (System.nanoTime()) at which each reading from the last call to read(...) completed.
+     *
+     * @return Timestamps [ns]
+     */
+    public long[] getTimestamps() {
+        return timestamps.clone();
+    }
+
+    /**
+     * Returns the number of calls to read(...) made so far.
+     *
+     * @return Number of sets of readings
+     */
+    public long getCount() {
+        return sets;
+    }
+
+    /**
+     * Returns the greatest time between the first and last readings of any one call to read(...).
+     *
+     * @return Maximum skew [s]
+     */
+    public double getMaxSkew() {
+        return skewMax / 1e9;
+    }
+
+    /**
+     * Returns the mean time between the first and last readings of each call to read(...).
+     *
+     * @return Mean skew [s]
+     */
+    public double getMeanSkew() {
+        return sets == 0 ? 0.0 : skewTotal / 1e9 / sets;
+    }
+
+    /**
+     * Returns a human-readable summary of the skew between readings.
+     *
+     * @return Summary
+     */
+    public String getSummary() {
+        return String.format("Readout skew: mean %.2f ms, max %.2f ms over %d points", getMeanSkew() * 1e3, getMaxSkew() * 1e3, sets);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static void readGroup(Read[] reads, List<Integer> group, double[] values, long[] times) throws Exception {
+
+        ReentrantLock lock = InstrumentLocks.get(reads[group.get(0)].channel.getInstrument());
+
+        lock.lockInterruptibly();
+
+        try {
+
+            for (int i : group) {
+
+                Read read = reads[i];
+
+                values[i] = read.quantity == Quantity.CURRENT ? read.channel.getCurrent() : read.channel.getVoltage();
+                times[i]  = System.nanoTime();
+
+            }
+
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    private void record(long[] times) {
+
+        timestamps = times;
+
+        if (times.length == 0) {
+            return;
+        }
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        for (long time : times) {
+            min = Math.min(min, time);
+            max = Math.max(max, time);
+        }
+
+        sets++;
+        skewTotal += max - min;
+        skewMax    = Math.max(skewMax, max - min);
+
+    }
+
+}
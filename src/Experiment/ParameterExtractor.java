@@ -0,0 +1,412 @@
+package Experiment;
+
+import JISA.Experiment.ResultList;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Extracts transistor parameters from transfer curve rows as they are measured, rather than from the finished file.
+ * <p>
+ * Rows are split into series by SD voltage and sweep direction (forward while the gate moves away from where it
+ * started, reverse from the turn-around onwards). For each series, running least-squares fits of sqrt|Id| and |Id|
+ * against VG are kept over the points in the top FIT_FRACTION of the gate range, along with the steepest rise in
+ * log10|Id| between neighbouring points and the largest and smallest |Id|. This takes a fixed amount of memory per
+ * series, however many points it has. From these:
+ * <ul>
+ *     <li>Saturation mobility: 2L/(W Ci) times the square of the slope of sqrt|Id| vs VG</li>
+ *     <li>Threshold voltage: where the sqrt|Id| vs VG fit crosses zero</li>
+ *     <li>Linear mobility: L/(W Ci |VSD|) times the slope of |Id| vs VG</li>
+ *     <li>Subthreshold swing: the smallest change in VG per decade of |Id| between neighbouring points (only counting
+ *     currents above SS_MIN_CURRENT, so that noise at the off-current floor is not mistaken for a steep rise)</li>
+ *     <li>On/off ratio: largest over smallest |Id|</li>
+ * </ul>
+ * The fits are updated with Welford's method so that they agree with a two-pass batch fit over the same points (see
+ * extract(...)) to within rounding error.
+ */
+public class ParameterExtractor implements Pipeline.Consumer {
+
+    public static final String[] COLUMNS = {"SD Voltage", "Reverse", "Sat. Mobility", "Lin. Mobility", "Threshold", "Subthreshold Swing", "On/Off"};
+    public static final String[] UNITS   = {"V", "", "cm^2/Vs", "cm^2/Vs", "V", "V/dec", ""};
+
+    public static final double FIT_FRACTION   = 0.5;    // Fraction of the gate range (furthest from the start) to fit
+    public static final double SS_MIN_CURRENT = 1e-11;  // Smallest |Id| to count towards the subthreshold swing [A]
+
+    private static final double REFRESH_TIME = 0.5;     // Min. time between refreshes of the results list [s]
+
+    private final Map<Key, Series> series    = new LinkedHashMap<>();
+    private final ResultList       results;
+    private       double           minGate;
+    private       double           maxGate;
+    private       double           width;
+    private       double           length;
+    private       double           capacitance;
+    private       long             refreshed = 0;
+
+    // ==== Last Row (to tell which series the next belongs to) ========================================================
+    private       double           lastSD    = Double.NaN;
+    private       double           lastGate  = Double.NaN;
+    private       boolean          reverse   = false;
+
+    /**
+     * Creates an extractor.
+     *
+     * @param results Results list to show the extracted parameters in (one row per series, see COLUMNS), or null for
+     *                none
+     */
+    public ParameterExtractor(ResultList results) {
+        this.results = results;
+    }
+
+    /**
+     * Forgets everything extracted so far, ready for a new sweep.
+     *
+     * @param minGate     Gate voltage the sweep starts (and ends) at [V]
+     * @param maxGate     Gate voltage the sweep turns around at [V]
+     * @param width       Channel width [m]
+     * @param length      Channel length [m]
+     * @param capacitance Gate capacitance per unit area [F/m^2]
+     */
+    public synchronized void start(double minGate, double maxGate, double width, double length, double capacitance) {
+
+        this.minGate     = minGate;
+        this.maxGate     = maxGate;
+        this.width       = width;
+        this.length      = length;
+        this.capacitance = capacitance;
+
+        series.clear();
+
+        lastSD    = Double.NaN;
+        lastGate  = Double.NaN;
+        reverse   = false;
+        refreshed = 0;
+
+        refresh();
+
+    }
+
+    @Override
+    public synchronized void consume(List<double[]> rows) {
+
+        for (double[] row : rows) {
+            add(row[0], row[1], row[2]);
+        }
+
+        if (System.nanoTime() - refreshed >= REFRESH_TIME * 1e9) {
+            refresh();
+        }
+
+    }
+
+    /**
+     * Adds a single point.
+     *
+     * @param VSD SD voltage [V]
+     * @param VG  Gate voltage [V]
+     * @param Id  Drain current [A]
+     */
+    public synchronized void add(double VSD, double VG, double Id) {
+
+        // A new SD voltage starts a new forward sweep, and the gate no longer moving away from the start means reverse
+        if (VSD != lastSD) {
+            reverse = false;
+        } else if ((VG - lastGate) * (maxGate - minGate) <= 0) {
+            reverse = true;
+        }
+
+        lastSD   = VSD;
+        lastGate = VG;
+
+        Key key = new Key(VSD, reverse);
+
+        series.computeIfAbsent(key, k -> new Series(VSD, k.reverse)).add(VG, Id, inFitRange(VG));
+
+    }
+
+    /**
+     * Shows the latest extracted parameters in the results list straight away.
+     */
+    public synchronized void refresh() {
+
+        refreshed = System.nanoTime();
+
+        if (results == null) {
+            return;
+        }
+
+        results.clear();
+
+        for (double[] row : getRows()) {
+            results.addData(row);
+        }
+
+    }
+
+    /**
+     * Returns the extracted parameters for each series so far, as rows (see COLUMNS).
+     *
+     * @return Rows of parameters
+     */
+    public synchronized List<double[]> getRows() {
+
+        List<double[]> rows = new ArrayList<>();
+
+        for (Series s : series.values()) {
+            rows.add(s.toRow(width, length, capacitance));
+        }
+
+        return rows;
+
+    }
+
+    /**
+     * Extracts the parameters from a complete set of transfer curve rows in one go, fitting with two passes over each
+     * series rather than running sums. Gives the same results as streaming the rows through an extractor, to within
+     * rounding error, so can be used to check it.
+     *
+     * @param rows        Transfer curve rows (SD Voltage, Gate Voltage, Drain Current, ...)
+     * @param minGate     Gate voltage the sweep starts (and ends) at [V]
+     * @param maxGate     Gate voltage the sweep turns around at [V]
+     * @param width       Channel width [m]
+     * @param length      Channel length [m]
+     * @param capacitance Gate capacitance per unit area [F/m^2]
+     *
+     * @return Rows of parameters (see COLUMNS)
+     */
+    public static List<double[]> extract(List<double[]> rows, double minGate, double maxGate, double width, double length, double capacitance) {
+
+        // Split the rows into series just as the streaming extractor would
+        Map<Key, List<double[]>> split    = new LinkedHashMap<>();
+        double                   lastSD   = Double.NaN;
+        double                   lastGate = Double.NaN;
+        boolean                  reverse  = false;
+
+        for (double[] row : rows) {
+
+            if (row[0] != lastSD) {
+                reverse = false;
+            } else if ((row[1] - lastGate) * (maxGate - minGate) <= 0) {
+                reverse = true;
+            }
+
+            lastSD   = row[0];
+            lastGate = row[1];
+
+            split.computeIfAbsent(new Key(row[0], reverse), k -> new ArrayList<>()).add(row);
+
+        }
+
+        List<double[]> extracted = new ArrayList<>();
+
+        for (Map.Entry<Key, List<double[]>> entry : split.entrySet()) {
+
+            List<double[]> points = entry.getValue();
+            Series         s      = new Series(entry.getKey().VSD, entry.getKey().reverse);
+
+            // Fits: means first, then centred sums
+            double n = 0, meanX = 0, meanSqrt = 0, meanAbs = 0;
+
+            for (double[] row : points) {
+                if (inFitRange(row[1], minGate, maxGate)) {
+                    n++;
+                    meanX    += row[1];
+                    meanSqrt += Math.sqrt(Math.abs(row[2]));
+                    meanAbs  += Math.abs(row[2]);
+                }
+            }
+
+            meanX    /= n;
+            meanSqrt /= n;
+            meanAbs  /= n;
+
+            double xx = 0, xSqrt = 0, xAbs = 0;
+
+            for (double[] row : points) {
+                if (inFitRange(row[1], minGate, maxGate)) {
+                    double dx = row[1] - meanX;
+                    xx    += dx * dx;
+                    xSqrt += dx * (Math.sqrt(Math.abs(row[2])) - meanSqrt);
+                    xAbs  += dx * (Math.abs(row[2]) - meanAbs);
+                }
+            }
+
+            s.sat.set((long) n, meanX, meanSqrt, xx, xSqrt);
+            s.lin.set((long) n, meanX, meanAbs, xx, xAbs);
+
+            // Everything else only ever looks at one point, or two neighbouring points, at a time anyway
+            double previousGate    = Double.NaN;
+            double previousCurrent = Double.NaN;
+
+            for (double[] row : points) {
+                s.track(row[1], row[2], previousGate, previousCurrent);
+                previousGate    = row[1];
+                previousCurrent = row[2];
+            }
+
+            extracted.add(s.toRow(width, length, capacitance));
+
+        }
+
+        return extracted;
+
+    }
+
+    private boolean inFitRange(double VG) {
+        return inFitRange(VG, minGate, maxGate);
+    }
+
+    private static boolean inFitRange(double VG, double minGate, double maxGate) {
+        return Math.abs(VG - minGate) >= (1.0 - FIT_FRACTION) * Math.abs(maxGate - minGate);
+    }
+
+    /**
+     * Identifies a series: SD voltage and direction.
+     */
+    private static final class Key {
+
+        private final double  VSD;
+        private final boolean reverse;
+
+        Key(double VSD, boolean reverse) {
+            this.VSD     = VSD;
+            this.reverse = reverse;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).VSD == VSD && ((Key) other).reverse == reverse;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VSD, reverse);
+        }
+
+    }
+
+    /**
+     * A straight-line least-squares fit, updated one point at a time (Welford's method).
+     */
+    private static final class RunningFit {
+
+        private long   n     = 0;
+        private double meanX = 0.0;
+        private double meanY = 0.0;
+        private double xx    = 0.0;   // Sum of (x - meanX)^2
+        private double xy    = 0.0;   // Sum of (x - meanX)(y - meanY)
+
+        void add(double x, double y) {
+            n++;
+            double dx = x - meanX;
+            meanX += dx / n;
+            meanY += (y - meanY) / n;
+            xx    += dx * (x - meanX);
+            xy    += dx * (y - meanY);
+        }
+
+        void set(long n, double meanX, double meanY, double xx, double xy) {
+            this.n     = n;
+            this.meanX = meanX;
+            this.meanY = meanY;
+            this.xx    = xx;
+            this.xy    = xy;
+        }
+
+        double slope() {
+            return n > 1 && xx > 0 ? xy / xx : Double.NaN;
+        }
+
+        double intercept() {
+            return meanY - slope() * meanX;
+        }
+
+    }
+
+    /**
+     * Everything needed to extract the parameters of one series.
+     */
+    private static final class Series {
+
+        private final double     VSD;
+        private final boolean    reverse;
+        private final RunningFit sat         = new RunningFit();   // sqrt|Id| vs VG
+        private final RunningFit lin         = new RunningFit();   // |Id| vs VG
+        private       double     swing       = Double.NaN;         // Smallest VG change per decade of |Id| so far
+        private       double     maxCurrent  = 0.0;
+        private       double     minCurrent  = Double.POSITIVE_INFINITY;
+        private       double     lastGate    = Double.NaN;
+        private       double     lastCurrent = Double.NaN;
+
+        Series(double VSD, boolean reverse) {
+            this.VSD     = VSD;
+            this.reverse = reverse;
+        }
+
+        void add(double VG, double Id, boolean fit) {
+
+            if (fit) {
+                sat.add(VG, Math.sqrt(Math.abs(Id)));
+                lin.add(VG, Math.abs(Id));
+            }
+
+            track(VG, Id, lastGate, lastCurrent);
+
+            lastGate    = VG;
+            lastCurrent = Id;
+
+        }
+
+        /**
+         * Updates the on/off currents and the subthreshold swing with a point and the one before it (if any).
+         */
+        void track(double VG, double Id, double previousGate, double previousCurrent) {
+
+            double current = Math.abs(Id);
+
+            maxCurrent = Math.max(maxCurrent, current);
+
+            if (current > 0) {
+                minCurrent = Math.min(minCurrent, current);
+            }
+
+            double previous = Math.abs(previousCurrent);
+
+            if (current >= SS_MIN_CURRENT && previous >= SS_MIN_CURRENT && current != previous) {
+
+                double perDecade = Math.abs((VG - previousGate) / (Math.log10(current) - Math.log10(previous)));
+
+                if (perDecade > 0 && !(perDecade >= swing)) {
+                    swing = perDecade;
+                }
+
+            }
+
+        }
+
+        double[] toRow(double width, double length, double capacitance) {
+
+            double satSlope  = sat.slope();
+            double linSlope  = lin.slope();
+            double satMob    = 2 * length * satSlope * satSlope / (width * capacitance);
+            double linMob    = length * Math.abs(linSlope) / (width * capacitance * Math.abs(VSD));
+            double threshold = -sat.intercept() / satSlope;
+
+            return new double[]{
+                    VSD,
+                    reverse ? 1 : 0,
+                    satMob * 1e4,   // m^2/Vs to cm^2/Vs
+                    linMob * 1e4,
+                    threshold,
+                    swing,
+                    minCurrent < Double.POSITIVE_INFINITY ? maxCurrent / minCurrent : Double.NaN
+            };
+
+        }
+
+    }
+
+}
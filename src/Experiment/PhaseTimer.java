@@ -0,0 +1,427 @@
+package Experiment;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long each phase of a sweep takes, point by point, in a histogram per phase.
+ * <p>
+ * Timings are taken with System.nanoTime() and recorded by incrementing one of a fixed set of buckets, so recording
+ * costs one clock read and a few atomic additions, allocates nothing and can be done from any thread. Buckets are spaced
+ * logarithmically (SUB_BUCKETS per doubling of time) so percentiles are accurate to within about 20% from nanoseconds
+ * up to hours. The cost of recording is measured once when the timer is created, so that the overhead of the
+ * instrumentation itself can be reported alongside the timings.
+ */
+public class PhaseTimer {
+
+    /**
+     * The phases timed. Phases on the acquisition thread are timed per point (or per buffered chunk), consumer phases
+     * per batch of rows taken from the pipeline.
+     */
+    public enum Phase {
+
+        SET("set", "Set voltages"),
+        SETTLE("settle", "Settle"),
+        INTEGRATE("integrate", "Integration (nominal)"),
+        BUS("bus", "Bus and instrument overhead"),
+        STORE("store", "Hand row to pipeline"),
+        CHECKPOINT("checkpoint", "Journal checkpoint"),
+        BUFFERED("buffered", "Buffered sweep (per chunk)"),
+        WRITE("write", "Write to disk (per batch)"),
+        DISPLAY("display", "GUI update (per batch)");
+
+        private final String label;
+        private final String description;
+
+        Phase(String label, String description) {
+            this.label       = label;
+            this.description = description;
+        }
+
+        /**
+         * Returns a short, machine-friendly name for the phase (eg for metric labels).
+         *
+         * @return Label
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+    }
+
+    private static final int SUB_BITS    = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS     = 64 * SUB_BUCKETS;
+    private static final int CALIBRATION = 200000;   // Timings to record when measuring the cost of recording
+
+    private final Histogram[] histograms   = new Histogram[Phase.values().length];
+    private final long        created      = System.nanoTime();
+    private final double      costPerMark;
+
+    public PhaseTimer() {
+
+        for (Phase phase : Phase.values()) {
+            histograms[phase.ordinal()] = new Histogram();
+        }
+
+        costPerMark = calibrate();
+
+    }
+
+    /**
+     * Returns the current time, to pass to the first call to mark(...).
+     *
+     * @return Current time [ns]
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time since the given start time against the given phase, and returns the current time so that it can
+     * be used as the start of the next phase.
+     *
+     * @param phase Phase that has just finished
+     * @param since When it started [ns, from start() or mark(...)]
+     *
+     * @return Current time [ns]
+     */
+    public long mark(Phase phase, long since) {
+        long now = System.nanoTime();
+        histograms[phase.ordinal()].record(now - since);
+        return now;
+    }
+
+    /**
+     * Records the time since the given start time as a measurement, split into the nominal integration time and
+     * everything else (bus transfer and the instrument's own overheads), and returns the current time.
+     *
+     * @param since       When the measurement started [ns]
+     * @param integration How long the instrument should have spent integrating [s]
+     *
+     * @return Current time [ns]
+     */
+    public long markMeasurement(long since, double integration) {
+
+        long now     = System.nanoTime();
+        long nominal = Math.min(now - since, (long) (integration * 1e9));
+
+        histograms[Phase.INTEGRATE.ordinal()].record(nominal);
+        histograms[Phase.BUS.ordinal()].record(now - since - nominal);
+
+        return now;
+
+    }
+
+    /**
+     * Returns a consumer that passes each batch of rows on to the given one, timing it against the given phase.
+     *
+     * @param phase    Phase to time against
+     * @param consumer Consumer to time
+     *
+     * @return Timed consumer
+     */
+    public Pipeline.Consumer time(Phase phase, Pipeline.Consumer consumer) {
+
+        return rows -> {
+            long start = start();
+            consumer.consume(rows);
+            mark(phase, start);
+        };
+
+    }
+
+    /**
+     * Returns the number of timings recorded for the given phase.
+     *
+     * @param phase Phase
+     *
+     * @return Number of timings
+     */
+    public long getCount(Phase phase) {
+        return histograms[phase.ordinal()].count.get();
+    }
+
+    /**
+     * Returns the total time recorded against the given phase.
+     *
+     * @param phase Phase
+     *
+     * @return Total time [s]
+     */
+    public double getTotal(Phase phase) {
+        return histograms[phase.ordinal()].total.get() / 1e9;
+    }
+
+    /**
+     * Returns the mean of the timings recorded for the given phase.
+     *
+     * @param phase Phase
+     *
+     * @return Mean time [s]
+     */
+    public double getMean(Phase phase) {
+        long count = getCount(phase);
+        return count > 0 ? getTotal(phase) / count : 0.0;
+    }
+
+    /**
+     * Returns the longest timing recorded for the given phase.
+     *
+     * @param phase Phase
+     *
+     * @return Max. time [s]
+     */
+    public double getMax(Phase phase) {
+        return histograms[phase.ordinal()].max.get() / 1e9;
+    }
+
+    /**
+     * Returns (an estimate of) the given percentile of the timings recorded for the given phase: the upper edge of the
+     * bucket it falls in.
+     *
+     * @param phase      Phase
+     * @param percentile Percentile (0 to 100)
+     *
+     * @return Time [s]
+     */
+    public double getPercentile(Phase phase, double percentile) {
+
+        Histogram histogram = histograms[phase.ordinal()];
+        long      count     = histogram.count.get();
+
+        if (count == 0) {
+            return 0.0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+
+            seen += histogram.buckets.get(i);
+
+            if (seen >= rank) {
+                return Math.min(upperEdge(i), histogram.max.get()) / 1e9;
+            }
+
+        }
+
+        return getMax(phase);
+
+    }
+
+    /**
+     * Returns how many of the timings recorded for the given phase were no longer than the given time (counting whole
+     * buckets only, so only exact to within a bucket).
+     *
+     * @param phase Phase
+     * @param time  Time [s]
+     *
+     * @return Number of timings
+     */
+    public long getCountBelow(Phase phase, double time) {
+
+        Histogram histogram = histograms[phase.ordinal()];
+        long      limit     = (long) (time * 1e9);
+        long      count     = 0;
+
+        for (int i = 0; i < BUCKETS && upperEdge(i) <= limit; i++) {
+            count += histogram.buckets.get(i);
+        }
+
+        return count;
+
+    }
+
+    /**
+     * Returns the total number of timings recorded, across all phases.
+     *
+     * @return Number of timings
+     */
+    public long getTotalCount() {
+
+        long total = 0;
+
+        for (Phase phase : Phase.values()) {
+            total += getCount(phase);
+        }
+
+        return total;
+
+    }
+
+    /**
+     * Returns how long each timing takes to record, as measured when this timer was created.
+     *
+     * @return Cost of each timing [s]
+     */
+    public double getCostPerTiming() {
+        return costPerMark;
+    }
+
+    /**
+     * Returns (an estimate of) the total time spent recording timings so far.
+     *
+     * @return Instrumentation overhead [s]
+     */
+    public double getOverhead() {
+        return getTotalCount() * costPerMark;
+    }
+
+    /**
+     * Returns how long it has been since this timer was created.
+     *
+     * @return Time [s]
+     */
+    public double getElapsed() {
+        return (System.nanoTime() - created) / 1e9;
+    }
+
+    /**
+     * Returns a one-line summary of the timings for the given phase.
+     *
+     * @param phase Phase
+     *
+     * @return Summary
+     */
+    public String getSummary(Phase phase) {
+        return String.format(
+                "n = %d, mean %s, median %s, 90%% %s, 99%% %s, max %s, total %.3f s",
+                getCount(phase),
+                format(getMean(phase)),
+                format(getPercentile(phase, 50)),
+                format(getPercentile(phase, 90)),
+                format(getPercentile(phase, 99)),
+                format(getMax(phase)),
+                getTotal(phase)
+        );
+    }
+
+    /**
+     * Returns a human-readable summary of the timings for every phase that has any, and of the instrumentation's own
+     * overhead.
+     *
+     * @return Summary
+     */
+    public String getSummary() {
+
+        StringBuilder builder = new StringBuilder("Phase timings:");
+
+        for (Phase phase : Phase.values()) {
+
+            if (getCount(phase) > 0) {
+                builder.append(String.format("%n  %-30s %s", phase.getDescription(), getSummary(phase)));
+            }
+
+        }
+
+        builder.append(String.format(
+                "%n  Instrumentation overhead: %d timings at %.0f ns each, %.3f ms in total (%.4f%% of %.3f s)",
+                getTotalCount(),
+                costPerMark * 1e9,
+                getOverhead() * 1e3,
+                100.0 * getOverhead() / getElapsed(),
+                getElapsed()
+        ));
+
+        return builder.toString();
+
+    }
+
+    private static String format(double seconds) {
+
+        if (seconds >= 1.0) {
+            return String.format("%.3f s", seconds);
+        } else if (seconds >= 1e-3) {
+            return String.format("%.2f ms", seconds * 1e3);
+        } else {
+            return String.format("%.1f us", seconds * 1e6);
+        }
+
+    }
+
+    /**
+     * Works out how long each call to mark(...) takes, by timing a lot of them into a histogram that is then thrown away.
+     */
+    private double calibrate() {
+
+        Histogram scratch = new Histogram();
+        long      start   = System.nanoTime();
+        long      since   = start;
+
+        for (int i = 0; i < CALIBRATION; i++) {
+            long now = System.nanoTime();
+            scratch.record(now - since);
+            since = now;
+        }
+
+        return (System.nanoTime() - start) / 1e9 / CALIBRATION;
+
+    }
+
+    /**
+     * Returns which bucket the given time goes in: SUB_BUCKETS per power of two, so the first SUB_BITS bits after the
+     * leading one pick the sub-bucket.
+     */
+    private static int bucket(long nanos) {
+
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(0, nanos);
+        }
+
+        int power = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub   = (int) (nanos >>> (power - SUB_BITS)) & (SUB_BUCKETS - 1);
+
+        return Math.min(BUCKETS - 1, (power - SUB_BITS + 1) * SUB_BUCKETS + sub);
+
+    }
+
+    /**
+     * Returns the longest time that goes in the given bucket.
+     */
+    private static long upperEdge(int bucket) {
+
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int power = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub   = bucket % SUB_BUCKETS;
+
+        if (power >= 62) {
+            return Long.MAX_VALUE;
+        }
+
+        return ((long) (SUB_BUCKETS + sub + 1) << (power - SUB_BITS)) - 1;
+
+    }
+
+    private static class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong      count   = new AtomicLong();
+        private final AtomicLong      total   = new AtomicLong();
+        private final AtomicLong      max     = new AtomicLong();
+
+        void record(long nanos) {
+
+            buckets.incrementAndGet(bucket(nanos));
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+
+            long previous = max.get();
+
+            while (nanos > previous && !max.compareAndSet(previous, nanos)) {
+                previous = max.get();
+            }
+
+        }
+
+    }
+
+}
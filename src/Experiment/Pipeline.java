@@ -0,0 +1,265 @@
+package Experiment;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples the acquisition of results from whatever is done with them (writing to disk, updating the GUI etc).
+ * <p>
+ * The acquisition thread publishes each row into a RingBuffer, and returns straight away. Each consumer has its own
+ * thread which takes rows out of the buffer in batches. Lossless consumers (eg storage) will cause acquisition to wait
+ * if they fall a whole buffer behind, whereas lossy consumers (eg display) just miss rows instead. A consumer that
+ * throws is not given any more rows, and can be made to cancel the run as well (eg storage, as there is no point
+ * carrying on measuring once the results can no longer be saved).
+ */
+public class Pipeline implements SweepEngine.RowSink {
+
+    private static final int  MAX_BATCH  = 256;
+    private static final long IDLE_NANOS = 1_000_000;
+
+    /**
+     * Something that takes batches of rows from the pipeline.
+     */
+    public interface Consumer {
+        void consume(List<double[]> rows) throws Exception;
+    }
+
+    private final RingBuffer           buffer;
+    private final String[]             names;
+    private final List<Thread>         threads = new ArrayList<>();
+    private final List<Exception>      errors  = new LinkedList<>();
+    private volatile boolean           closing = false;
+
+    /**
+     * Creates a pipeline with a ring buffer of the given capacity.
+     *
+     * @param capacity      Ring buffer capacity [rows]
+     * @param names         Name of each consumer
+     * @param lossy         Whether each consumer is lossy
+     * @param consumers     The consumers
+     * @param cancellations What to cancel if each consumer fails (or null for nothing)
+     */
+    private Pipeline(int capacity, String[] names, boolean[] lossy, Consumer[] consumers, Cancellation[] cancellations) {
+
+        this.buffer = new RingBuffer(capacity, lossy);
+        this.names  = names;
+
+        for (int i = 0; i < consumers.length; i++) {
+
+            RingBuffer.Cursor cursor       = buffer.getCursor(i);
+            Consumer          consumer     = consumers[i];
+            Cancellation      cancellation = cancellations[i];
+            Thread            thread       = new Thread(() -> consumeLoop(cursor, consumer, cancellation), names[i] + " Consumer");
+
+            thread.setDaemon(true);
+            threads.add(thread);
+
+        }
+
+    }
+
+    /**
+     * Builds up a pipeline, one consumer at a time.
+     */
+    public static class Builder {
+
+        private final int                capacity;
+        private final List<String>       names         = new ArrayList<>();
+        private final List<Boolean>      lossy         = new ArrayList<>();
+        private final List<Consumer>     consumers     = new ArrayList<>();
+        private final List<Cancellation> cancellations = new ArrayList<>();
+
+        public Builder(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Adds a consumer that must see every row. Acquisition will wait for it if it falls too far behind.
+         *
+         * @param name     Name of the consumer (for reporting)
+         * @param consumer Consumer
+         *
+         * @return This builder
+         */
+        public Builder addLossless(String name, Consumer consumer) {
+            return addLossless(name, consumer, null);
+        }
+
+        /**
+         * Adds a consumer that must see every row, and without which there is no point carrying on (eg storage). If it
+         * fails, the given cancellation is cancelled so that the run stops as soon as possible.
+         *
+         * @param name         Name of the consumer (for reporting)
+         * @param consumer     Consumer
+         * @param cancellation Cancellation to cancel if the consumer fails
+         *
+         * @return This builder
+         */
+        public Builder addLossless(String name, Consumer consumer, Cancellation cancellation) {
+            names.add(name);
+            lossy.add(false);
+            consumers.add(consumer);
+            cancellations.add(cancellation);
+            return this;
+        }
+
+        /**
+         * Adds a consumer that may miss rows if it falls too far behind, rather than holding up acquisition.
+         *
+         * @param name     Name of the consumer (for reporting)
+         * @param consumer Consumer
+         *
+         * @return This builder
+         */
+        public Builder addLossy(String name, Consumer consumer) {
+            names.add(name);
+            lossy.add(true);
+            consumers.add(consumer);
+            cancellations.add(null);
+            return this;
+        }
+
+        /**
+         * Creates the pipeline and starts its consumer threads.
+         *
+         * @return Running pipeline
+         */
+        public Pipeline start() {
+
+            boolean[] isLossy = new boolean[lossy.size()];
+
+            for (int i = 0; i < isLossy.length; i++) {
+                isLossy[i] = lossy.get(i);
+            }
+
+            Pipeline pipeline = new Pipeline(
+                    capacity,
+                    names.toArray(new String[0]),
+                    isLossy,
+                    consumers.toArray(new Consumer[0]),
+                    cancellations.toArray(new Cancellation[0])
+            );
+
+            pipeline.threads.forEach(Thread::start);
+
+            return pipeline;
+
+        }
+
+    }
+
+    /**
+     * Publishes a row to all consumers. Must only be called from the acquisition thread.
+     *
+     * @param data Row of data
+     */
+    @Override
+    public void addData(double... data) {
+        buffer.publish(data.clone());
+    }
+
+    /**
+     * Waits for all consumers to finish with everything published so far, then stops their threads.
+     *
+     * @throws Exception The first exception thrown by any consumer
+     */
+    public void close() throws Exception {
+
+        closing = true;
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        synchronized (errors) {
+
+            if (!errors.isEmpty()) {
+                throw errors.get(0);
+            }
+
+        }
+
+    }
+
+    public RingBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns a human-readable summary of how the ring buffer coped.
+     *
+     * @return Summary
+     */
+    public String getSummary() {
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(String.format(
+                "Pipeline: %d rows through a %d-row buffer, high-water mark %d, back-pressure waits %d",
+                buffer.getPublished(),
+                buffer.getCapacity(),
+                buffer.getHighWaterMark(),
+                buffer.getBackPressureCount()
+        ));
+
+        for (int i = 0; i < names.length; i++) {
+
+            if (buffer.getCursor(i).isLossy()) {
+                builder.append(String.format(", %s dropped %d", names[i], buffer.getCursor(i).getDropped()));
+            }
+
+        }
+
+        return builder.toString();
+
+    }
+
+    private void consumeLoop(RingBuffer.Cursor cursor, Consumer consumer, Cancellation cancellation) {
+
+        List<double[]> batch  = new ArrayList<>(MAX_BATCH);
+        boolean        failed = false;
+
+        while (true) {
+
+            // Check whether we're closing before draining, so that nothing published before close() is missed
+            boolean finished = closing;
+
+            batch.clear();
+            cursor.drainTo(batch, MAX_BATCH);
+
+            if (!batch.isEmpty() && !failed) {
+
+                try {
+                    consumer.consume(batch);
+                } catch (Exception e) {
+
+                    // Keep draining so that lossless consumers do not hold up acquisition, but stop passing rows on
+                    failed = true;
+
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+
+                    if (cancellation != null) {
+                        cancellation.cancel();
+                    }
+
+                }
+
+            } else if (batch.isEmpty()) {
+
+                if (finished && cursor.isCaughtUp()) {
+                    return;
+                }
+
+                LockSupport.parkNanos(IDLE_NANOS);
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,215 @@
+package Experiment;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Picks a fixed current range for the drain channel before each point, so that the instrument does not have to hunt
+ * for one itself (which costs extra integrations, and can glitch readings near range boundaries).
+ * <p>
+ * The current expected at each point is predicted from the points just measured (extrapolating if the current is
+ * rising, as it does exponentially below threshold) and from what was measured at the same SD and gate voltages in any
+ * earlier sweep planned by the same planner. The range chosen is the decade above this times the headroom factor. If a
+ * reading overflows anyway, the channel is put back on auto-ranging and the point measured again, and the next point
+ * goes back to a planned range.
+ * <p>
+ * A planner should be kept for as long as it measures the same device, so that later sweeps can use earlier ones.
+ * Range changes and overflows are counted per sweep (ie since the last call to start(...)).
+ */
+public class RangePlanner {
+
+    private static final double OVERFLOW      = 9.9e37;  // Readings at least this big are overflow markers
+    private static final double OVER_RANGE    = 1.05;    // Readings this far past the range can't be right either
+    private static final double HIGHEST_RANGE = 1.0;     // Largest range to ask for [A]
+    private static final double MAX_RISE      = 10.0;    // Largest rise from one point to the next to extrapolate
+
+    private final Map<Point, Double> history   = new HashMap<>();
+    private       double             headroom  = 3.0;
+    private       double             lowest    = 1e-9;
+    private       double             range     = Double.NaN;   // NaN = auto-ranging
+    private       Point              point     = null;
+    private       double             last      = Double.NaN;
+    private       double             previous  = Double.NaN;
+
+    // ==== Statistics (per sweep) =====================================================================================
+    private       int                points    = 0;
+    private       int                predicted = 0;
+    private       int                changes   = 0;
+    private       int                overflows = 0;
+
+    /**
+     * Prepares for a new sweep, using the range planning settings in the given parameters. The drain channel should be
+     * on auto-ranging to begin with.
+     *
+     * @param params Sweep parameters
+     */
+    public void start(SweepParameters params) {
+        headroom  = params.rangeHeadroom;
+        lowest    = params.lowestRange;
+        range     = Double.NaN;
+        last      = Double.NaN;
+        previous  = Double.NaN;
+        points    = 0;
+        predicted = 0;
+        changes   = 0;
+        overflows = 0;
+    }
+
+    /**
+     * Forgets everything measured in earlier sweeps (eg when a different device is connected).
+     */
+    public void clear() {
+        history.clear();
+    }
+
+    /**
+     * Sets the channel to the range predicted for the point at the given voltages (leaving it as it is if there is
+     * nothing yet to predict from).
+     *
+     * @param channel Drain channel
+     * @param VSD     SD voltage of the point about to be measured [V]
+     * @param VG      Gate voltage of the point about to be measured [V]
+     *
+     * @throws Exception Upon something going wrong
+     */
+    public void select(Channel channel, double VSD, double VG) throws Exception {
+
+        point = new Point(VSD, VG);
+
+        double expected = Double.NaN;
+        Double earlier  = history.get(point);
+
+        if (earlier != null) {
+            expected = earlier;
+            predicted++;
+        }
+
+        if (!Double.isNaN(last)) {
+
+            double rise = !Double.isNaN(previous) && previous > 0 ? Math.min(MAX_RISE, last / previous) : 1.0;
+            double next = last * Math.max(1.0, rise);
+
+            expected = Double.isNaN(expected) ? next : Math.max(expected, next);
+
+        }
+
+        if (Double.isNaN(expected)) {
+            return;
+        }
+
+        double wanted = Math.pow(10, Math.ceil(Math.log10(Math.max(lowest, Math.min(HIGHEST_RANGE, headroom * expected))) - 1e-9));
+
+        if (wanted != range) {
+            channel.setCurrentRange(wanted);
+            range = wanted;
+            changes++;
+        }
+
+    }
+
+    /**
+     * Returns whether the given reading was out of range.
+     *
+     * @param current Reading [A]
+     *
+     * @return Overflowed?
+     */
+    public boolean isOverflow(double current) {
+        return !Double.isFinite(current) || Math.abs(current) >= OVERFLOW || (!Double.isNaN(range) && Math.abs(current) > OVER_RANGE * range);
+    }
+
+    /**
+     * Puts the channel back on auto-ranging after a reading overflowed, so that the point can be measured again.
+     *
+     * @param channel Drain channel
+     *
+     * @throws Exception Upon something going wrong
+     */
+    public void overflowed(Channel channel) throws Exception {
+        overflows++;
+        release(channel);
+    }
+
+    /**
+     * Puts the channel back on auto-ranging (eg before readings that were not planned for).
+     *
+     * @param channel Drain channel
+     *
+     * @throws Exception Upon something going wrong
+     */
+    public void release(Channel channel) throws Exception {
+
+        if (!Double.isNaN(range)) {
+            channel.useAutoRanges();
+            range = Double.NaN;
+        }
+
+    }
+
+    /**
+     * Records the drain current measured at the point last selected, to predict later points from.
+     *
+     * @param current Drain current [A]
+     */
+    public void record(double current) {
+
+        double magnitude = Math.abs(current);
+
+        previous = last;
+        last     = magnitude;
+
+        if (point != null) {
+            history.put(point, magnitude);
+        }
+
+        points++;
+
+    }
+
+    public int getChanges() {
+        return changes;
+    }
+
+    public int getOverflows() {
+        return overflows;
+    }
+
+    /**
+     * Returns a human-readable summary of the range planning in the last sweep.
+     *
+     * @return Summary
+     */
+    public String getSummary() {
+        return String.format(
+                "Range planning: %d points (%d predicted from an earlier sweep), %d range changes, %d overflows re-measured on auto-range",
+                points,
+                predicted,
+                changes,
+                overflows
+        );
+    }
+
+    private static final class Point {
+
+        private final double VSD;
+        private final double VG;
+
+        Point(double VSD, double VG) {
+            this.VSD = VSD;
+            this.VG  = VG;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Point && ((Point) other).VSD == VSD && ((Point) other).VG == VG;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(VSD, VG);
+        }
+
+    }
+
+}
@@ -0,0 +1,321 @@
+package Experiment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A list of devices, the instruments each is connected to and the sweeps to run on each, to be run without the GUI. The
+ * sweeps for each device are run one after the other, but different devices are run at the same time. Read from a text
+ * file like so:
+ * <pre>
+ * # Lines starting with # are comments
+ *
+ * # Everything up to the next device line belongs to this device (if there is only one, this line can be left out)
+ * device FET1
+ *
+ * # smu [role] [driver class] [VISA address] [channel, only for multi-channel SMUs]
+ * # where role is one of: sd, gate, fpp1, fpp2 (leave them all out to use the instruments set up in the GUI)
+ * smu sd   JISA.Devices.K2600B TCPIP::192.168.0.5::INSTR 0
+ * smu gate JISA.Devices.K2600B TCPIP::192.168.0.6::INSTR 0
+ *
+ * # transfer|output [output file] [parameter=value ...]
+ * # where parameters are named as in SweepParameters, any not given take their default values
+ * transfer device1-transfer.csv minSD=-5 maxSD=-60 sdSteps=2 delay=0.2
+ * output   device1-output.csv   gateSteps=4 buffered=true
+ *
+ * device FET2
+ * smu sd   JISA.Devices.K2600B TCPIP::192.168.0.5::INSTR 1     # other channels of FET1's instruments, so commands
+ * smu gate JISA.Devices.K2600B TCPIP::192.168.0.6::INSTR 1     # to each instrument are taken in turns
+ * transfer device2-transfer.csv
+ * </pre>
+ * Instruments given with the same driver and address are the same instrument, and only connected to once. Different
+ * devices can use different channels of the same instrument, but not the same channel, since each device's sweeps
+ * would then be setting (and turning off) the other's voltages.
+ */
+public class Recipe {
+
+    public enum Type {
+        TRANSFER,
+        OUTPUT
+    }
+
+    /**
+     * An instrument (channel) to connect to and which role it plays.
+     */
+    public static class Instrument {
+
+        public final SimulatedFET.Terminal role;
+        public final String                driver;
+        public final String                address;
+        public final int                   channel;   // -1 if not a multi-channel SMU
+
+        Instrument(SimulatedFET.Terminal role, String driver, String address, int channel) {
+            this.role    = role;
+            this.driver  = driver;
+            this.address = address;
+            this.channel = channel;
+        }
+
+    }
+
+    /**
+     * A single sweep to perform.
+     */
+    public static class Step {
+
+        public final Type            type;
+        public final String          file;
+        public final SweepParameters params;
+        public final int             line;
+
+        Step(Type type, String file, SweepParameters params, int line) {
+            this.type   = type;
+            this.file   = file;
+            this.params = params;
+            this.line   = line;
+        }
+
+        /**
+         * Returns a short description of this step, for progress messages.
+         *
+         * @return Description
+         */
+        public String getName() {
+            return String.format("%s %s (line %d)", type == Type.TRANSFER ? "Transfer" : "Output", file, line);
+        }
+
+    }
+
+    /**
+     * A device to measure: the instruments its terminals are connected to and the sweeps to run on it.
+     */
+    public static class Device {
+
+        public final String           name;
+        public final List<Instrument> instruments = new ArrayList<>();
+        public final List<Step>       steps       = new ArrayList<>();
+
+        Device(String name) {
+            this.name = name;
+        }
+
+    }
+
+    private final List<Device> devices = new ArrayList<>();
+
+    /**
+     * Reads a recipe from the given file.
+     *
+     * @param path Path to the recipe file
+     *
+     * @return Recipe
+     *
+     * @throws IOException              Upon the file not being readable
+     * @throws IllegalArgumentException Upon the file containing something it shouldn't
+     */
+    public static Recipe load(String path) throws IOException {
+
+        Recipe       recipe = new Recipe();
+        List<String> lines  = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+
+        for (int i = 0; i < lines.size(); i++) {
+
+            String line = lines.get(i).trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            // Allow comments at the end of lines too
+            if (line.contains("#")) {
+                line = line.substring(0, line.indexOf('#')).trim();
+            }
+
+            try {
+                recipe.parse(line.split("\\s+"), i + 1);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("%s, line %d: %s", path, i + 1, e.getMessage()));
+            }
+
+        }
+
+        recipe.check();
+
+        return recipe;
+
+    }
+
+    public List<Device> getDevices() {
+        return devices;
+    }
+
+    /**
+     * Returns the total number of steps, across all devices.
+     *
+     * @return Number of steps
+     */
+    public int getNumSteps() {
+        return devices.stream().mapToInt(d -> d.steps.size()).sum();
+    }
+
+    /**
+     * Returns the device that instructions are currently being added to, creating an un-named one if there have been
+     * no device lines yet.
+     */
+    private Device current() {
+
+        if (devices.isEmpty()) {
+            devices.add(new Device("Device"));
+        }
+
+        return devices.get(devices.size() - 1);
+
+    }
+
+    private void parse(String[] words, int line) {
+
+        switch (words[0].toLowerCase()) {
+
+            case "device":
+
+                if (words.length < 2) {
+                    throw new IllegalArgumentException("Expected: device [name]");
+                }
+
+                if (devices.stream().anyMatch(d -> d.name.equals(words[1]))) {
+                    throw new IllegalArgumentException("Device \"" + words[1] + "\" is already defined.");
+                }
+
+                devices.add(new Device(words[1]));
+                break;
+
+            case "smu":
+
+                if (words.length < 4) {
+                    throw new IllegalArgumentException("Expected: smu [role] [driver] [address] [channel]");
+                }
+
+                current().instruments.add(new Instrument(
+                        parseRole(words[1]),
+                        words[2],
+                        words[3],
+                        words.length > 4 ? Integer.parseInt(words[4]) : -1
+                ));
+
+                break;
+
+            case "transfer":
+                current().steps.add(parseStep(Type.TRANSFER, SweepParameters.transferDefaults(), current().name, words, line));
+                break;
+
+            case "output":
+                current().steps.add(parseStep(Type.OUTPUT, SweepParameters.outputDefaults(), current().name, words, line));
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown instruction \"" + words[0] + "\".");
+
+        }
+
+    }
+
+    /**
+     * Makes sure no two steps write to the same file, and no two devices use the same SMU channel, since devices run at
+     * the same time would overwrite each other's results and voltages.
+     *
+     * @throws IllegalArgumentException Upon either happening
+     */
+    void check() {
+
+        Set<String>         files    = new HashSet<>();
+        Map<String, String> channels = new HashMap<>();
+
+        for (Device device : devices) {
+
+            // A device may use one channel for more than one role, so only compare against other devices
+            for (Instrument instrument : device.instruments) {
+
+                String key   = String.format("%s@%s#%d", instrument.driver, instrument.address, Math.max(0, instrument.channel));
+                String other = channels.putIfAbsent(key, device.name);
+
+                if (other != null && !other.equals(device.name)) {
+                    throw new IllegalArgumentException(String.format(
+                            "Channel %d of %s is used by both %s and %s.",
+                            Math.max(0, instrument.channel),
+                            instrument.address,
+                            other,
+                            device.name
+                    ));
+                }
+
+            }
+
+            for (Step step : device.steps) {
+
+                if (!files.add(Paths.get(step.file).toAbsolutePath().normalize().toString())) {
+                    throw new IllegalArgumentException(String.format("%s is written to by more than one step.", step.getName()));
+                }
+
+            }
+
+        }
+
+    }
+
+    private static Step parseStep(Type type, SweepParameters params, String device, String[] words, int line) {
+
+        if (words.length < 2) {
+            throw new IllegalArgumentException("No output file given.");
+        }
+
+        // Unless told otherwise, the device measured is the one the step belongs to
+        params.device = device;
+
+        for (int i = 2; i < words.length; i++) {
+
+            String[] parts = words[i].split("=", 2);
+
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected parameter=value, got \"" + words[i] + "\".");
+            }
+
+            params.set(parts[0], parts[1]);
+
+        }
+
+        return new Step(type, words[1], params, line);
+
+    }
+
+    private static SimulatedFET.Terminal parseRole(String role) {
+
+        switch (role.toLowerCase()) {
+
+            case "sd":
+                return SimulatedFET.Terminal.DRAIN;
+
+            case "gate":
+                return SimulatedFET.Terminal.GATE;
+
+            case "fpp1":
+                return SimulatedFET.Terminal.PROBE_1;
+
+            case "fpp2":
+                return SimulatedFET.Terminal.PROBE_2;
+
+            default:
+                throw new IllegalArgumentException("Unknown role \"" + role + "\", expected sd, gate, fpp1 or fpp2.");
+
+        }
+
+    }
+
+}
@@ -0,0 +1,333 @@
+package Experiment;
+
+import JISA.Addresses.StrAddress;
+import JISA.Control.ConfigStore;
+import JISA.Devices.MCSMU;
+import JISA.Devices.SMU;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a Recipe (a queue of transfer and output sweeps for one or more devices) without any GUI, writing each sweep to
+ * its own file. Devices are run at the same time (see DeviceScheduler). Can be started directly
+ * (java Experiment.RecipeRunner recipe.txt [--simulate] [--resume]) or via Main with --recipe recipe.txt.
+ * <p>
+ * Instruments are connected once at the start and the same channels are used for every step, so configuration that
+ * has not changed between steps is not sent again. A device with no smu lines in the recipe uses the instruments set
+ * up in the GUI's "Connection Config" and "Instrument Config" tabs, as saved in its ConfigStore. When simulating, each
+ * device gets a simulated FET and instruments of its own. Each finished step is recorded in the same run store as Main
+ * records its runs in.
+ */
+public class RecipeRunner {
+
+    private static final String   CONFIG_STORE    = "FETCharacterisation";  // As used by Main
+    private static final Path     RUN_STORE       = Paths.get(System.getProperty("user.home"), "FETCharacterisation", "runs");  // As Main.RUN_STORE
+    private static final String[] INSTRUMENT_KEYS = {"SMU 1", "SMU 2", "SMU 3", "SMU 4"};   // Connection panels in Main
+
+    // SMU config panels in Main, and the terminal each one is connected to
+    private static final Map<String, SimulatedFET.Terminal> CHANNEL_KEYS = new LinkedHashMap<>();
+
+    static {
+        CHANNEL_KEYS.put("sdSMU", SimulatedFET.Terminal.DRAIN);
+        CHANNEL_KEYS.put("sgSMU", SimulatedFET.Terminal.GATE);
+        CHANNEL_KEYS.put("fpp1SMU", SimulatedFET.Terminal.PROBE_1);
+        CHANNEL_KEYS.put("fpp2SMU", SimulatedFET.Terminal.PROBE_2);
+    }
+
+    private static volatile boolean exiting = false;
+
+    private final Recipe          recipe;
+    private final boolean         simulate;
+    private final DeviceScheduler scheduler = new DeviceScheduler();
+
+    /**
+     * Creates a runner for the given recipe.
+     *
+     * @param recipe   Recipe to run
+     * @param simulate Whether to use simulated FETs instead of the instruments in the recipe
+     */
+    public RecipeRunner(Recipe recipe, boolean simulate) {
+        this.recipe   = recipe;
+        this.simulate = simulate;
+    }
+
+    /**
+     * Sets whether to pick up interrupted steps where they left off, and skip completed ones, rather than running every
+     * step from scratch.
+     *
+     * @param resume Resume?
+     */
+    public void setResume(boolean resume) {
+        scheduler.setResume(resume);
+    }
+
+    /**
+     * Stops the runner straight away. The current steps are ended early (and their outputs turned off) and no further
+     * steps are run.
+     */
+    public void stop() {
+        scheduler.stop();
+    }
+
+    /**
+     * Connects to the instruments and runs the steps for each device.
+     *
+     * @throws Exception Upon something going wrong connecting to an instrument
+     */
+    public void run() throws Exception {
+
+        Map<String, SMU> opened = new HashMap<>();
+
+        if (!simulate) {
+
+            for (Recipe.Device device : recipe.getDevices()) {
+
+                if (device.instruments.isEmpty()) {
+                    System.out.printf("No instruments given for %s, using those set up in the GUI...%n", device.name);
+                    device.instruments.addAll(configured());
+                }
+
+            }
+
+            // Check again now that all the instruments are known, in case two devices both use the GUI's
+            recipe.check();
+
+        }
+
+        for (Recipe.Device device : recipe.getDevices()) {
+            scheduler.add(device.name, simulate ? simulated() : connect(device, opened), device.steps);
+        }
+
+        // Record every finished step, as Main does (carrying on without if the store cannot be opened)
+        RunStore runStore = null;
+
+        try {
+            runStore = new RunStore(RUN_STORE);
+            scheduler.setRunStore(runStore);
+        } catch (IOException e) {
+            System.err.printf("Could not open the run store in %s: %s%n", RUN_STORE, e.getMessage());
+        }
+
+        try {
+            scheduler.run();
+        } finally {
+
+            if (runStore != null) {
+                runStore.close();
+            }
+
+        }
+
+        System.out.println();
+        System.out.println(scheduler.getSummary());
+
+    }
+
+    private static Map<SimulatedFET.Terminal, Channel> simulated() {
+
+        Simulation                          simulation = new Simulation();
+        Map<SimulatedFET.Terminal, Channel> channels   = new EnumMap<>(SimulatedFET.Terminal.class);
+
+        for (SimulatedFET.Terminal terminal : SimulatedFET.Terminal.values()) {
+            channels.put(terminal, new CachedChannel(simulation.getChannel(terminal)));
+        }
+
+        return channels;
+
+    }
+
+    /**
+     * Opens each instrument named for the given device. An instrument used more than once (ie different channels of a
+     * multi-channel SMU, or by different devices) is only opened once.
+     */
+    private static Map<SimulatedFET.Terminal, Channel> connect(Recipe.Device device, Map<String, SMU> opened) throws Exception {
+
+        Map<SimulatedFET.Terminal, Channel> channels = new EnumMap<>(SimulatedFET.Terminal.class);
+
+        for (Recipe.Instrument instrument : device.instruments) {
+
+            String key = instrument.driver + "@" + instrument.address;
+            SMU    smu = opened.get(key);
+
+            if (smu == null) {
+                System.out.printf("Connecting to %s at %s...%n", instrument.driver, instrument.address);
+                smu = open(instrument.driver, instrument.address);
+                opened.put(key, smu);
+            }
+
+            Channel channel;
+
+            // Channel 0 of a single-channel SMU (as the GUI's config saves it) is just the SMU itself
+            if (instrument.channel < 0 || (instrument.channel == 0 && !(smu instanceof MCSMU))) {
+                channel = new SMUChannel(smu);
+            } else if (smu instanceof MCSMU) {
+                channel = new SMUChannel(((MCSMU) smu).getChannel(instrument.channel), smu);
+            } else {
+                throw new IllegalArgumentException(instrument.driver + " is not a multi-channel SMU, cannot use channel " + instrument.channel + ".");
+            }
+
+            channels.put(instrument.role, new CachedChannel(channel));
+
+        }
+
+        return channels;
+
+    }
+
+    /**
+     * Returns the instruments set up in the GUI: which channel of which of its configured SMUs each terminal uses.
+     * Terminals the GUI has no SMU chosen for are left out.
+     *
+     * @throws Exception Upon the config store not being readable, or nothing being set up in it
+     */
+    private static List<Recipe.Instrument> configured() throws Exception {
+
+        ConfigStore              store       = new ConfigStore(CONFIG_STORE);
+        List<Recipe.Instrument>  instruments = new ArrayList<>();
+
+        for (Map.Entry<String, SimulatedFET.Terminal> entry : CHANNEL_KEYS.entrySet()) {
+
+            JSONObject channel = store.getConfig(entry.getKey());
+
+            if (channel == null || !channel.has("smu")) {
+                continue;
+            }
+
+            int smu = channel.getInt("smu");
+
+            if (smu < 0 || smu >= INSTRUMENT_KEYS.length) {
+                continue;
+            }
+
+            JSONObject connection = store.getInstrument(INSTRUMENT_KEYS[smu]);
+
+            if (connection == null || !connection.has("driver") || !connection.has("address")) {
+                continue;
+            }
+
+            instruments.add(new Recipe.Instrument(
+                    entry.getValue(),
+                    connection.getString("driver"),
+                    connection.getString("address"),
+                    channel.has("channel") ? channel.getInt("channel") : -1
+            ));
+
+        }
+
+        if (instruments.isEmpty()) {
+            throw new IllegalArgumentException("No instruments are given in the recipe or set up in the GUI.");
+        }
+
+        return instruments;
+
+    }
+
+    private static SMU open(String driver, String address) throws Exception {
+
+        Class<?> driverClass = Class.forName(driver);
+
+        if (!SMU.class.isAssignableFrom(driverClass)) {
+            throw new IllegalArgumentException(driver + " is not an SMU driver.");
+        }
+
+        Constructor<?> constructor = null;
+
+        for (Constructor<?> c : driverClass.getConstructors()) {
+
+            Class<?>[] types = c.getParameterTypes();
+
+            if (types.length == 1 && types[0].isAssignableFrom(StrAddress.class)) {
+                constructor = c;
+                break;
+            }
+
+        }
+
+        if (constructor == null) {
+            throw new IllegalArgumentException(driver + " has no constructor taking an address.");
+        }
+
+        return (SMU) constructor.newInstance(new StrAddress(address));
+
+    }
+
+    /**
+     * Runs the recipe file given as the first argument. Add --simulate to run against a simulated FET instead of the
+     * instruments listed in the recipe, and --resume to carry on from where a previous, interrupted, run got to.
+     *
+     * @param args Command-line arguments
+     */
+    public static void main(String[] args) {
+
+        String  path     = null;
+        boolean simulate = false;
+        boolean resume   = false;
+
+        for (String arg : args) {
+
+            if (arg.equals("--simulate")) {
+                simulate = true;
+            } else if (arg.equals("--resume")) {
+                resume = true;
+            } else if (!arg.equals("--recipe")) {
+                path = arg;
+            }
+
+        }
+
+        if (path == null) {
+            System.err.println("Usage: RecipeRunner [recipe file] [--simulate] [--resume]");
+            exit(1);
+        }
+
+        try {
+
+            RecipeRunner runner = new RecipeRunner(Recipe.load(path), simulate);
+            Thread       main   = Thread.currentThread();
+
+            runner.setResume(resume);
+
+            // Ctrl+C: end the current sweep cleanly (so that the outputs are turned off) before exiting. Not when the main
+            // thread is exiting itself though, since it would never finish and we would just wait for nothing.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+
+                runner.stop();
+
+                if (!exiting) {
+                    try {
+                        main.join(10000);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+
+            }));
+
+            runner.run();
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            e.printStackTrace();
+            exit(1);
+        }
+
+    }
+
+    /**
+     * Exits from the main thread, without the shutdown hook waiting for it to finish first.
+     */
+    private static void exit(int status) {
+        exiting = true;
+        System.exit(status);
+    }
+
+}
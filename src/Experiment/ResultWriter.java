@@ -0,0 +1,331 @@
+package Experiment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes rows of results to a CSV file as they are measured, rather than all in one go at the end. The file produced
+ * has the same layout as ResultList.output(...).
+ * <p>
+ * Rows are handed to a background thread which formats them into a buffer and writes them out. The buffer is flushed
+ * (and optionally fsync'd) to disk every so-many rows or milli-seconds, whichever comes first, so that at most that much
+ * data is lost if the programme or computer dies mid-run. Adding a row never waits for the disk.
+ */
+public class ResultWriter implements SweepEngine.RowSink, AutoCloseable {
+
+    private static final double[] END         = new double[0];
+    private static final int      BUFFER_SIZE = 64 * 1024;
+
+    private final String                          path;
+    private final FileChannel                     channel;
+    private final int                             flushRows;
+    private final long                            flushNanos;
+    private final boolean                         sync;
+    private final LinkedBlockingQueue<double[]>   queue  = new LinkedBlockingQueue<>();
+    private final ByteBuffer                      buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final StringBuilder                   line   = new StringBuilder();
+    private final Thread                          thread;
+    private       boolean                         closed = false;
+    private volatile IOException                  error  = null;
+
+    // ==== Statistics (written by the writer thread only) =============================================================
+    private volatile long rows          = 0;
+    private volatile long bytes         = 0;
+    private volatile long flushes       = 0;
+    private volatile long flushTotal    = 0;
+    private volatile long flushMax      = 0;
+
+    /**
+     * Creates a new file (replacing any existing one), writes the header line and starts the writer thread.
+     *
+     * @param path      Path of the file to write
+     * @param names     Column names
+     * @param units     Column units
+     * @param flushRows Flush after this many rows have been written since the last flush
+     * @param flushTime Flush after this much time has passed since the last flush [s]
+     * @param sync      Whether each flush should also force the data onto the physical disk (fsync)
+     *
+     * @throws IOException Upon the file not being creatable
+     */
+    public ResultWriter(String path, String[] names, String[] units, int flushRows, double flushTime, boolean sync) throws IOException {
+        this(path, names, units, flushRows, flushTime, sync, false);
+    }
+
+    /**
+     * Opens a file, either replacing any existing one or (if appending) adding rows to the end of it, and starts the
+     * writer thread. The header line is only written if the file is new (or empty).
+     *
+     * @param path      Path of the file to write
+     * @param names     Column names
+     * @param units     Column units
+     * @param flushRows Flush after this many rows have been written since the last flush
+     * @param flushTime Flush after this much time has passed since the last flush [s]
+     * @param sync      Whether each flush should also force the data onto the physical disk (fsync)
+     * @param append    Whether to add to the end of an existing file rather than replace it
+     *
+     * @throws IOException Upon the file not being creatable
+     */
+    public ResultWriter(String path, String[] names, String[] units, int flushRows, double flushTime, boolean sync, boolean append) throws IOException {
+
+        this.path       = path;
+        this.flushRows  = Math.max(1, flushRows);
+        this.flushNanos = (long) (flushTime * 1e9);
+        this.sync       = sync;
+
+        channel = FileChannel.open(
+                Paths.get(path),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING
+        );
+
+        if (channel.size() == 0) {
+
+            List<String> titles = new ArrayList<>();
+
+            for (int i = 0; i < names.length; i++) {
+                titles.add(units == null ? names[i] : String.format("%s [%s]", names[i], units[i]));
+            }
+
+            line.append(String.join(",", titles)).append('\n');
+            put(line);
+            flush();
+
+        }
+
+        thread = new Thread(this::writeLoop, "Result Writer");
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+    /**
+     * Queues a row to be written to the file. Returns immediately.
+     *
+     * @param data Row of data
+     *
+     * @throws IOException If the writer thread has previously failed to write to the file
+     */
+    @Override
+    public synchronized void addData(double... data) throws IOException {
+
+        if (error != null) {
+            throw error;
+        }
+
+        if (closed) {
+            throw new IOException("Result writer has been closed.");
+        }
+
+        queue.add(data.clone());
+
+    }
+
+    /**
+     * Writes any remaining rows, flushes everything to disk and closes the file. Waits until this is done.
+     *
+     * @throws IOException If anything could not be written
+     */
+    @Override
+    public void close() throws IOException {
+
+        synchronized (this) {
+
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            queue.add(END);
+
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        channel.close();
+
+        if (error != null) {
+            throw error;
+        }
+
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of rows written to the file so far (not including the header).
+     *
+     * @return Number of rows
+     */
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of bytes written to the file so far (including the header).
+     *
+     * @return Number of bytes
+     */
+    public long getByteCount() {
+        return bytes;
+    }
+
+    public long getFlushCount() {
+        return flushes;
+    }
+
+    /**
+     * Returns the mean time each flush to disk has taken.
+     *
+     * @return Mean flush latency [s]
+     */
+    public double getMeanFlushLatency() {
+        return flushes == 0 ? 0.0 : flushTotal / 1e9 / flushes;
+    }
+
+    /**
+     * Returns the longest time any flush to disk has taken.
+     *
+     * @return Maximum flush latency [s]
+     */
+    public double getMaxFlushLatency() {
+        return flushMax / 1e9;
+    }
+
+    /**
+     * Returns a human-readable summary of what has been written.
+     *
+     * @return Summary
+     */
+    public String getSummary() {
+        return String.format(
+                "Wrote %d rows (%d bytes) to %s in %d flushes, flush latency: mean %.2f ms, max %.2f ms",
+                getRowCount(),
+                getByteCount(),
+                path,
+                getFlushCount(),
+                getMeanFlushLatency() * 1e3,
+                getMaxFlushLatency() * 1e3
+        );
+    }
+
+    private void writeLoop() {
+
+        long lastFlush = System.nanoTime();
+        int  pending   = 0;
+
+        try {
+
+            while (true) {
+
+                long     wait = flushNanos - (System.nanoTime() - lastFlush);
+                double[] row  = pending > 0 ? queue.poll(Math.max(0, wait), TimeUnit.NANOSECONDS) : queue.take();
+
+                if (row == END) {
+                    break;
+                }
+
+                if (row != null) {
+                    format(row);
+                    pending++;
+                    rows++;
+                }
+
+                if (pending >= flushRows || (pending > 0 && System.nanoTime() - lastFlush >= flushNanos)) {
+                    flush();
+                    pending   = 0;
+                    lastFlush = System.nanoTime();
+                }
+
+            }
+
+            flush();
+
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            error = new IOException("Result writer was interrupted.", e);
+        }
+
+    }
+
+    private void format(double[] row) throws IOException {
+
+        line.setLength(0);
+
+        for (int i = 0; i < row.length; i++) {
+
+            if (i > 0) {
+                line.append(',');
+            }
+
+            line.append(row[i]);
+
+        }
+
+        line.append('\n');
+        put(line);
+
+    }
+
+    private void put(CharSequence text) throws IOException {
+
+        byte[] encoded = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        if (encoded.length > buffer.remaining()) {
+            drain();
+        }
+
+        if (encoded.length > buffer.capacity()) {
+            bytes += channel.write(ByteBuffer.wrap(encoded));
+        } else {
+            buffer.put(encoded);
+        }
+
+    }
+
+    private void drain() throws IOException {
+
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            bytes += channel.write(buffer);
+        }
+
+        buffer.clear();
+
+    }
+
+    private void flush() throws IOException {
+
+        long start = System.nanoTime();
+
+        drain();
+
+        if (sync) {
+            channel.force(false);
+        }
+
+        long taken = System.nanoTime() - start;
+
+        flushes++;
+        flushTotal += taken;
+        flushMax    = Math.max(flushMax, taken);
+
+    }
+
+}
@@ -0,0 +1,232 @@
+package Experiment;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free, single-producer/multi-consumer ring buffer of result rows.
+ * <p>
+ * Each consumer keeps its own position in the buffer so that every consumer sees every row. Consumers are either
+ * lossless, in which case the producer waits for them when the buffer is full (back-pressure), or lossy, in which case
+ * the producer simply overwrites rows they have not got to yet and they skip ahead, counting what they have dropped.
+ */
+public class RingBuffer {
+
+    private static final long PARK_NANOS = 50_000;
+
+    private final double[][]        slots;
+    private final int               mask;
+    private final AtomicLong        cursor        = new AtomicLong(-1);
+    private final Cursor[]          consumers;
+    private volatile long           highWaterMark = 0;
+    private volatile long           waits         = 0;
+
+    /**
+     * A consumer's position in the ring buffer.
+     */
+    public static class Cursor {
+
+        private final    RingBuffer buffer;
+        private final    boolean    lossy;
+        private final    AtomicLong sequence = new AtomicLong(-1);
+        private volatile long       dropped  = 0;
+
+        private Cursor(RingBuffer buffer, boolean lossy) {
+            this.buffer = buffer;
+            this.lossy  = lossy;
+        }
+
+        /**
+         * Moves all rows currently available to this consumer into the given list, up to the given maximum.
+         *
+         * @param batch List to add rows to
+         * @param max   Maximum number of rows to take
+         *
+         * @return Number of rows taken
+         */
+        public int drainTo(List<double[]> batch, int max) {
+            return buffer.drain(this, batch, max);
+        }
+
+        /**
+         * Returns how many rows this consumer has missed by falling too far behind (always 0 for lossless consumers).
+         *
+         * @return Number of dropped rows
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        public boolean isLossy() {
+            return lossy;
+        }
+
+        /**
+         * Returns whether this consumer has seen everything published so far.
+         *
+         * @return Caught up?
+         */
+        public boolean isCaughtUp() {
+            return sequence.get() >= buffer.cursor.get();
+        }
+
+    }
+
+    /**
+     * Creates a ring buffer with (at least) the given capacity, and one cursor per consumer.
+     *
+     * @param capacity Minimum capacity, rounded up to a power of two
+     * @param lossy    Whether each consumer is lossy (true) or lossless (false)
+     */
+    public RingBuffer(int capacity, boolean... lossy) {
+
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        slots     = new double[size][];
+        mask      = size - 1;
+        consumers = new Cursor[lossy.length];
+
+        for (int i = 0; i < lossy.length; i++) {
+            consumers[i] = new Cursor(this, lossy[i]);
+        }
+
+    }
+
+    /**
+     * Returns the cursor for the consumer with the given index (in the order given to the constructor).
+     *
+     * @param consumer Consumer index
+     *
+     * @return Cursor
+     */
+    public Cursor getCursor(int consumer) {
+        return consumers[consumer];
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Publishes a row to all consumers. Should only ever be called from one thread. Waits if any lossless consumer is
+     * a whole buffer behind.
+     *
+     * @param row Row of data (not copied, so must not be modified afterwards)
+     */
+    public void publish(double[] row) {
+
+        long next    = cursor.get() + 1;
+        long slowest = slowestLossless();
+
+        if (next - slowest > slots.length) {
+
+            waits++;
+
+            do {
+                LockSupport.parkNanos(PARK_NANOS);
+                slowest = slowestLossless();
+            } while (next - slowest > slots.length);
+
+        }
+
+        slots[(int) (next & mask)] = row;
+        cursor.lazySet(next);
+
+        highWaterMark = Math.max(highWaterMark, next - slowest);
+
+    }
+
+    /**
+     * Returns the greatest number of rows that have been waiting to be consumed by the lossless consumers at once.
+     *
+     * @return High-water mark [rows]
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Returns the number of times the producer has had to wait for a lossless consumer to make room.
+     *
+     * @return Number of waits
+     */
+    public long getBackPressureCount() {
+        return waits;
+    }
+
+    /**
+     * Returns the total number of rows published so far.
+     *
+     * @return Number of rows
+     */
+    public long getPublished() {
+        return cursor.get() + 1;
+    }
+
+    private long slowestLossless() {
+
+        long slowest = cursor.get();
+
+        for (Cursor consumer : consumers) {
+
+            if (!consumer.lossy) {
+                slowest = Math.min(slowest, consumer.sequence.get());
+            }
+
+        }
+
+        return slowest;
+
+    }
+
+    /**
+     * Returns the oldest sequence a lossy consumer can still read, given the producer's cursor. The producer writes the
+     * slot for cursor + 1 before it moves the cursor on, so the row that slot held (cursor + 1 - size) may already be
+     * gone as well as everything before it.
+     */
+    private long oldestSafe(long cursor) {
+        return cursor - slots.length + 2;
+    }
+
+    private int drain(Cursor consumer, List<double[]> batch, int max) {
+
+        long available = cursor.get();
+        long from      = consumer.sequence.get() + 1;
+
+        // If a lossy consumer has been lapped, skip ahead to the oldest row that is safe to read
+        if (consumer.lossy && from < oldestSafe(available)) {
+            long skipTo = oldestSafe(available);
+            consumer.dropped += skipTo - from;
+            from = skipTo;
+        }
+
+        long to    = Math.min(available, from + max - 1);
+        int  taken = 0;
+
+        for (long seq = from; seq <= to; seq++) {
+            batch.add(slots[(int) (seq & mask)]);
+            taken++;
+        }
+
+        // The producer may have overwritten some of what a lossy consumer just read, if so, throw those rows away
+        if (consumer.lossy && taken > 0) {
+
+            long overwritten = oldestSafe(cursor.get()) - from;
+
+            if (overwritten > 0) {
+                int lost = (int) Math.min(overwritten, taken);
+                batch.subList(batch.size() - taken, batch.size() - taken + lost).clear();
+                consumer.dropped += lost;
+                taken -= lost;
+            }
+
+        }
+
+        consumer.sequence.lazySet(Math.max(to, from - 1));
+
+        return taken;
+
+    }
+
+}
@@ -0,0 +1,889 @@
+package Experiment;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps a record of every run (its parameters and all of its data) in one directory, so that runs can be found by
+ * device, sweep type, parameter values and time without searching through results files. Nothing runs in the
+ * background: the store is just two files, opened by whichever programme wants them.
+ * <p>
+ * The data of each run is appended to "data.bin", one Deflater-compressed block per column. Before compressing, the
+ * bytes of each column's doubles are regrouped so that all their first bytes come first, then all their second bytes
+ * and so on, as neighbouring values tend to share their sign, exponent and leading digits, which then compress well.
+ * A record of the run (including where its data is) is then appended to "index.bin". Both files are only ever added
+ * to, and the index record is written last, so a run interrupted while being recorded is just never seen.
+ * <p>
+ * Any number of programmes (and threads) can record runs in the same store at once. Recording a run locks the data
+ * file, reads in whatever the others have added to the index since, and only then picks the run's ID and where its data
+ * goes. (The lock is on the data file as closing any other channel to a file, as reading the index does, can release
+ * this programme's lock on it.)
+ * A store opened read-only (eg just to query it) is never locked or changed.
+ * <p>
+ * The whole index is read into memory when the store is opened (100k runs take a few tens of MB), grouped by device and
+ * sweep type and sorted by time, so a query only has to look at the runs of the right device (or type) in the right
+ * time window, taking well under a millisecond for most queries of 100k runs. Only the data of the runs actually asked
+ * for is read from disk.
+ */
+public class RunStore {
+
+    private static final int    MAGIC   = 0x53524546;   // "FERS" when read as big-endian bytes
+    private static final int    VERSION = 1;
+    private static final String INDEX   = "index.bin";
+    private static final String DATA    = "data.bin";
+
+    /**
+     * Everything recorded about one run, apart from its data (see load(...)).
+     */
+    public static class Run {
+
+        public final long     id;
+        public final long     timestamp;        // When the run started [ms since the epoch]
+        public final String   type;             // "transfer" or "output"
+        public final String   device;
+        public final String   file;             // Results file it was also written to
+        public final double   minGate;
+        public final double   maxGate;
+        public final int      gateSteps;
+        public final double   minSD;
+        public final double   maxSD;
+        public final int      sdSteps;
+        public final int      averageCount;
+        public final double   integrationTime;
+        public final int      rows;
+        public final String[] names;
+        public final String[] units;
+        private      long     offset;           // Where its data starts in the data file
+        private      int[]    lengths;          // Compressed length of each column [bytes]
+
+        Run(long id, long timestamp, String type, String device, String file, SweepParameters params, int rows, String[] names, String[] units) {
+            this.id              = id;
+            this.timestamp       = timestamp;
+            this.type            = type;
+            this.device          = device;
+            this.file            = file;
+            this.minGate         = params.minGate;
+            this.maxGate         = params.maxGate;
+            this.gateSteps       = params.gateSteps;
+            this.minSD           = params.minSD;
+            this.maxSD           = params.maxSD;
+            this.sdSteps         = params.sdSteps;
+            this.averageCount    = params.averageCount;
+            this.integrationTime = params.integrationTime;
+            this.rows            = rows;
+            this.names           = names;
+            this.units           = units;
+        }
+
+        /**
+         * Returns whether the run stepped the SD voltage through (or held it at) the given value.
+         *
+         * @param voltage SD voltage [V]
+         *
+         * @return Includes it?
+         */
+        public boolean hasSD(double voltage) {
+            return onGrid(voltage, minSD, maxSD, sdSteps);
+        }
+
+        /**
+         * Returns whether the run stepped the gate voltage through (or held it at) the given value.
+         *
+         * @param voltage Gate voltage [V]
+         *
+         * @return Includes it?
+         */
+        public boolean hasGate(double voltage) {
+            return onGrid(voltage, minGate, maxGate, gateSteps);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "#%d %s %s \"%s\": gate %s to %s V (%d), SD %s to %s V (%d), %d rows, %s",
+                    id,
+                    Instant.ofEpochMilli(timestamp),
+                    type,
+                    device,
+                    minGate,
+                    maxGate,
+                    gateSteps,
+                    minSD,
+                    maxSD,
+                    sdSteps,
+                    rows,
+                    file
+            );
+        }
+
+        private static boolean onGrid(double voltage, double min, double max, int steps) {
+
+            if (steps <= 1 || min == max) {
+                return Math.abs(voltage - min) <= 1e-9;
+            }
+
+            double position = (voltage - min) / (max - min) * (steps - 1);
+            double nearest  = Math.rint(position);
+
+            return nearest >= 0 && nearest <= steps - 1 && Math.abs(position - nearest) * Math.abs(max - min) / (steps - 1) <= 1e-9;
+
+        }
+
+    }
+
+    /**
+     * What to look for. Unset criteria match everything.
+     */
+    public static class Query {
+
+        private String         device = null;
+        private String         type   = null;
+        private long           from   = Long.MIN_VALUE;
+        private long           to     = Long.MAX_VALUE;
+        private Predicate<Run> filter = run -> true;
+
+        public Query device(String device) {
+            this.device = device;
+            return this;
+        }
+
+        public Query type(String type) {
+            this.type = type;
+            return this;
+        }
+
+        /**
+         * Only runs started at or after the given time.
+         *
+         * @param from Time [ms since the epoch]
+         *
+         * @return This query
+         */
+        public Query from(long from) {
+            this.from = from;
+            return this;
+        }
+
+        /**
+         * Only runs started before the given time.
+         *
+         * @param to Time [ms since the epoch]
+         *
+         * @return This query
+         */
+        public Query to(long to) {
+            this.to = to;
+            return this;
+        }
+
+        public Query sd(double voltage) {
+            return where(run -> run.hasSD(voltage));
+        }
+
+        public Query gate(double voltage) {
+            return where(run -> run.hasGate(voltage));
+        }
+
+        /**
+         * Only runs that also match the given condition (eg on their averaging count or integration time).
+         *
+         * @param condition Condition to match
+         *
+         * @return This query
+         */
+        public Query where(Predicate<Run> condition) {
+            filter = filter.and(condition);
+            return this;
+        }
+
+    }
+
+    private static final Comparator<Run> BY_TIME = Comparator.comparingLong((Run r) -> r.timestamp).thenComparingLong(r -> r.id);
+
+    // One for each store in this programme, as a FileLock only keeps other programmes out
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path                   indexPath;
+    private final FileChannel            index;   // Null if read-only
+    private final FileChannel            data;
+    private final List<Run>              runs     = new ArrayList<>();
+    private final Map<String, List<Run>> byDevice = new HashMap<>();
+    private final Map<String, List<Run>> byType   = new HashMap<>();
+    private       long                   nextID   = 0;
+    private       long                   valid    = 0;   // Length of the index file up to the end of its last whole record
+    private final Map<String, String[]>  layouts  = new HashMap<>();   // So runs with the same columns share one array
+
+    /**
+     * Opens the store in the given directory, creating it if it does not exist yet, and reads in its index.
+     *
+     * @param directory Directory of the store
+     *
+     * @throws IOException Upon the store not being readable or writable
+     */
+    public RunStore(Path directory) throws IOException {
+        this(directory, false);
+    }
+
+    /**
+     * Opens the store in the given directory and reads in its index. Unless read-only, the store is created if it does
+     * not exist yet. Read-only, it must already exist, and runs cannot be recorded in it.
+     *
+     * @param directory Directory of the store
+     * @param readOnly  Only for finding and loading runs?
+     *
+     * @throws IOException Upon the store not being readable (or writable, unless read-only)
+     */
+    public RunStore(Path directory, boolean readOnly) throws IOException {
+
+        indexPath = directory.resolve(INDEX);
+
+        Path dataPath = directory.resolve(DATA);
+
+        if (readOnly) {
+
+            if (!Files.exists(indexPath) || !Files.exists(dataPath)) {
+                throw new IOException("There is no run store in " + directory + ".");
+            }
+
+            index = null;
+            data  = FileChannel.open(dataPath, StandardOpenOption.READ);
+
+        } else {
+
+            Files.createDirectories(directory);
+
+            index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            data  = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            // Start a new index, unless another programme has just beaten us to it
+            synchronized (LOCKS.computeIfAbsent(indexPath.toAbsolutePath().normalize(), k -> new Object())) {
+
+                FileLock lock = data.lock();
+
+                try {
+
+                    if (index.size() == 0) {
+
+                        ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+                        header.flip();
+                        index.write(header);
+
+                    }
+
+                } finally {
+                    lock.release();
+                }
+
+            }
+
+        }
+
+        catchUp();
+
+    }
+
+    /**
+     * Records a run.
+     *
+     * @param type      Sweep type ("transfer" or "output")
+     * @param params    Sweep parameters
+     * @param timestamp When the run started [ms since the epoch]
+     * @param file      Results file it was also written to
+     * @param results   All of its data
+     *
+     * @return Record of the run
+     *
+     * @throws IOException Upon the store not being writable
+     */
+    public synchronized Run record(String type, SweepParameters params, long timestamp, String file, ColumnStore results) throws IOException {
+
+        if (index == null) {
+            throw new IOException("The run store was opened read-only.");
+        }
+
+        synchronized (LOCKS.computeIfAbsent(indexPath.toAbsolutePath().normalize(), k -> new Object())) {
+
+            FileLock lock = data.lock();
+
+            try {
+
+                // Whatever other programmes have recorded since, then cut off anything half-written by one that died
+                catchUp();
+                index.truncate(valid);
+
+                return append(type, params, timestamp, file, results);
+
+            } finally {
+                lock.release();
+            }
+
+        }
+
+    }
+
+    /**
+     * Writes a run's data and then its index record to the ends of their files. Only to be called with the store locked.
+     */
+    private Run append(String type, SweepParameters params, long timestamp, String file, ColumnStore results) throws IOException {
+
+        Run run = new Run(nextID, timestamp, type, params.device, file, params, results.getRowCount(), results.getNames(), results.getUnits());
+
+        // Data first, so that the index never points to data that isn't there
+        run.offset  = data.size();
+        run.lengths = new int[run.names.length];
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try {
+
+            long position = run.offset;
+
+            for (int c = 0; c < run.names.length; c++) {
+
+                ByteBuffer compressed = ByteBuffer.wrap(compress(deflater, results.getColumn(c)));
+                run.lengths[c] = compressed.remaining();
+
+                while (compressed.hasRemaining()) {
+                    position += data.write(compressed, position);
+                }
+
+            }
+
+        } finally {
+            deflater.end();
+        }
+
+        ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+        DataOutputStream      stream = new DataOutputStream(bytes);
+
+        write(stream, run);
+        stream.flush();
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+
+        while (record.hasRemaining()) {
+            index.write(record);
+        }
+
+        add(run);
+        valid += record.capacity();
+
+        return run;
+
+    }
+
+    /**
+     * Finds every run matching the given query, in the order they were run.
+     *
+     * @param query What to look for
+     *
+     * @return Matching runs
+     */
+    public synchronized List<Run> find(Query query) {
+
+        // Start from the smallest group the query narrows it down to, each is already in time order
+        List<Run> candidates = runs;
+
+        if (query.device != null) {
+            candidates = byDevice.getOrDefault(query.device, Collections.emptyList());
+        }
+
+        if (query.type != null) {
+            List<Run> ofType = byType.getOrDefault(query.type, Collections.emptyList());
+            candidates = ofType.size() < candidates.size() ? ofType : candidates;
+        }
+
+        List<Run> found = new ArrayList<>();
+
+        for (int i = firstAtOrAfter(candidates, query.from); i < candidates.size(); i++) {
+
+            Run run = candidates.get(i);
+
+            if (run.timestamp >= query.to) {
+                break;
+            }
+
+            if ((query.device == null || query.device.equals(run.device)) && (query.type == null || query.type.equals(run.type)) && query.filter.test(run)) {
+                found.add(run);
+            }
+
+        }
+
+        return found;
+
+    }
+
+    /**
+     * Reads back all the data of a run.
+     *
+     * @param run Run to read
+     *
+     * @return Its data
+     *
+     * @throws IOException Upon the data not being readable
+     */
+    public ColumnStore load(Run run) throws IOException {
+
+        double[][] columns  = new double[run.names.length][];
+        Inflater   inflater = new Inflater();
+
+        try {
+
+            long position = run.offset;
+
+            for (int c = 0; c < columns.length; c++) {
+
+                ByteBuffer compressed = ByteBuffer.allocate(run.lengths[c]);
+
+                while (compressed.hasRemaining()) {
+                    if (data.read(compressed, position + compressed.position()) < 0) {
+                        throw new EOFException("Data for run #" + run.id + " is missing.");
+                    }
+                }
+
+                columns[c] = decompress(inflater, compressed.array(), run.rows);
+                position  += run.lengths[c];
+
+            }
+
+        } catch (DataFormatException e) {
+            throw new IOException("Data for run #" + run.id + " is corrupt.", e);
+        } finally {
+            inflater.end();
+        }
+
+        ColumnStore store = new ColumnStore(run.names, run.units);
+        double[]    row   = new double[columns.length];
+
+        for (int r = 0; r < run.rows; r++) {
+
+            for (int c = 0; c < columns.length; c++) {
+                row[c] = columns[c][r];
+            }
+
+            store.addData(row);
+
+        }
+
+        return store;
+
+    }
+
+    /**
+     * Returns the number of runs in the store.
+     *
+     * @return Number of runs
+     */
+    public synchronized int size() {
+        return runs.size();
+    }
+
+    public synchronized void close() throws IOException {
+
+        try {
+
+            if (index != null) {
+                index.close();
+            }
+
+        } finally {
+            data.close();
+        }
+
+    }
+
+    private void add(Run run) {
+
+        insert(runs, run);
+        insert(byDevice.computeIfAbsent(run.device, k -> new ArrayList<>()), run);
+        insert(byType.computeIfAbsent(run.type, k -> new ArrayList<>()), run);
+
+        nextID = Math.max(nextID, run.id + 1);
+
+    }
+
+    /**
+     * Adds a run to a list in time order (which is almost always just the end, unless the clock has been changed).
+     */
+    private static void insert(List<Run> list, Run run) {
+
+        int i = list.size();
+
+        while (i > 0 && BY_TIME.compare(list.get(i - 1), run) > 0) {
+            i--;
+        }
+
+        list.add(i, run);
+
+    }
+
+    /**
+     * Returns the index of the first run in the (time-ordered) list started at or after the given time.
+     */
+    private static int firstAtOrAfter(List<Run> list, long time) {
+
+        int low  = 0;
+        int high = list.size();
+
+        while (low < high) {
+
+            int middle = (low + high) >>> 1;
+
+            if (list.get(middle).timestamp < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+
+        }
+
+        return low;
+
+    }
+
+    /**
+     * Reads in every complete record in the index file after those already read in (if there are any yet).
+     */
+    private void catchUp() throws IOException {
+
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+
+            if (channel.size() <= valid) {
+                return;
+            }
+
+            DataInputStream stream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(valid)), 65536));
+
+            if (valid == 0) {
+
+                if (stream.readInt() != MAGIC || stream.readInt() != VERSION) {
+                    throw new IOException(indexPath + " is not a run store index (or is from a newer version).");
+                }
+
+                valid = 8;
+
+            }
+
+            while (true) {
+
+                Run run;
+                int length;
+
+                try {
+                    run    = read(stream, layouts);
+                    length = stream.readInt();   // Each record ends with its own length, see write(...)
+                } catch (EOFException e) {
+                    break;   // Either the end, or a record cut short (which is then dropped, to be read again if finished)
+                }
+
+                add(run);
+                valid += length;
+
+            }
+
+        } catch (EOFException e) {
+            // The header was cut short, so there is nothing to read yet
+        }
+
+    }
+
+    private static void write(DataOutputStream stream, Run run) throws IOException {
+
+        int start = stream.size();
+
+        stream.writeLong(run.id);
+        stream.writeLong(run.timestamp);
+        stream.writeUTF(run.type);
+        stream.writeUTF(run.device);
+        stream.writeUTF(run.file);
+        stream.writeDouble(run.minGate);
+        stream.writeDouble(run.maxGate);
+        stream.writeInt(run.gateSteps);
+        stream.writeDouble(run.minSD);
+        stream.writeDouble(run.maxSD);
+        stream.writeInt(run.sdSteps);
+        stream.writeInt(run.averageCount);
+        stream.writeDouble(run.integrationTime);
+        stream.writeInt(run.rows);
+        stream.writeShort(run.names.length);
+
+        for (int c = 0; c < run.names.length; c++) {
+            stream.writeUTF(run.names[c]);
+            stream.writeUTF(run.units[c]);
+            stream.writeInt(run.lengths[c]);
+        }
+
+        stream.writeLong(run.offset);
+        stream.writeInt(stream.size() - start + 4);
+
+    }
+
+    private static Run read(DataInputStream stream, Map<String, String[]> layouts) throws IOException {
+
+        long   id        = stream.readLong();
+        long   timestamp = stream.readLong();
+        String type      = stream.readUTF();
+        String device    = stream.readUTF();
+        String file      = stream.readUTF();
+
+        SweepParameters params = new SweepParameters();
+
+        params.minGate         = stream.readDouble();
+        params.maxGate         = stream.readDouble();
+        params.gateSteps       = stream.readInt();
+        params.minSD           = stream.readDouble();
+        params.maxSD           = stream.readDouble();
+        params.sdSteps         = stream.readInt();
+        params.averageCount    = stream.readInt();
+        params.integrationTime = stream.readDouble();
+
+        int      rows    = stream.readInt();
+        int      columns = stream.readShort();
+        String[] names   = new String[columns];
+        String[] units   = new String[columns];
+        int[]    lengths = new int[columns];
+
+        for (int c = 0; c < columns; c++) {
+            names[c]   = stream.readUTF();
+            units[c]   = stream.readUTF();
+            lengths[c] = stream.readInt();
+        }
+
+        Run run = new Run(id, timestamp, type, device, file, params, rows, shared(layouts, names), shared(layouts, units));
+
+        run.lengths = lengths;
+        run.offset  = stream.readLong();
+
+        return run;
+
+    }
+
+    /**
+     * Returns the array already read in with the same contents as the given one, if any, or else the given one.
+     */
+    private static String[] shared(Map<String, String[]> layouts, String[] array) {
+        return layouts.computeIfAbsent(String.join("\n", array), k -> array);
+    }
+
+    /**
+     * Compresses a column of doubles, with their bytes regrouped by significance (see the class description).
+     */
+    private static byte[] compress(Deflater deflater, double[] values) {
+
+        int    n        = values.length;
+        byte[] shuffled = new byte[n * 8];
+
+        for (int i = 0; i < n; i++) {
+
+            long bits = Double.doubleToRawLongBits(values[i]);
+
+            for (int b = 0; b < 8; b++) {
+                shuffled[b * n + i] = (byte) (bits >>> (56 - 8 * b));
+            }
+
+        }
+
+        deflater.reset();
+        deflater.setInput(shuffled);
+        deflater.finish();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(shuffled.length / 2 + 64);
+        byte[]                buffer = new byte[8192];
+
+        while (!deflater.finished()) {
+            output.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        return output.toByteArray();
+
+    }
+
+    private static double[] decompress(Inflater inflater, byte[] compressed, int n) throws DataFormatException, IOException {
+
+        byte[] shuffled = new byte[n * 8];
+
+        inflater.reset();
+        inflater.setInput(compressed);
+
+        int length = 0;
+
+        while (length < shuffled.length) {
+
+            int read = inflater.inflate(shuffled, length, shuffled.length - length);
+
+            if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                throw new EOFException("Compressed column is shorter than expected.");
+            }
+
+            length += read;
+
+        }
+
+        double[] values = new double[n];
+
+        for (int i = 0; i < n; i++) {
+
+            long bits = 0;
+
+            for (int b = 0; b < 8; b++) {
+                bits = (bits << 8) | (shuffled[b * n + i] & 0xFF);
+            }
+
+            values[i] = Double.longBitsToDouble(bits);
+
+        }
+
+        return values;
+
+    }
+
+    /**
+     * Lists the runs in the store given as the first argument that match the options given, and how long it took to find
+     * them: --device NAME, --type transfer|output, --sd V, --gate V, --from YYYY-MM-DD, --to YYYY-MM-DD (exclusive),
+     * --load (also read back the data of every run found) and --export DIR (also write each run found to a CSV file in
+     * the given directory).
+     *
+     * @param args Command-line arguments
+     */
+    public static void main(String[] args) {
+
+        String  path   = null;
+        String  export = null;
+        boolean read   = false;
+        Query   query  = new Query();
+        ZoneId  zone   = ZoneId.systemDefault();
+
+        try {
+
+            for (int i = 0; i < args.length; i++) {
+
+                switch (args[i]) {
+
+                    case "--query":
+                        break;
+
+                    case "--device":
+                        query.device(args[++i]);
+                        break;
+
+                    case "--type":
+                        query.type(args[++i]);
+                        break;
+
+                    case "--sd":
+                        query.sd(Double.parseDouble(args[++i]));
+                        break;
+
+                    case "--gate":
+                        query.gate(Double.parseDouble(args[++i]));
+                        break;
+
+                    case "--from":
+                        query.from(LocalDate.parse(args[++i]).atStartOfDay(zone).toInstant().toEpochMilli());
+                        break;
+
+                    case "--to":
+                        query.to(LocalDate.parse(args[++i]).atStartOfDay(zone).toInstant().toEpochMilli());
+                        break;
+
+                    case "--load":
+                        read = true;
+                        break;
+
+                    case "--export":
+                        export = args[++i];
+                        read   = true;
+                        break;
+
+                    default:
+                        path = args[i];
+
+                }
+
+            }
+
+        } catch (RuntimeException e) {
+            path = null;
+        }
+
+        if (path == null) {
+            System.err.println("Usage: RunStore [store directory] [--device NAME] [--type TYPE] [--sd V] [--gate V] [--from DATE] [--to DATE] [--load] [--export DIR]");
+            System.exit(1);
+        }
+
+        try {
+
+            long      start  = System.nanoTime();
+            RunStore  store  = new RunStore(Paths.get(path), true);
+            double    opened = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            List<Run> found  = store.find(query);
+            double    search = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            long rows = 0;
+
+            for (Run run : found) {
+
+                System.out.println(run);
+
+                if (read) {
+
+                    ColumnStore results = store.load(run);
+                    rows += results.getRowCount();
+
+                    if (export != null) {
+                        results.output(Paths.get(export, String.format("run-%d.csv", run.id)).toString());
+                    }
+
+                }
+
+            }
+
+            double loaded = (System.nanoTime() - start) / 1e9;
+
+            store.close();
+
+            System.out.printf("Opened store of %d runs in %.1f ms%n", store.size(), opened * 1e3);
+            System.out.printf("Found %d matching runs in %.3f ms%n", found.size(), search * 1e3);
+
+            if (read) {
+                System.out.printf("Read back %d rows of their data in %.1f ms%n", rows, loaded * 1e3);
+            }
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package Experiment;
+
+import JISA.Devices.SMU;
+
+/**
+ * Channel implementation that simply passes everything through to a JISA SMU object.
+ */
+public class SMUChannel implements Channel {
+
+    private final SMU    smu;
+    private final Object instrument;
+
+    /**
+     * Creates a channel for a stand-alone SMU.
+     *
+     * @param smu SMU
+     */
+    public SMUChannel(SMU smu) {
+        this(smu, smu);
+    }
+
+    /**
+     * Creates a channel for an SMU which belongs to the given instrument (eg one channel of an MCSMU).
+     *
+     * @param smu        SMU
+     * @param instrument Instrument it belongs to
+     */
+    public SMUChannel(SMU smu, Object instrument) {
+        this.smu        = smu;
+        this.instrument = instrument;
+    }
+
+    /**
+     * Returns the SMU object this channel passes commands to.
+     *
+     * @return SMU
+     */
+    public SMU getSMU() {
+        return smu;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SMUChannel && ((SMUChannel) other).smu == smu && ((SMUChannel) other).instrument == instrument;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(smu);
+    }
+
+    @Override
+    public Object getInstrument() {
+        return instrument;
+    }
+
+    @Override
+    public void turnOn() throws Exception {
+        smu.turnOn();
+    }
+
+    @Override
+    public void turnOff() throws Exception {
+        smu.turnOff();
+    }
+
+    @Override
+    public void setVoltage(double voltage) throws Exception {
+        smu.setVoltage(voltage);
+    }
+
+    @Override
+    public void setCurrent(double current) throws Exception {
+        smu.setCurrent(current);
+    }
+
+    @Override
+    public double getVoltage() throws Exception {
+        return smu.getVoltage();
+    }
+
+    @Override
+    public double getCurrent() throws Exception {
+        return smu.getCurrent();
+    }
+
+    @Override
+    public void useAutoRanges() throws Exception {
+        smu.useAutoRanges();
+    }
+
+    @Override
+    public void setCurrentRange(double range) throws Exception {
+        smu.setCurrentRange(range);
+    }
+
+    @Override
+    public void setAveraging(SMU.AMode mode, int count) throws Exception {
+        smu.setAveraging(mode, count);
+    }
+
+    @Override
+    public void useFourProbe(boolean fourProbe) throws Exception {
+        smu.useFourProbe(fourProbe);
+    }
+
+    @Override
+    public void setIntegrationTime(double time) throws Exception {
+        smu.setIntegrationTime(time);
+    }
+
+}
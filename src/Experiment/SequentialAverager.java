@@ -0,0 +1,282 @@
+package Experiment;
+
+import java.util.Arrays;
+
+/**
+ * Averages repeated readings at a single point, taking only as many as are needed for a precise enough mean.
+ * <p>
+ * Readings are taken one at a time until the standard error of the mean of the first value in each reading (the drain
+ * current) is within the target precision, relative to the mean itself or else the absolute floor, whichever is larger.
+ * At least minSamples and at most maxSamples readings are taken, so quiet on-state points finish after a few readings
+ * while noisy points near the off-current floor get many more. Readings further than outlierThreshold robust standard
+ * deviations (from the median absolute deviation) from the median are dropped before averaging. Every value in each
+ * reading is averaged over the same readings, so leakage and probe voltages stay matched to the drain current.
+ * <p>
+ * The number of readings taken and the standard error for the last point are kept for storing alongside it, and totals
+ * over all points for reporting where the time went.
+ */
+public class SequentialAverager {
+
+    /**
+     * Something that takes a single reading of one or more values.
+     */
+    public interface Reading {
+        double[] read() throws Exception;
+    }
+
+    private static final double MAD_TO_SIGMA = 1.4826;  // Scales the median absolute deviation of normal noise to sigma
+
+    private final double       relPrecision;
+    private final double       absPrecision;
+    private final int          minSamples;
+    private final int          maxSamples;
+    private final double       outlierThreshold;
+    private final Cancellation cancellation;
+    private final double[][]   readings;
+    private final double[]     values;
+    private final double[]     deviations;
+    private final boolean[]    accepted;
+
+    // ==== Last Point =================================================================================================
+    private       int          lastSamples  = 0;
+    private       double       lastStdError = Double.NaN;
+
+    // ==== Statistics =================================================================================================
+    private       long         points   = 0;
+    private       long         samples  = 0;
+    private       long         rejected = 0;
+    private       long         capped   = 0;
+
+    /**
+     * Creates a sequential averager.
+     *
+     * @param relPrecision     Standard error of the mean to aim for, relative to the mean (eg 0.01 for 1%)
+     * @param absPrecision     Standard error of the mean that is always good enough, however small the mean
+     * @param minSamples       Fewest readings to take at each point
+     * @param maxSamples       Most readings to take at each point
+     * @param outlierThreshold Readings further than this many robust standard deviations from the median are dropped (0
+     *                         to keep all readings)
+     * @param cancellation     Stops taking readings when cancelled
+     */
+    public SequentialAverager(double relPrecision, double absPrecision, int minSamples, int maxSamples, double outlierThreshold, Cancellation cancellation) {
+        this.relPrecision     = relPrecision;
+        this.absPrecision     = absPrecision;
+        this.maxSamples       = Math.max(1, maxSamples);
+        this.minSamples       = Math.max(1, Math.min(minSamples, this.maxSamples));
+        this.outlierThreshold = outlierThreshold;
+        this.cancellation     = cancellation;
+        this.readings         = new double[this.maxSamples][];
+        this.values           = new double[this.maxSamples];
+        this.deviations       = new double[this.maxSamples];
+        this.accepted         = new boolean[this.maxSamples];
+    }
+
+    /**
+     * Creates a sequential averager using the sequential averaging settings in the given sweep parameters.
+     *
+     * @param params       Sweep parameters
+     * @param cancellation Stops taking readings when cancelled
+     */
+    public SequentialAverager(SweepParameters params, Cancellation cancellation) {
+        this(params.targetPrecision, params.precisionFloor, params.minSamples, params.maxSamples, params.outlierThreshold, cancellation);
+    }
+
+    /**
+     * Takes readings until the mean of their first values is precise enough (or maxSamples have been taken) and
+     * returns the mean of each value over the readings that were not dropped as outliers.
+     *
+     * @param reading Takes a single reading
+     *
+     * @return Mean of each value
+     *
+     * @throws Exception Upon something going wrong (including a CancellationException if cancelled)
+     */
+    public double[] measure(Reading reading) throws Exception {
+
+        int    count  = 0;
+        double stdErr = Double.NaN;
+        double mean   = 0.0;
+
+        while (count < maxSamples) {
+
+            cancellation.check();
+
+            readings[count] = reading.read();
+            values[count]   = readings[count][0];
+            count++;
+
+            if (count < minSamples) {
+                continue;
+            }
+
+            int    kept = reject(count);
+            double sum  = 0.0;
+
+            for (int i = 0; i < count; i++) {
+                if (accepted[i]) {
+                    sum += values[i];
+                }
+            }
+
+            mean = sum / kept;
+
+            if (kept > 1) {
+
+                double squares = 0.0;
+
+                for (int i = 0; i < count; i++) {
+                    if (accepted[i]) {
+                        squares += (values[i] - mean) * (values[i] - mean);
+                    }
+                }
+
+                stdErr = Math.sqrt(squares / (kept - 1) / kept);
+
+            } else {
+                stdErr = Double.NaN;
+            }
+
+            if (stdErr <= Math.max(absPrecision, relPrecision * Math.abs(mean))) {
+                break;
+            }
+
+        }
+
+        // Average every value over the same (non-outlier) readings
+        double[] means = new double[readings[0].length];
+        int      kept  = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            if (!accepted[i]) {
+                continue;
+            }
+
+            for (int j = 0; j < means.length; j++) {
+                means[j] += readings[i][j];
+            }
+
+            kept++;
+
+        }
+
+        for (int j = 0; j < means.length; j++) {
+            means[j] /= kept;
+        }
+
+        lastSamples  = count;
+        lastStdError = stdErr;
+
+        points++;
+        samples  += count;
+        rejected += count - kept;
+
+        if (count == maxSamples && !(stdErr <= Math.max(absPrecision, relPrecision * Math.abs(mean)))) {
+            capped++;
+        }
+
+        return means;
+
+    }
+
+    /**
+     * Returns the number of readings taken for the last point (including any dropped as outliers).
+     *
+     * @return Number of readings
+     */
+    public int getLastSamples() {
+        return lastSamples;
+    }
+
+    /**
+     * Returns the standard error of the mean drain current for the last point (NaN if there were too few readings to
+     * tell).
+     *
+     * @return Standard error [A]
+     */
+    public double getLastStdError() {
+        return lastStdError;
+    }
+
+    /**
+     * Returns the number of points measured so far.
+     *
+     * @return Number of points
+     */
+    public long getPoints() {
+        return points;
+    }
+
+    /**
+     * Returns the total number of readings taken so far.
+     *
+     * @return Number of readings
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Returns a human-readable summary of the readings taken.
+     *
+     * @return Summary
+     */
+    public String getSummary() {
+        return String.format(
+                "Sequential averaging: %d readings for %d points (%.1f per point, %d-%d allowed), %d outliers dropped, %d points stopped at %d without reaching the target precision",
+                samples,
+                points,
+                points > 0 ? (double) samples / points : 0.0,
+                minSamples,
+                maxSamples,
+                rejected,
+                capped,
+                maxSamples
+        );
+    }
+
+    /**
+     * Marks which of the first count values to keep, dropping outliers, and returns how many are kept.
+     */
+    private int reject(int count) {
+
+        Arrays.fill(accepted, 0, count, true);
+
+        // Need a few readings before the median and its spread mean anything
+        if (outlierThreshold <= 0 || count < 3) {
+            return count;
+        }
+
+        double median = median(values, count);
+
+        for (int i = 0; i < count; i++) {
+            deviations[i] = Math.abs(values[i] - median);
+        }
+
+        double sigma = MAD_TO_SIGMA * median(deviations, count);
+
+        if (sigma <= 0) {
+            return count;
+        }
+
+        int kept = 0;
+
+        for (int i = 0; i < count; i++) {
+            accepted[i] = Math.abs(values[i] - median) <= outlierThreshold * sigma;
+            kept += accepted[i] ? 1 : 0;
+        }
+
+        return kept;
+
+    }
+
+    private double median(double[] source, int count) {
+
+        double[] copy = Arrays.copyOf(source, count);
+        Arrays.sort(copy);
+
+        return count % 2 == 1 ? copy[count / 2] : 0.5 * (copy[count / 2 - 1] + copy[count / 2]);
+
+    }
+
+}
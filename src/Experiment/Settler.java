@@ -0,0 +1,200 @@
+package Experiment;
+
+import java.util.Arrays;
+
+/**
+ * Waits for a channel to settle after its source value has been changed.
+ * <p>
+ * In fixed mode this just waits the full delay time. In adaptive mode, the current on the given channel is read
+ * repeatedly and the wait ends as soon as two successive readings agree to within the given tolerance (or the full
+ * delay time has passed, whichever comes first). The time taken for each point is recorded so that the distribution of
+ * settle times and the time saved compared to fixed mode can be reported. Either way, the wait is cut short as soon as
+ * the given Cancellation is cancelled.
+ */
+public class Settler {
+
+    private static final int BINS = 10;
+
+    private final boolean      adaptive;
+    private final double       relTolerance;
+    private final double       absTolerance;
+    private final Cancellation cancellation;
+    private       double[]     times = new double[64];
+    private       int          count = 0;
+    private       double       fixed = 0.0;
+
+    /**
+     * Creates a settler that always waits the full delay time.
+     */
+    public Settler() {
+        this(false, 0.0, 0.0, new Cancellation());
+    }
+
+    /**
+     * Creates a settler.
+     *
+     * @param adaptive     Whether to finish waiting as soon as the readings have settled
+     * @param relTolerance Relative tolerance for successive readings to be considered equal (eg 0.01 for 1%)
+     * @param absTolerance Absolute tolerance for successive readings to be considered equal [A]
+     * @param cancellation Cuts any wait short when cancelled
+     */
+    public Settler(boolean adaptive, double relTolerance, double absTolerance, Cancellation cancellation) {
+        this.adaptive     = adaptive;
+        this.relTolerance = relTolerance;
+        this.absTolerance = absTolerance;
+        this.cancellation = cancellation;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Waits for the given channel to settle, up to the given maximum delay.
+     *
+     * @param channel   Channel whose current to watch
+     * @param delayMSec Maximum (fixed-mode) delay [ms]
+     *
+     * @throws Exception Upon something going wrong (including a CancellationException if cancelled while waiting)
+     */
+    public void settle(Channel channel, long delayMSec) throws Exception {
+
+        long start = System.nanoTime();
+
+        if (adaptive) {
+
+            long   limit    = start + delayMSec * 1000000L;
+            double previous = channel.getCurrent();
+
+            while (System.nanoTime() < limit) {
+
+                cancellation.check();
+
+                double current = channel.getCurrent();
+
+                if (Math.abs(current - previous) <= Math.max(absTolerance, relTolerance * Math.abs(current))) {
+                    break;
+                }
+
+                previous = current;
+
+            }
+
+        } else if (cancellation.sleep(delayMSec)) {
+            cancellation.check();
+        }
+
+        record((System.nanoTime() - start) / 1e9, delayMSec / 1e3);
+
+    }
+
+    /**
+     * Returns the number of points waited for so far.
+     *
+     * @return Number of points
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the total time spent waiting.
+     *
+     * @return Total settle time [s]
+     */
+    public double getTotalTime() {
+
+        double total = 0.0;
+
+        for (int i = 0; i < count; i++) {
+            total += times[i];
+        }
+
+        return total;
+
+    }
+
+    /**
+     * Returns how much less time was spent waiting than would have been with fixed delays (can be negative if the
+     * readings themselves took longer than the delay).
+     *
+     * @return Time saved [s]
+     */
+    public double getTimeSaved() {
+        return fixed - getTotalTime();
+    }
+
+    /**
+     * Returns the given percentile of the per-point settle times.
+     *
+     * @param percentile Percentile (0 to 100)
+     *
+     * @return Settle time [s]
+     */
+    public double getPercentile(double percentile) {
+
+        if (count == 0) {
+            return 0.0;
+        }
+
+        double[] sorted = Arrays.copyOf(times, count);
+        Arrays.sort(sorted);
+
+        return sorted[(int) Math.min(count - 1, Math.floor(percentile / 100.0 * count))];
+
+    }
+
+    /**
+     * Returns a human-readable summary of the settle times.
+     *
+     * @return Summary
+     */
+    public String getSummary() {
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(String.format(
+                "Settling (%s): %d points, %.3f s total, %.3f s saved vs fixed delay, per point: min %.1f ms, median %.1f ms, 90%% %.1f ms, max %.1f ms",
+                adaptive ? "adaptive" : "fixed",
+                count,
+                getTotalTime(),
+                getTimeSaved(),
+                getPercentile(0) * 1e3,
+                getPercentile(50) * 1e3,
+                getPercentile(90) * 1e3,
+                getPercentile(100) * 1e3
+        ));
+
+        // Crude text histogram of settle times, from zero up to the longest
+        double max = getPercentile(100);
+
+        if (count > 0 && max > 0) {
+
+            int[] bins = new int[BINS];
+
+            for (int i = 0; i < count; i++) {
+                bins[Math.min(BINS - 1, (int) (BINS * times[i] / max))]++;
+            }
+
+            for (int i = 0; i < BINS; i++) {
+                builder.append(String.format("%n  %7.1f - %7.1f ms: %d", i * max * 1e3 / BINS, (i + 1) * max * 1e3 / BINS, bins[i]));
+            }
+
+        }
+
+        return builder.toString();
+
+    }
+
+    private void record(double time, double fixedTime) {
+
+        if (count == times.length) {
+            times = Arrays.copyOf(times, 2 * count);
+        }
+
+        times[count++] = time;
+        fixed += fixedTime;
+
+    }
+
+}
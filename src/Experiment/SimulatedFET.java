@@ -0,0 +1,170 @@
+package Experiment;
+
+import java.util.Random;
+
+/**
+ * A simple model of a p-type field-effect transistor, used to provide simulated instruments with something to measure.
+ * <p>
+ * Uses the gradual-channel approximation with a soft-plus turn-on (giving an exponential sub-threshold region), an
+ * off-current floor, gate leakage, measurement noise and an exponential settling of the drain current after each change
+ * in terminal voltage.
+ */
+public class SimulatedFET {
+
+    public enum Terminal {
+        DRAIN,
+        GATE,
+        PROBE_1,
+        PROBE_2
+    }
+
+    // ==== Model Parameters ===========================================================================================
+    private double threshold     = -10.0;   // Threshold voltage [V]
+    private double gain          = 5e-7;    // W/L * mobility * capacitance [A/V^2]
+    private double swing         = 0.8;     // Width of the soft-plus turn-on [V]
+    private double offCurrent    = 1e-11;   // Off-current floor [A] at 60 V drain
+    private double gateLeakage   = 1e-12;   // Gate leakage [A/V]
+    private double noise         = 1e-3;    // Relative noise on each reading
+    private double noiseFloor    = 1e-13;   // Absolute noise on each reading [A]
+    private double settleTime    = 0.05;    // Time constant for settling after a voltage change [s]
+
+    // ==== State ======================================================================================================
+    private final Random random = new Random(0);
+    private       double drain  = 0.0;
+    private       double gate   = 0.0;
+    private       double start  = 0.0;
+    private       long   change = System.nanoTime();
+
+    public synchronized void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public synchronized void setGain(double gain) {
+        this.gain = gain;
+    }
+
+    public synchronized void setNoise(double relative, double floor) {
+        noise      = relative;
+        noiseFloor = floor;
+    }
+
+    public synchronized void setSettleTime(double settleTime) {
+        this.settleTime = settleTime;
+    }
+
+    /**
+     * Sets the voltage on the given terminal (relative to the grounded source).
+     *
+     * @param terminal Terminal to set
+     * @param voltage  Voltage [V]
+     */
+    public synchronized void setVoltage(Terminal terminal, double voltage) {
+
+        // The current relaxes from wherever it had got to, towards the new steady-state value
+        start  = drainCurrentNow();
+        change = System.nanoTime();
+
+        switch (terminal) {
+
+            case DRAIN:
+                drain = voltage;
+                break;
+
+            case GATE:
+                gate = voltage;
+                break;
+
+        }
+
+    }
+
+    /**
+     * Returns a (noisy) reading of the current flowing into the given terminal.
+     *
+     * @param terminal Terminal to measure
+     *
+     * @return Current [A]
+     */
+    public synchronized double getCurrent(Terminal terminal) {
+
+        switch (terminal) {
+
+            case DRAIN:
+                return addNoise(drainCurrentNow());
+
+            case GATE:
+                return addNoise(gate * gateLeakage);
+
+            default:
+                return addNoise(0.0);
+
+        }
+
+    }
+
+    /**
+     * Returns the voltage on the given terminal. Probe terminals sit one- and two-thirds of the way along the channel.
+     *
+     * @param terminal Terminal to measure
+     *
+     * @return Voltage [V]
+     */
+    public synchronized double getVoltage(Terminal terminal) {
+
+        switch (terminal) {
+
+            case DRAIN:
+                return drain;
+
+            case GATE:
+                return gate;
+
+            case PROBE_1:
+                return drain / 3.0;
+
+            case PROBE_2:
+                return 2.0 * drain / 3.0;
+
+            default:
+                return 0.0;
+
+        }
+
+    }
+
+    /**
+     * Returns the noiseless, fully-settled drain current for the given terminal voltages.
+     *
+     * @param drain Drain voltage [V]
+     * @param gate  Gate voltage [V]
+     *
+     * @return Drain current [A]
+     */
+    public synchronized double steadyDrainCurrent(double drain, double gate) {
+
+        // p-type: everything is mirrored so that negative voltages turn the device on
+        double overdrive = swing * Math.log1p(Math.exp((threshold - gate) / swing));
+        double vd        = -drain;
+        double sign      = Math.signum(vd);
+        double vdEff     = Math.min(Math.abs(vd), overdrive);
+        double channel   = gain * (overdrive * vdEff - vdEff * vdEff / 2.0);
+        double off       = offCurrent * Math.abs(vd) / 60.0;
+
+        return -sign * (channel + off);
+
+    }
+
+    private double drainCurrentNow() {
+
+        double target  = steadyDrainCurrent(drain, gate);
+        double elapsed = (System.nanoTime() - change) / 1e9;
+
+        return target + (start - target) * Math.exp(-elapsed / settleTime);
+
+    }
+
+    private double addNoise(double value) {
+        return value + random.nextGaussian() * (Math.abs(value) * noise + noiseFloor);
+    }
+
+}
@@ -0,0 +1,179 @@
+package Experiment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A simulated (multi-channel) SMU instrument, whose channels are connected to the terminals of a simulated FET.
+ * <p>
+ * Every command sent to it takes a fixed "bus latency" to complete, and commands are processed one at a time, just as
+ * a real instrument on a GPIB/USB bus would. The number of commands it has received is counted so that different ways
+ * of driving it can be compared. Its channels can also be set and measured together, in one command.
+ */
+public class SimulatedInstrument implements SynchronousInstrument {
+
+    private final String               name;
+    private final SimulatedFET         fet;
+    private final List<SimulatedSMU>   channels = new ArrayList<>();
+    private       double               latency;
+    private       long                 commands = 0;
+    private       double               busy     = 0.0;
+
+    /**
+     * Creates a simulated instrument with one channel per given terminal.
+     *
+     * @param name      Name of the instrument
+     * @param latency   Time taken to process each command [s]
+     * @param fet       The simulated FET to connect to
+     * @param terminals Terminal that each channel is connected to
+     */
+    public SimulatedInstrument(String name, double latency, SimulatedFET fet, SimulatedFET.Terminal... terminals) {
+
+        this.name    = name;
+        this.latency = latency;
+        this.fet     = fet;
+
+        for (SimulatedFET.Terminal terminal : terminals) {
+            channels.add(new SimulatedSMU(this, terminal));
+        }
+
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SimulatedFET getFET() {
+        return fet;
+    }
+
+    public int getNumChannels() {
+        return channels.size();
+    }
+
+    public SimulatedSMU getChannel(int channel) {
+        return channels.get(channel);
+    }
+
+    public synchronized void setLatency(double latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Returns the total number of commands this instrument has processed.
+     *
+     * @return Number of commands
+     */
+    public synchronized long getCommandCount() {
+        return commands;
+    }
+
+    public synchronized void resetCommandCount() {
+        commands = 0;
+    }
+
+    /**
+     * Returns the total time this instrument has spent on the bus or busy (ie the time a perfectly efficient programme
+     * would still have had to wait for it), since last reset.
+     *
+     * @return Busy time [s]
+     */
+    public synchronized double getBusyTime() {
+        return busy;
+    }
+
+    public synchronized void resetBusyTime() {
+        busy = 0.0;
+    }
+
+    @Override
+    public void setVoltages(Channel[] channels, double[] voltages) throws Exception {
+
+        command(0);
+
+        for (int i = 0; i < channels.length; i++) {
+            own(channels[i]).source(voltages[i]);
+        }
+
+    }
+
+    @Override
+    public double[] measureCurrents(Channel... channels) throws Exception {
+
+        // All channels integrate together, so it takes as long as the slowest one
+        double time = 0.0;
+
+        for (Channel channel : channels) {
+            time = Math.max(time, own(channel).measureTime());
+        }
+
+        command(time);
+
+        double[] currents = new double[channels.length];
+        double   hunting  = 0.0;
+
+        for (int i = 0; i < channels.length; i++) {
+
+            SimulatedSMU channel = own(channels[i]);
+            double       current = fet.getCurrent(channel.getTerminal());
+
+            // Any channels that have to auto-range hold up the whole reading
+            hunting     = Math.max(hunting, channel.rangeTime(current));
+            currents[i] = channel.reading(current);
+
+        }
+
+        occupy(hunting);
+
+        return currents;
+
+    }
+
+    private SimulatedSMU own(Channel channel) {
+
+        Channel base = channel.unwrap();
+
+        if (!channels.contains(base)) {
+            throw new IllegalArgumentException("Channel does not belong to " + name);
+        }
+
+        return (SimulatedSMU) base;
+
+    }
+
+    /**
+     * Processes a single command, taking the bus latency plus however long the instrument is then busy for.
+     *
+     * @param busy Time the instrument spends acting on the command (eg integrating) [s]
+     *
+     * @throws InterruptedException If interrupted whilst waiting
+     */
+    synchronized void command(double busy) throws InterruptedException {
+        commands++;
+        this.busy += latency + busy;
+        wait(latency + busy);
+    }
+
+    /**
+     * Occupies the instrument for the given time without any bus traffic (eg while it runs its own trigger model).
+     *
+     * @param busy Time [s]
+     *
+     * @throws InterruptedException If interrupted whilst waiting
+     */
+    synchronized void occupy(double busy) throws InterruptedException {
+        this.busy += busy;
+        wait(busy);
+    }
+
+    private static void wait(double seconds) throws InterruptedException {
+
+        long nanos = (long) (seconds * 1e9);
+
+        if (nanos > 0) {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        }
+
+    }
+
+}
@@ -0,0 +1,248 @@
+package Experiment;
+
+import JISA.Devices.SMU;
+
+/**
+ * A single channel of a SimulatedInstrument, connected to one terminal of a SimulatedFET. Supports buffered sweeps,
+ * provided all the channels to be measured are on the same instrument.
+ * <p>
+ * Current ranges go in decades from LOWEST_RANGE up. When auto-ranging, each reading whose current is in a different
+ * decade to the last costs an extra integration for every range moved through (as the instrument hunts for the right
+ * one). On a fixed range, currents more than OVER_RANGE times the range read as OVERFLOW.
+ */
+public class SimulatedSMU implements BufferedChannel {
+
+    public static final double OVERFLOW     = 9.91e37;  // What an over-range reading reads as (as Keithley SMUs do)
+    public static final double OVER_RANGE   = 1.05;     // How far past its range a reading can go before overflowing
+    public static final double LOWEST_RANGE = 1e-9;     // Smallest current range [A]
+
+    private final SimulatedInstrument   instrument;
+    private final SimulatedFET.Terminal terminal;
+    private       boolean               on        = false;
+    private       boolean               source    = true;     // true = voltage source, false = current source
+    private       double                level     = 0.0;
+    private       double                intTime   = 1D / 50D;
+    private       int                   count     = 1;
+    private       boolean               autoRange = true;
+    private       double                range     = 1.0;    // Current range when not auto-ranging [A]
+    private       int                   decade    = 0;      // log10 of the range auto-ranging last settled on
+
+    SimulatedSMU(SimulatedInstrument instrument, SimulatedFET.Terminal terminal) {
+        this.instrument = instrument;
+        this.terminal   = terminal;
+    }
+
+    @Override
+    public SimulatedInstrument getInstrument() {
+        return instrument;
+    }
+
+    public SimulatedFET.Terminal getTerminal() {
+        return terminal;
+    }
+
+    @Override
+    public void turnOn() throws Exception {
+        instrument.command(0);
+        on = true;
+        apply();
+    }
+
+    @Override
+    public void turnOff() throws Exception {
+        instrument.command(0);
+        on = false;
+        apply();
+    }
+
+    @Override
+    public void setVoltage(double voltage) throws Exception {
+        instrument.command(0);
+        source = true;
+        level  = voltage;
+        apply();
+    }
+
+    @Override
+    public void setCurrent(double current) throws Exception {
+        instrument.command(0);
+        source = false;
+        level  = current;
+        apply();
+    }
+
+    @Override
+    public double getVoltage() throws Exception {
+        instrument.command(measureTime());
+        return instrument.getFET().getVoltage(terminal);
+    }
+
+    @Override
+    public double getCurrent() throws Exception {
+
+        instrument.command(measureTime());
+
+        double current = instrument.getFET().getCurrent(terminal);
+        instrument.occupy(rangeTime(current));
+
+        return reading(current);
+
+    }
+
+    @Override
+    public void useAutoRanges() throws Exception {
+        instrument.command(0);
+        autoRange = true;
+    }
+
+    @Override
+    public void setCurrentRange(double range) throws Exception {
+        instrument.command(0);
+        autoRange  = false;
+        this.range = Math.pow(10, decadeOf(range));
+    }
+
+    @Override
+    public void setAveraging(SMU.AMode mode, int count) throws Exception {
+        instrument.command(0);
+        this.count = mode == SMU.AMode.NONE ? 1 : Math.max(1, count);
+    }
+
+    @Override
+    public void useFourProbe(boolean fourProbe) throws Exception {
+        instrument.command(0);
+    }
+
+    @Override
+    public void setIntegrationTime(double time) throws Exception {
+        instrument.command(0);
+        intTime = time;
+    }
+
+    @Override
+    public boolean canSweep(Channel... measured) {
+
+        for (Channel channel : measured) {
+
+            if (!(channel.unwrap() instanceof SimulatedSMU) || ((SimulatedSMU) channel.unwrap()).instrument != instrument) {
+                return false;
+            }
+
+        }
+
+        return true;
+
+    }
+
+    @Override
+    public double[][] sweepVoltage(double[] voltages, long delayMSec, Channel... measured) throws Exception {
+
+        if (!canSweep(measured)) {
+            throw new IllegalArgumentException("Buffered sweeps can only measure channels on the same instrument.");
+        }
+
+        // One command to load the source list and arm the trigger model
+        instrument.command(0);
+
+        source = true;
+
+        double[][] readings = new double[voltages.length][measured.length];
+
+        for (int i = 0; i < voltages.length; i++) {
+
+            level = voltages[i];
+            apply();
+
+            // All channels integrate simultaneously, so each point only costs one (averaged) integration time
+            instrument.occupy(delayMSec / 1000.0 + measureTime());
+
+            double hunting = 0.0;
+
+            for (int j = 0; j < measured.length; j++) {
+
+                SimulatedSMU channel = (SimulatedSMU) measured[j].unwrap();
+                double       current = instrument.getFET().getCurrent(channel.terminal);
+
+                hunting        = Math.max(hunting, channel.rangeTime(current));
+                readings[i][j] = channel.reading(current);
+
+            }
+
+            instrument.occupy(hunting);
+
+        }
+
+        // One command to pull the whole reading buffer back
+        instrument.command(0);
+
+        return readings;
+
+    }
+
+    /**
+     * Sets the source voltage without sending a command (ie as part of a command sent to the whole instrument).
+     *
+     * @param voltage Voltage [V]
+     */
+    void source(double voltage) {
+        source = true;
+        level  = voltage;
+        apply();
+    }
+
+    /**
+     * Returns how long each measurement takes, including averaging.
+     *
+     * @return Measurement time [s]
+     */
+    double measureTime() {
+        return intTime * count;
+    }
+
+    /**
+     * Returns how much longer than usual measuring the given current takes because of auto-ranging (and remembers the
+     * range it ends up on).
+     *
+     * @param current Current being measured [A]
+     *
+     * @return Extra measurement time [s]
+     */
+    double rangeTime(double current) {
+
+        if (!autoRange) {
+            return 0.0;
+        }
+
+        int wanted = decadeOf(Math.abs(current));
+        int moved  = Math.abs(wanted - decade);
+
+        decade = wanted;
+
+        return moved * measureTime();
+
+    }
+
+    /**
+     * Returns what the given current reads as on the present range.
+     *
+     * @param current Current being measured [A]
+     *
+     * @return Reading [A]
+     */
+    double reading(double current) {
+        return !autoRange && Math.abs(current) > OVER_RANGE * range ? OVERFLOW : current;
+    }
+
+    private static int decadeOf(double current) {
+        return current > LOWEST_RANGE ? (int) Math.ceil(Math.log10(current) - 1e-9) : (int) Math.round(Math.log10(LOWEST_RANGE));
+    }
+
+    private void apply() {
+
+        if (source && terminal != SimulatedFET.Terminal.PROBE_1 && terminal != SimulatedFET.Terminal.PROBE_2) {
+            instrument.getFET().setVoltage(terminal, on ? level : 0.0);
+        }
+
+    }
+
+}
@@ -0,0 +1,89 @@
+package Experiment;
+
+/**
+ * A complete simulated rig: one FET with a two-channel SMU on its drain and gate and another two-channel SMU acting
+ * as the four-point-probe voltmeters. Used when the programme is started with "--simulate".
+ */
+public class Simulation {
+
+    private static final double LATENCY = 5e-3; // Default bus latency per command [s]
+
+    private final SimulatedFET        fet;
+    private final SimulatedInstrument main;
+    private final SimulatedInstrument probes;
+
+    public Simulation() {
+        this(LATENCY);
+    }
+
+    public Simulation(double latency) {
+        fet    = new SimulatedFET();
+        main   = new SimulatedInstrument("Simulated SMU A", latency, fet, SimulatedFET.Terminal.DRAIN, SimulatedFET.Terminal.GATE);
+        probes = new SimulatedInstrument("Simulated SMU B", latency, fet, SimulatedFET.Terminal.PROBE_1, SimulatedFET.Terminal.PROBE_2);
+    }
+
+    public SimulatedFET getFET() {
+        return fet;
+    }
+
+    public SimulatedInstrument[] getInstruments() {
+        return new SimulatedInstrument[]{main, probes};
+    }
+
+    /**
+     * Returns the simulated SMU channel connected to the given terminal.
+     *
+     * @param terminal Terminal
+     *
+     * @return SMU channel
+     */
+    public SimulatedSMU getChannel(SimulatedFET.Terminal terminal) {
+
+        switch (terminal) {
+
+            case DRAIN:
+                return main.getChannel(0);
+
+            case GATE:
+                return main.getChannel(1);
+
+            case PROBE_1:
+                return probes.getChannel(0);
+
+            default:
+                return probes.getChannel(1);
+
+        }
+
+    }
+
+    /**
+     * Returns the total number of commands sent to all simulated instruments.
+     *
+     * @return Number of commands
+     */
+    public long getCommandCount() {
+        return main.getCommandCount() + probes.getCommandCount();
+    }
+
+    public void resetCommandCount() {
+        main.resetCommandCount();
+        probes.resetCommandCount();
+    }
+
+    /**
+     * Returns how long the busier of the two simulated instruments has spent on the bus or busy since last reset. As
+     * the two can work at the same time, this is the least time anything driving them could have taken.
+     *
+     * @return Busy time [s]
+     */
+    public double getBusyTime() {
+        return Math.max(main.getBusyTime(), probes.getBusyTime());
+    }
+
+    public void resetBusyTime() {
+        main.resetBusyTime();
+        probes.resetBusyTime();
+    }
+
+}
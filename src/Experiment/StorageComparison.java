@@ -0,0 +1,129 @@
+package Experiment;
+
+import JISA.Experiment.ResultList;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * Compares the memory used by a ResultList and a ColumnStore holding the same rows of transfer-curve results: how much
+ * is allocated while filling each, how much is still in use afterwards, and how many garbage collections happened.
+ * Run with: java Experiment.StorageComparison [rows]
+ */
+public class StorageComparison {
+
+    private static final int DEFAULT_ROWS = 1_000_000;
+
+    private interface Storage {
+        void addData(double... data) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+
+        System.out.printf("%d rows of %d columns%n%n", rows, SweepEngine.TRANSFER_COLUMNS.length);
+        System.out.printf("%-12s %12s %12s %10s %10s %10s%n", "Storage", "Allocated", "Retained", "GCs", "GC Time", "Fill Time");
+
+        // Run each twice, so that the second run is not skewed by class loading and JIT compilation
+        for (int i = 0; i < 2; i++) {
+
+            measure("ResultList", rows, false, () -> {
+                ResultList list = new ResultList(SweepEngine.TRANSFER_COLUMNS);
+                list.setUnits(SweepEngine.TRANSFER_UNITS);
+                return list::addData;
+            });
+
+            measure("ColumnStore", rows, true, () -> new ColumnStore(SweepEngine.TRANSFER_COLUMNS, SweepEngine.TRANSFER_UNITS)::addData);
+
+        }
+
+    }
+
+    /**
+     * Fills a storage with the given number of rows. A storage that copies each row it is given (rather than keeping
+     * a reference to it) is handed the same array every time, as it would be by a caller that re-uses its buffer.
+     */
+    private static void measure(String name, int rows, boolean copies, Supplier<Storage> factory) throws Exception {
+
+        settle();
+
+        long usedBefore  = used();
+        long allocBefore = allocated();
+        long gcsBefore   = gcCount();
+        long gcMsBefore  = gcTime();
+        long start       = System.nanoTime();
+
+        Storage  storage = factory.get();
+        double[] row     = new double[SweepEngine.TRANSFER_COLUMNS.length];
+
+        for (int i = 0; i < rows; i++) {
+
+            if (!copies) {
+                row = new double[row.length];
+            }
+
+            row[0] = -5.0;
+            row[1] = -60.0 * (i % 61) / 60;
+            row[2] = -1e-9 * i;
+            row[3] = 1e-12;
+
+            storage.addData(row);
+
+        }
+
+        double fill      = (System.nanoTime() - start) / 1e6;
+        long   allocated = allocated() - allocBefore;
+        long   gcs       = gcCount() - gcsBefore;
+        long   gcMs      = gcTime() - gcMsBefore;
+
+        settle();
+
+        long retained = used() - usedBefore;
+
+        System.out.printf("%-12s %9.1f MB %9.1f MB %10d %7d ms %7.0f ms%n", name, allocated / 1e6, retained / 1e6, gcs, gcMs, fill);
+
+        // Keep the storage reachable until after it has been measured
+        storage.addData(0, 0, 0, 0, 0, 0);
+
+    }
+
+    private static void settle() throws InterruptedException {
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+    }
+
+    private static long used() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by this thread, if the JVM can tell us, otherwise -1.
+     */
+    private static long allocated() {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        } else {
+            return -1;
+        }
+
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+}
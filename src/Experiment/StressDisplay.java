@@ -0,0 +1,205 @@
+package Experiment;
+
+import JISA.Experiment.ResultList;
+import JISA.GUI.Plot;
+import JISA.GUI.Series;
+import JISA.Util;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows a bias stress run (see SweepEngine.runStress(...)) as it goes: the drain current and leakage against stress
+ * time, and a table of the most recent rows, updated at a fixed frame rate like LiveDisplay.
+ * <p>
+ * Unlike LiveDisplay, nothing here grows with the length of the run: the plotted curves are kept as LogTimeSeries (the
+ * mean of each bucket of log-time is plotted) and only the most recent tableRows rows are kept for the table. The full
+ * data only goes to disk.
+ */
+public class StressDisplay implements Pipeline.Consumer {
+
+    private static final int TIME    = 0;   // Columns of SweepEngine.STRESS_COLUMNS
+    private static final int DRAIN   = 3;
+    private static final int LEAKAGE = 4;
+
+    private final ResultList               results;
+    private final int                      tableRows;
+    private final LogTimeSeries            drain;
+    private final LogTimeSeries            leakage;
+    private final Series                   drainSeries;
+    private final Series                   leakageSeries;
+    private final ArrayDeque<double[]>     recent  = new ArrayDeque<>();
+    private final List<double[]>           pending = new ArrayList<>();
+    private final ScheduledExecutorService timer;
+    private       int                      shown   = 0;
+
+    /**
+     * Creates a stress display and starts its frame timer.
+     *
+     * @param results   Results list to show the most recent rows in
+     * @param tableRows Maximum number of rows to keep in the results list
+     * @param plot      Plot to draw on
+     * @param perDecade Number of points to plot per decade of stress time
+     * @param frameRate Number of updates per second
+     */
+    public StressDisplay(ResultList results, int tableRows, Plot plot, int perDecade, double frameRate) {
+
+        this.results   = results;
+        this.tableRows = Math.max(1, tableRows);
+
+        drain   = new LogTimeSeries(perDecade);
+        leakage = new LogTimeSeries(perDecade);
+
+        drainSeries   = plot.createSeries("Drain Current", Color.RED);
+        leakageSeries = plot.createSeries("Leakage", Color.BLUE);
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Stress Display");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long period = (long) (1e6 / frameRate);
+        timer.scheduleAtFixedRate(this::frame, period, period, TimeUnit.MICROSECONDS);
+
+    }
+
+    /**
+     * Queues rows to be displayed on the next frame.
+     *
+     * @param rows Rows of data
+     */
+    @Override
+    public void consume(List<double[]> rows) {
+
+        synchronized (pending) {
+            pending.addAll(rows);
+        }
+
+    }
+
+    /**
+     * Displays anything still queued straight away, without waiting for the next frame.
+     */
+    public void flush() {
+        runOnTimer(this::frame);
+    }
+
+    /**
+     * Clears the results list and the plot.
+     */
+    public void clear() {
+
+        runOnTimer(() -> {
+
+            synchronized (pending) {
+                pending.clear();
+            }
+
+            results.clear();
+            recent.clear();
+            shown = 0;
+
+            drain.clear();
+            leakage.clear();
+            drainSeries.clear();
+            leakageSeries.clear();
+
+        });
+
+    }
+
+    private void runOnTimer(Runnable task) {
+
+        try {
+            timer.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Util.exceptionHandler(e);
+        }
+
+    }
+
+    private void frame() {
+
+        // An exception escaping from here would silently cancel all future frames
+        try {
+            drawFrame();
+        } catch (Exception e) {
+            Util.exceptionHandler(e);
+        }
+
+    }
+
+    private void drawFrame() {
+
+        List<double[]> rows;
+
+        synchronized (pending) {
+
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            rows = new ArrayList<>(pending);
+            pending.clear();
+
+        }
+
+        for (double[] row : rows) {
+
+            drain.add(row[TIME], Math.abs(row[DRAIN]));
+            leakage.add(row[TIME], Math.abs(row[LEAKAGE]));
+
+            // Only the rows the table might need to show again are kept
+            recent.addLast(row);
+
+            if (recent.size() > tableRows / 2) {
+                recent.removeFirst();
+            }
+
+        }
+
+        // Once the table is full, start it again from the most recent half of what it was showing
+        if (shown + rows.size() > tableRows) {
+
+            results.clear();
+            shown = 0;
+
+            for (double[] row : recent) {
+                results.addData(row);
+                shown++;
+            }
+
+        } else {
+
+            for (double[] row : rows) {
+                results.addData(row);
+                shown++;
+            }
+
+        }
+
+        redraw(drainSeries, drain);
+        redraw(leakageSeries, leakage);
+
+    }
+
+    private static void redraw(Series series, LogTimeSeries points) {
+
+        series.clear();
+
+        for (double[] point : points.getPoints()) {
+            series.addPoint(point[0], point[1]);
+        }
+
+    }
+
+}
@@ -0,0 +1,1059 @@
+package Experiment;
+
+import JISA.Devices.SMU;
+import JISA.Util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static Experiment.ParallelReader.current;
+import static Experiment.ParallelReader.voltage;
+
+/**
+ * Runs transfer and output sweeps on a set of channels, passing each row of results on as it is measured.
+ * <p>
+ * If buffered mode is requested and the swept channel supports it (see BufferedChannel) each sweep of the inner loop is
+ * handed to the instrument in one go. Otherwise (or if it can't) each point is set, waited-for and read individually.
+ */
+public class SweepEngine {
+
+    // ==== Result Columns =============================================================================================
+    public static final String[] TRANSFER_COLUMNS = {"SD Voltage", "Gate Voltage", "Drain Current", "Leakage", "4PP 1", "4PP 2", "Samples", "Std Error"};
+    public static final String[] TRANSFER_UNITS   = {"V", "V", "A", "A", "V", "V", "", "A"};
+    public static final String[] OUTPUT_COLUMNS   = {"SD Voltage", "Gate Voltage", "Drain Current", "Leakage", "Samples", "Std Error"};
+    public static final String[] OUTPUT_UNITS     = {"V", "V", "A", "A", "", "A"};
+    public static final String[] STRESS_COLUMNS   = {"Time", "SD Voltage", "Gate Voltage", "Drain Current", "Leakage"};
+    public static final String[] STRESS_UNITS     = {"s", "V", "V", "A", "A"};
+    public static final String[] CHECK_COLUMNS    = {"Stress Time", "SD Voltage", "Gate Voltage", "Drain Current", "Leakage", "4PP 1", "4PP 2", "Samples", "Std Error"};
+    public static final String[] CHECK_UNITS      = {"s", "V", "V", "A", "A", "V", "V", "", "A"};
+
+    private static final double BUFFER_CHUNK_TIME = 1.0;   // Roughly how long each buffered sweep command may take [s]
+
+    /**
+     * Something to pass each row of results to (eg ResultList::addData).
+     */
+    public interface RowSink {
+
+        void addData(double... data) throws Exception;
+
+        /**
+         * Returns a sink that passes each row to this sink and then to the given one.
+         *
+         * @param next Sink to pass rows to after this one
+         *
+         * @return Combined sink
+         */
+        default RowSink andThen(RowSink next) {
+
+            return data -> {
+                addData(data);
+                next.addData(data);
+            };
+
+        }
+
+    }
+
+    private final Cancellation       cancellation;
+    private       long               duration     = 0;
+    private       int                points       = 0;
+    private       boolean            usedBuffer   = false;
+    private       boolean            usedSync     = false;
+    private       Settler            settler      = new Settler();
+    private       ParallelReader     reader;
+    private       long               stopLatency  = -1;
+    private       SweepPlanner       planner;
+    private       SequentialAverager averager;
+    private       RangePlanner       rangePlanner = new RangePlanner();
+    private       boolean            planRanges   = false;
+    private       PhaseTimer         timer        = null;                // Created when first needed, see getTimer()
+    private       double             predicted    = 0.0;
+    private       int                checks       = 0;
+    private       String             type         = null;                // What the last run was, for its summary
+    private final List<String>       notes        = new ArrayList<>();   // Anything else to add to its summary
+
+    // ==== Checkpointing ==============================================================================================
+    private       SweepJournal          journal;
+    private       SweepJournal.Position resume;
+
+    /**
+     * Creates a sweep engine.
+     *
+     * @param cancellation Stops the sweep early (and turns everything off) when cancelled
+     */
+    public SweepEngine(Cancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Records progress through the next sweep in the given journal, so that it can be resumed if interrupted, and
+     * (optionally) resumes an interrupted sweep: points before the given position are not measured again.
+     *
+     * @param journal Journal to record progress in (null for none)
+     * @param resume  Position to resume from (null to start from the beginning)
+     */
+    public void setJournal(SweepJournal journal, SweepJournal.Position resume) {
+        this.journal = journal;
+        this.resume  = resume;
+    }
+
+    /**
+     * Performs a transfer curve sweep. For each SD voltage, the gate is swept forwards and back again. Each row is
+     * given as: SD Voltage, Gate Voltage, Drain Current, Leakage, 4PP 1, 4PP 2, Samples, Std Error (the number of
+     * readings averaged and the standard error of the mean drain current, which is only known when averaging
+     * sequentially, see SequentialAverager).
+     *
+     * @param params  Sweep parameters
+     * @param sd      Source-Drain channel
+     * @param gate    Source-Gate channel
+     * @param fpp1    First four-point-probe channel (only used if params.fourProbe)
+     * @param fpp2    Second four-point-probe channel (only used if params.fourProbe)
+     * @param results Where to send each row of results
+     *
+     * @throws Exception Upon something going wrong
+     */
+    public void runTransfer(SweepParameters params, Channel sd, Channel gate, Channel fpp1, Channel fpp2, RowSink results) throws Exception {
+
+        PhaseTimer timer = getTimer();
+        long       start = System.nanoTime();
+        type    = "Transfer sweep";
+        points  = 0;
+        settler = new Settler(params.adaptiveSettling, params.settleRelTolerance, params.settleAbsTolerance, cancellation);
+        reader  = new ParallelReader();
+        planner = SweepPlanner.forTransfer(params);
+        notes.clear();
+        averager = params.sequentialAveraging ? new SequentialAverager(params, cancellation) : null;
+
+        int      delayMSec    = params.getDelayMSec();
+        boolean  useFourProbe = params.fourProbe;
+        double[] gateVoltages = Util.symArray(Util.makeLinearArray(params.minGate, params.maxGate, params.gateSteps));
+        double[] sdVoltages   = Util.makeLinearArray(params.minSD, params.maxSD, params.sdSteps);
+
+        // Buffered sweeps only return currents, so four-probe runs have to go point-by-point
+        usedBuffer = !useFourProbe && canBuffer(params, gate, sd, gate);
+        int chunk  = bufferChunk(params);
+        predicted  = resume == null ? SweepPlanner.predictTransfer(params, usedBuffer) : 0.0;  // Whole sweeps only
+        planRanges = startRangePlanning(params);
+
+        // If SD and gate are two channels of one instrument that can drive them together, do so (four-probe runs read
+        // the probes in parallel with SD and gate instead, see ParallelReader)
+        SynchronousInstrument sync = useFourProbe ? null : synchronous(sd, gate);
+        usedSync = sync != null && !usedBuffer;
+
+        // From here on, every command (other than turning off) checks whether we have been stopped first
+        sd   = cancellable(sd);
+        gate = cancellable(gate);
+        fpp1 = cancellable(fpp1);
+        fpp2 = cancellable(fpp2);
+
+        try {
+
+            configureVoltageSource(sd, params.minSD, params);
+            configureVoltageSource(gate, params.minGate, params);
+
+            if (useFourProbe) {
+
+                configureVoltmeter(fpp1, params);
+                configureVoltmeter(fpp2, params);
+                fpp1.setCurrentRange(10E-12);
+
+                // Enable voltage probes (SMU channels)
+                fpp1.turnOn();
+                fpp2.turnOn();
+
+            }
+
+            // Enable the SMU channels
+            sd.turnOn();
+            gate.turnOn();
+
+            int startOuter = resume == null ? 0 : resume.outer;
+            int startInner = resume == null ? 0 : resume.inner;
+
+            mainLoop:
+            for (int o = startOuter; o < sdVoltages.length; o++) {
+
+                double VSD  = sdVoltages[o];
+                int    from = o == startOuter ? startInner : 0;
+
+                sd.setVoltage(VSD);
+
+                if (params.adaptiveGate) {
+
+                    gateVoltages = Util.symArray(planGateVoltages(params, sd, gate, VSD));
+
+                    // Adaptive gate voltages are only journalled at the end of each SD step, so never resume part-way
+                    from = 0;
+
+                    if (cancellation.isCancelled()) {
+                        break;
+                    }
+
+                }
+
+                if (usedBuffer) {
+
+                    // Sweep in chunks, so that if stopped we are never more than one chunk away from turning off
+                    for (int first = from; first < gateVoltages.length; first += chunk) {
+
+                        long       t        = timer.start();
+                        double[]   sweep    = Arrays.copyOfRange(gateVoltages, first, Math.min(first + chunk, gateVoltages.length));
+                        double[][] readings = ((BufferedChannel) gate).sweepVoltage(sweep, delayMSec, sd, gate);
+
+                        t = timer.mark(PhaseTimer.Phase.BUFFERED, t);
+
+                        for (int i = 0; i < sweep.length; i++) {
+                            results.addData(VSD, sweep[i], readings[i][0], readings[i][1], 0, 0, params.averageCount, Double.NaN);
+                            points++;
+                            t = timer.mark(PhaseTimer.Phase.STORE, t);
+                        }
+
+                        if (!params.adaptiveGate) {
+                            checkpoint(o, first + sweep.length, gateVoltages.length);
+                            timer.mark(PhaseTimer.Phase.CHECKPOINT, t);
+                        }
+
+                    }
+
+                    if (params.adaptiveGate) {
+                        checkpoint(o + 1, 0);
+                    }
+
+                    if (cancellation.isCancelled()) {
+                        break;
+                    }
+
+                    continue;
+
+                }
+
+                for (int i = from; i < gateVoltages.length; i++) {
+
+                    double VG = gateVoltages[i];
+                    long   t  = timer.start();
+
+                    if (sync != null) {
+                        setTogether(sync, sd, gate, VSD, VG);
+                    } else {
+                        gate.setVoltage(VG);
+                    }
+
+                    // Pick the drain current range in advance, rather than have the instrument hunt for it
+                    selectRange(sd, VSD, VG);
+                    t = timer.mark(PhaseTimer.Phase.SET, t);
+
+                    // Wait for the drain current to settle (or our delay time, if not adaptive) before measuring
+                    settler.settle(sd, planner.settleMSec(VSD, VG));
+                    t = timer.mark(PhaseTimer.Phase.SETTLE, t);
+
+                    // Read all channels at once, any on separate instruments will be read in parallel
+                    double[] readings = measure(sync, sd, gate, fpp1, fpp2, useFourProbe);
+                    t = timer.markMeasurement(t, samples(params) * params.integrationTime);
+
+                    results.addData(
+                            VSD,
+                            VG,
+                            readings[0],
+                            readings[1],
+                            useFourProbe ? readings[2] : 0,
+                            useFourProbe ? readings[3] : 0,
+                            samples(params),
+                            stdError()
+                    );
+
+                    points++;
+                    t = timer.mark(PhaseTimer.Phase.STORE, t);
+
+                    if (!params.adaptiveGate) {
+                        checkpoint(o, i + 1, gateVoltages.length);
+                        timer.mark(PhaseTimer.Phase.CHECKPOINT, t);
+                    }
+
+                    if (cancellation.isCancelled()) {
+                        break mainLoop;
+                    }
+
+                }
+
+                if (params.adaptiveGate) {
+                    checkpoint(o + 1, 0);
+                }
+
+            }
+
+            completed();
+
+        } catch (CancellationException e) {
+            // Stopped part-way through a point, so there is nothing more to do with it
+        } finally {
+
+            // Make sure all channels are turned back off, whatever happened
+            sd.turnOff();
+            gate.turnOff();
+
+            if (useFourProbe) {
+                fpp1.turnOff();
+                fpp2.turnOff();
+            }
+
+            stopped();
+            reader.close();
+            duration = System.nanoTime() - start;
+
+        }
+
+    }
+
+    /**
+     * Performs an output curve sweep. For each gate voltage, the SD voltage is swept forwards and then back again. Each
+     * row is given as: SD Voltage, Gate Voltage, Drain Current, Leakage, Samples, Std Error (as for transfer sweeps).
+     *
+     * @param params  Sweep parameters
+     * @param sd      Source-Drain channel
+     * @param gate    Source-Gate channel
+     * @param results Where to send each row of results
+     *
+     * @throws Exception Upon something going wrong
+     */
+    public void runOutput(SweepParameters params, Channel sd, Channel gate, RowSink results) throws Exception {
+
+        PhaseTimer timer = getTimer();
+        long       start = System.nanoTime();
+        type    = "Output sweep";
+        points  = 0;
+        settler = new Settler(params.adaptiveSettling, params.settleRelTolerance, params.settleAbsTolerance, cancellation);
+        reader  = new ParallelReader();
+        planner = SweepPlanner.forOutput(params);
+        notes.clear();
+        averager = params.sequentialAveraging ? new SequentialAverager(params, cancellation) : null;
+
+        int      delayMSec     = params.getDelayMSec();
+        double[] gateVoltages  = Util.makeLinearArray(params.minGate, params.maxGate, params.gateSteps);
+        double[] sdVoltages    = Util.makeLinearArray(params.minSD, params.maxSD, params.sdSteps);
+        double[] sdVoltagesRev = Util.makeLinearArray(params.maxSD, params.minSD, params.sdSteps);
+
+        usedBuffer = canBuffer(params, sd, sd, gate);
+        int chunk  = bufferChunk(params);
+        predicted  = resume == null ? SweepPlanner.predictOutput(params, usedBuffer) : 0.0;
+        planRanges = startRangePlanning(params);
+
+        SynchronousInstrument sync = synchronous(sd, gate);
+        usedSync = sync != null && !usedBuffer;
+
+        // From here on, every command (other than turning off) checks whether we have been stopped first
+        sd   = cancellable(sd);
+        gate = cancellable(gate);
+
+        try {
+
+            configureVoltageSource(sd, params.minSD, params);
+            configureVoltageSource(gate, params.minGate, params);
+
+            // Enable outputs
+            sd.turnOn();
+            gate.turnOn();
+
+            double[][] passes     = {sdVoltages, sdVoltagesRev};
+            int        perStep    = sdVoltages.length + sdVoltagesRev.length;
+            int        startOuter = resume == null ? 0 : resume.outer;
+            int        startInner = resume == null ? 0 : resume.inner;
+
+            mainLoop:
+            for (int o = startOuter; o < gateVoltages.length; o++) {
+
+                double VG     = gateVoltages[o];
+                int    from   = o == startOuter ? startInner : 0;
+                int    offset = 0;   // Index of the first point of the current pass within this gate step
+
+                gate.setVoltage(VG);
+
+                for (double[] pass : passes) {
+
+                    int first = Math.max(0, from - offset);
+
+                    if (first >= pass.length) {
+                        offset += pass.length;
+                        continue;
+                    }
+
+                    if (usedBuffer) {
+
+                        // Sweep in chunks, so that if stopped we are never more than one chunk away from turning off
+                        for (int index = first; index < pass.length; index += chunk) {
+
+                            long       t        = timer.start();
+                            double[]   sweep    = Arrays.copyOfRange(pass, index, Math.min(index + chunk, pass.length));
+                            double[][] readings = ((BufferedChannel) sd).sweepVoltage(sweep, delayMSec, sd, gate);
+
+                            t = timer.mark(PhaseTimer.Phase.BUFFERED, t);
+
+                            for (int i = 0; i < sweep.length; i++) {
+                                results.addData(sweep[i], VG, readings[i][0], readings[i][1], params.averageCount, Double.NaN);
+                                points++;
+                                t = timer.mark(PhaseTimer.Phase.STORE, t);
+                            }
+
+                            checkpoint(o, offset + index + sweep.length, perStep);
+                            timer.mark(PhaseTimer.Phase.CHECKPOINT, t);
+
+                        }
+
+                        offset += pass.length;
+
+                        if (cancellation.isCancelled()) {
+                            break mainLoop;
+                        }
+
+                        continue;
+
+                    }
+
+                    for (int i = first; i < pass.length; i++) {
+
+                        double VSD = pass[i];
+                        long   t   = timer.start();
+
+                        if (sync != null) {
+                            setTogether(sync, sd, gate, VSD, VG);
+                        } else {
+                            sd.setVoltage(VSD);
+                        }
+
+                        // Pick the drain current range in advance, rather than have the instrument hunt for it
+                        selectRange(sd, VSD, VG);
+                        t = timer.mark(PhaseTimer.Phase.SET, t);
+
+                        // Wait for the drain current to settle (or our delay time, if not adaptive) before measuring
+                        settler.settle(sd, planner.settleMSec(VSD, VG));
+                        t = timer.mark(PhaseTimer.Phase.SETTLE, t);
+
+                        double[] readings = measure(sync, sd, gate, null, null, false);
+                        t = timer.markMeasurement(t, samples(params) * params.integrationTime);
+
+                        results.addData(
+                                VSD,
+                                VG,
+                                readings[0],
+                                readings[1],
+                                samples(params),
+                                stdError()
+                        );
+
+                        points++;
+                        t = timer.mark(PhaseTimer.Phase.STORE, t);
+
+                        checkpoint(o, offset + i + 1, perStep);
+                        timer.mark(PhaseTimer.Phase.CHECKPOINT, t);
+
+                        if (cancellation.isCancelled()) {
+                            break mainLoop;
+                        }
+
+                    }
+
+                    offset += pass.length;
+
+                }
+
+            }
+
+            completed();
+
+        } catch (CancellationException e) {
+            // Stopped part-way through a point, so there is nothing more to do with it
+        } finally {
+
+            // Turn output back off again
+            sd.turnOff();
+            gate.turnOff();
+
+            stopped();
+            reader.close();
+            duration = System.nanoTime() - start;
+
+        }
+
+    }
+
+    /**
+     * Holds the SD and gate at fixed voltages (params.stressSD and params.stressGate) for params.stressTime, reading the
+     * drain and gate currents over and over, as fast as the instruments allow, to see how the device changes under bias
+     * stress. Each row is given as: Time (under stress, since the start), SD Voltage, Gate Voltage, Drain Current,
+     * Leakage.
+     * <p>
+     * If params.checksPerDecade is more than zero, a transfer sweep (using the check parameters, without four-probe
+     * readings) is run before the stress starts, then at stress times params.firstCheck * 10^(k / checksPerDecade) for
+     * k = 0, 1, 2... and once more at the end. The stress (and the stress time) stops while each one runs. Their rows are
+     * given as: Stress Time, then as for runTransfer(...).
+     * <p>
+     * Bias stress runs are not journalled (continuing one after an interruption would not measure the same thing), so
+     * cannot be resumed.
+     *
+     * @param params       Stress parameters
+     * @param check        Transfer sweep parameters for the checks
+     * @param sd           Source-Drain channel
+     * @param gate         Source-Gate channel
+     * @param results      Where to send each row of results
+     * @param checkResults Where to send each row of the transfer checks
+     *
+     * @throws Exception Upon something going wrong
+     */
+    public void runStress(SweepParameters params, SweepParameters check, Channel sd, Channel gate, RowSink results, RowSink checkResults) throws Exception {
+
+        PhaseTimer timer = getTimer();
+        long       start = System.nanoTime();
+        type       = "Bias stress";
+        points     = 0;
+        checks     = 0;
+        settler    = new Settler();
+        reader     = new ParallelReader();
+        averager   = null;
+        usedBuffer = false;
+        predicted  = 0.0;
+        planRanges = false;
+        notes.clear();
+
+        // Checks are run by an engine of their own, so that their points, phases etc are kept apart from ours
+        boolean     checking = params.checksPerDecade > 0 && check != null && checkResults != null;
+        SweepEngine checker  = checking ? new SweepEngine(cancellation) : null;
+        Channel     checkSD  = sd;
+        Channel     checkG   = gate;
+
+        SynchronousInstrument sync = synchronous(sd, gate);
+        usedSync = sync != null;
+
+        sd   = cancellable(sd);
+        gate = cancellable(gate);
+
+        try {
+
+            // Where the device starts from, before any stress
+            if (checking) {
+                check(checker, check, checkSD, checkG, 0.0, checkResults);
+            }
+
+            double stressed = 0.0;                          // Stress time before the current stretch of it [s]
+            int    next     = 0;                            // Which check is next
+            long   since    = stress(params, sd, gate);     // When the current stretch started [ns]
+
+            while (!cancellation.isCancelled()) {
+
+                long     t        = timer.start();
+                double[] readings = readCurrents(sync, sd, gate);
+                long     read     = timer.markMeasurement(t, params.getInstrumentAverageCount() * params.integrationTime);
+
+                // Time the reading to half-way through taking it
+                double time = stressed + ((t + read) / 2 - since) / 1e9;
+
+                results.addData(time, params.stressSD, params.stressGate, readings[0], readings[1]);
+                points++;
+                timer.mark(PhaseTimer.Phase.STORE, read);
+
+                if (time >= params.stressTime) {
+
+                    if (checking) {
+                        check(checker, check, checkSD, checkG, time, checkResults);
+                    }
+
+                    break;
+
+                }
+
+                if (checking && time >= params.firstCheck * Math.pow(10, (double) next / params.checksPerDecade)) {
+
+                    stressed += (System.nanoTime() - since) / 1e9;
+
+                    check(checker, check, checkSD, checkG, stressed, checkResults);
+
+                    // Skip any checks that would already have been due
+                    while (params.firstCheck * Math.pow(10, (double) next / params.checksPerDecade) <= stressed) {
+                        next++;
+                    }
+
+                    if (cancellation.isCancelled()) {
+                        break;
+                    }
+
+                    since = stress(params, sd, gate);
+
+                }
+
+            }
+
+        } catch (CancellationException e) {
+            // Stopped part-way through a reading, so there is nothing more to do with it
+        } finally {
+
+            sd.turnOff();
+            gate.turnOff();
+
+            stopped();
+            reader.close();
+            duration = System.nanoTime() - start;
+
+        }
+
+    }
+
+    /**
+     * Configures the SD and gate channels for bias stress and turns them on, returning when they were turned on.
+     */
+    private long stress(SweepParameters params, Channel sd, Channel gate) throws Exception {
+
+        configureVoltageSource(sd, params.stressSD, params);
+        configureVoltageSource(gate, params.stressGate, params);
+
+        gate.turnOn();
+        sd.turnOn();
+
+        return System.nanoTime();
+
+    }
+
+    /**
+     * Runs a transfer sweep to check on the device part-way through bias stress, adding the stress time to the start of
+     * each row.
+     */
+    private void check(SweepEngine checker, SweepParameters check, Channel sd, Channel gate, double stressTime, RowSink results) throws Exception {
+
+        checker.runTransfer(check, sd, gate, null, null, data -> {
+            double[] row = new double[data.length + 1];
+            row[0] = stressTime;
+            System.arraycopy(data, 0, row, 1, data.length);
+            results.addData(row);
+        });
+
+        checks++;
+
+    }
+
+    /**
+     * Returns the number of transfer sweeps run to check on the device during the last bias stress run.
+     *
+     * @return Number of checks
+     */
+    public int getChecks() {
+        return checks;
+    }
+
+    /**
+     * Records in the journal (if any) that we have got as far as the given position.
+     */
+    private void checkpoint(int outer, int inner) throws IOException {
+
+        if (journal != null) {
+            journal.point((resume == null ? 0 : resume.rows) + points, outer, inner);
+        }
+
+    }
+
+    /**
+     * As checkpoint(outer, inner), but moves on to the start of the next outer step if inner has reached its end.
+     */
+    private void checkpoint(int outer, int inner, int innerLength) throws IOException {
+
+        if (inner >= innerLength) {
+            checkpoint(outer + 1, 0);
+        } else {
+            checkpoint(outer, inner);
+        }
+
+    }
+
+    /**
+     * Records in the journal (if any) that the sweep is finished, unless it was stopped early.
+     */
+    private void completed() throws IOException {
+
+        if (journal != null && !cancellation.isCancelled()) {
+            journal.complete();
+        }
+
+    }
+
+    /**
+     * Records how long it took to turn everything off after being stopped (if we were).
+     */
+    private void stopped() {
+        stopLatency = cancellation.isCancelled() ? System.nanoTime() - cancellation.getRequestTime() : -1;
+    }
+
+    /**
+     * Returns how long it took, after being stopped, for all outputs to be turned off in the last sweep.
+     *
+     * @return Stop latency [s], or -1 if the last sweep was not stopped
+     */
+    public double getStopLatency() {
+        return stopLatency < 0 ? -1 : stopLatency / 1e9;
+    }
+
+    private Channel cancellable(Channel channel) {
+        return channel == null ? null : new CancellableChannel(channel, cancellation);
+    }
+
+    /**
+     * Returns how long the last sweep was predicted to spend settling and integrating, before it started (see
+     * SweepPlanner). Zero if it was resumed part-way through.
+     *
+     * @return Predicted duration [s]
+     */
+    public double getPredictedDuration() {
+        return predicted;
+    }
+
+    /**
+     * Returns how long the last sweep took.
+     *
+     * @return Duration [s]
+     */
+    public double getDuration() {
+        return duration / 1e9;
+    }
+
+    /**
+     * Returns the number of points measured in the last sweep.
+     *
+     * @return Number of points
+     */
+    public int getNumPoints() {
+        return points;
+    }
+
+    /**
+     * Returns whether the last sweep was performed using buffered sweeps.
+     *
+     * @return Buffered?
+     */
+    public boolean wasBuffered() {
+        return usedBuffer;
+    }
+
+    /**
+     * Works out which gate voltages to use for the forward sweep at the given SD voltage by measuring coarsely first and
+     * then refining where the transfer curve changes fastest (see AdaptiveGateSampler).
+     */
+    private double[] planGateVoltages(SweepParameters params, Channel sd, Channel gate, double VSD) throws Exception {
+
+        // The coarse readings jump about too much to plan ranges for
+        if (planRanges) {
+            rangePlanner.release(sd);
+        }
+
+        AdaptiveGateSampler sampler = new AdaptiveGateSampler(
+                params.minGate,
+                params.maxGate,
+                params.coarseGateSteps,
+                params.gateSteps,
+                params.logTolerance,
+                params.sqrtTolerance
+        );
+
+        double[] voltages = sampler.plan(gateVoltages -> {
+
+            double[] currents = new double[gateVoltages.length];
+
+            for (int i = 0; i < gateVoltages.length && !cancellation.isCancelled(); i++) {
+                gate.setVoltage(gateVoltages[i]);
+                settler.settle(sd, planner.settleMSec(VSD, gateVoltages[i]));
+                currents[i] = sd.getCurrent();
+            }
+
+            return currents;
+
+        });
+
+        notes.add(String.format(
+                "Adaptive gate sampling at VSD = %s V: %d of a possible %d points chosen using %d readings",
+                VSD,
+                voltages.length,
+                params.gateSteps,
+                sampler.getReadings()
+        ));
+
+        return voltages;
+
+    }
+
+    /**
+     * Sets the range planner to use when SweepParameters.rangePlanning is set. Sharing one planner between all the
+     * sweeps of a device lets each sweep predict ranges from what earlier sweeps measured. By default, each engine has
+     * its own.
+     *
+     * @param rangePlanner Range planner
+     */
+    public void setRangePlanner(RangePlanner rangePlanner) {
+        this.rangePlanner = rangePlanner;
+    }
+
+    /**
+     * Returns the range planner, which holds the number of range changes and overflows in the last sweep.
+     *
+     * @return Range planner
+     */
+    public RangePlanner getRangePlanner() {
+        return rangePlanner;
+    }
+
+    /**
+     * Sets the timer to record how long each phase of each point takes in. By default, each engine creates its own the
+     * first time it runs (as creating one calibrates it, which takes a while), but one can be shared with other parts
+     * of the programme (eg the pipeline's consumers) to time everything together.
+     *
+     * @param timer Phase timer
+     */
+    public void setTimer(PhaseTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Returns the timer recording how long each phase of each point takes.
+     *
+     * @return Phase timer
+     */
+    public PhaseTimer getTimer() {
+
+        if (timer == null) {
+            timer = new PhaseTimer();
+        }
+
+        return timer;
+
+    }
+
+    /**
+     * Returns the settler used for the last sweep, which holds the settle time statistics for each point measured
+     * point-by-point (buffered sweeps leave the settling to the instrument).
+     *
+     * @return Settler
+     */
+    public Settler getSettler() {
+        return settler;
+    }
+
+    /**
+     * Returns the instrument that SD and gate both belong to, if it can drive them synchronously, otherwise null.
+     */
+    private SynchronousInstrument synchronous(Channel sd, Channel gate) {
+
+        Object instrument = sd.getInstrument();
+
+        if (instrument == gate.getInstrument() && instrument instanceof SynchronousInstrument) {
+            return (SynchronousInstrument) instrument;
+        } else {
+            return null;
+        }
+
+    }
+
+    /**
+     * Sets the SD and gate voltages in one operation on their shared instrument.
+     */
+    private void setTogether(SynchronousInstrument sync, Channel sd, Channel gate, double VSD, double VG) throws Exception {
+
+        // This goes straight to the instrument, so check for ourselves whether we have been stopped, and take its lock in
+        // case another device is using it too
+        cancellation.check();
+
+        ReentrantLock lock = InstrumentLocks.get(sync);
+        lock.lockInterruptibly();
+
+        try {
+            sync.setVoltages(new Channel[]{sd, gate}, new double[]{VSD, VG});
+        } finally {
+            lock.unlock();
+        }
+
+        // Let the channels (or anything wrapping them) know what they have been set to
+        sd.voltageSet(VSD);
+        gate.voltageSet(VG);
+
+    }
+
+    /**
+     * Takes the readings for one point: SD and gate currents, plus the probe voltages if four-probe. If averaging
+     * sequentially, readings are repeated until the drain current is precise enough and the mean is returned. If the
+     * drain current overflows a planned range, it is measured again on auto-range.
+     */
+    private double[] measure(SynchronousInstrument sync, Channel sd, Channel gate, Channel fpp1, Channel fpp2, boolean fourProbe) throws Exception {
+
+        SequentialAverager.Reading reading = fourProbe
+                                             ? () -> reader.read(current(sd), current(gate), voltage(fpp1), voltage(fpp2))
+                                             : () -> readCurrents(sync, sd, gate);
+
+        double[] readings = averager != null ? averager.measure(reading) : reading.read();
+
+        if (planRanges) {
+
+            if (rangePlanner.isOverflow(readings[0])) {
+                rangePlanner.overflowed(sd);
+                readings = averager != null ? averager.measure(reading) : reading.read();
+            }
+
+            rangePlanner.record(readings[0]);
+
+        }
+
+        return readings;
+
+    }
+
+    /**
+     * Gets the range planner ready for a sweep, if planning ranges (buffered sweeps leave ranging to the instrument).
+     */
+    private boolean startRangePlanning(SweepParameters params) {
+
+        if (!params.rangePlanning || usedBuffer) {
+            return false;
+        }
+
+        rangePlanner.start(params);
+        return true;
+
+    }
+
+    /**
+     * Sets the drain channel to the range predicted for the given point, if planning ranges.
+     */
+    private void selectRange(Channel sd, double VSD, double VG) throws Exception {
+
+        if (planRanges) {
+            rangePlanner.select(sd, VSD, VG);
+        }
+
+    }
+
+    /**
+     * Returns how many readings were averaged for the last point measured.
+     */
+    private int samples(SweepParameters params) {
+        return averager != null ? averager.getLastSamples() : params.averageCount;
+    }
+
+    /**
+     * Returns the standard error of the mean drain current for the last point measured (NaN if not known).
+     */
+    private double stdError() {
+        return averager != null ? averager.getLastStdError() : Double.NaN;
+    }
+
+    /**
+     * Reads the SD and gate currents, in one operation if they share a synchronous instrument, or in parallel if not.
+     */
+    private double[] readCurrents(SynchronousInstrument sync, Channel sd, Channel gate) throws Exception {
+
+        if (sync == null) {
+            return reader.read(current(sd), current(gate));
+        }
+
+        cancellation.check();
+
+        ReentrantLock lock = InstrumentLocks.get(sync);
+        lock.lockInterruptibly();
+
+        try {
+            return sync.measureCurrents(sd, gate);
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Returns how many points to put in each buffered sweep so that each takes about BUFFER_CHUNK_TIME.
+     */
+    private static int bufferChunk(SweepParameters params) {
+        double perPoint = params.delay + params.averageCount * params.integrationTime;
+        return perPoint > 0 ? Math.max(1, (int) Math.min(BUFFER_CHUNK_TIME / perPoint, 1e6)) : 1000000;
+    }
+
+    private boolean canBuffer(SweepParameters params, Channel swept, Channel... measured) {
+        // Sequential averaging decides how many readings to take as it goes, which buffered sweeps can't do
+        return params.buffered && !params.sequentialAveraging && swept instanceof BufferedChannel && ((BufferedChannel) swept).canSweep(measured);
+    }
+
+    private void configureVoltageSource(Channel channel, double initial, SweepParameters params) throws Exception {
+        int count = params.getInstrumentAverageCount();                    // Just 1 if averaging in software instead
+        channel.turnOff();                                                 // Make sure we're not outputting anything yet
+        channel.setVoltage(initial);                                       // Source voltage, initial value
+        channel.useAutoRanges();                                           // Use auto-ranging for both voltage and current
+        channel.setAveraging(SMU.AMode.MEAN_REPEAT, count);                // Use repeated-mean averaging with user-inputted n
+        channel.useFourProbe(false);                                       // We only want 2-wire measurements
+        channel.setIntegrationTime(params.integrationTime);                // Set the integration time
+    }
+
+    private void configureVoltmeter(Channel channel, SweepParameters params) throws Exception {
+        int count = params.getInstrumentAverageCount();                    // Just 1 if averaging in software instead
+        channel.turnOff();                                                 // Make sure we're not outputting yet
+        channel.setCurrent(0);                                             // We want to source 0 A of current
+        channel.useAutoRanges();                                           // Auto-ranging
+        channel.setAveraging(SMU.AMode.MEAN_REPEAT, count);                // Averaging mode and count
+        channel.useFourProbe(false);                                       // 2-wire measurements
+        channel.setIntegrationTime(params.integrationTime);                // Set the integration time
+    }
+
+    /**
+     * Returns a human-readable summary of the last run: how long it took and how, and how each part of it (settling,
+     * averaging, range planning, timing etc) went. Nothing is printed, so it is up to the caller whether to show it.
+     *
+     * @return Summary, one item per line
+     */
+    public String getSummary() {
+
+        StringBuilder summary = new StringBuilder();
+
+        summary.append(String.format(
+                "%s: %d points in %.3f s (%.1f ms/point, %s)%n",
+                type == null ? "Nothing run" : type,
+                points,
+                getDuration(),
+                points > 0 ? 1000.0 * getDuration() / points : 0.0,
+                usedBuffer ? "buffered" : usedSync ? "synchronous point-by-point" : "point-by-point"
+        ));
+
+        for (String note : notes) {
+            summary.append(note).append(System.lineSeparator());
+        }
+
+        if (predicted > 0) {
+            summary.append(String.format(
+                    "Predicted %.3f s settling and integrating, took %.3f s (%.1f ms/point spent on everything else)%n",
+                    predicted,
+                    getDuration(),
+                    points > 0 ? 1000.0 * Math.max(0.0, getDuration() - predicted) / points : 0.0
+            ));
+        }
+
+        if (planRanges) {
+            summary.append(rangePlanner.getSummary()).append(System.lineSeparator());
+        }
+
+        if (checks > 0) {
+            summary.append(String.format("Interrupted %d times for a transfer sweep%n", checks));
+        }
+
+        if (averager != null && averager.getPoints() > 0) {
+            summary.append(averager.getSummary()).append(System.lineSeparator());
+        }
+
+        if (settler.getCount() > 0) {
+            summary.append(settler.getSummary()).append(System.lineSeparator());
+        }
+
+        if (reader != null && reader.getCount() > 0) {
+            summary.append(reader.getSummary()).append(System.lineSeparator());
+        }
+
+        if (stopLatency >= 0) {
+            summary.append(String.format("Stopped: all outputs off %.1f ms after being asked to stop%n", getStopLatency() * 1e3));
+        }
+
+        summary.append(getTimer().getSummary());
+
+        return summary.toString();
+
+    }
+}
@@ -0,0 +1,500 @@
+package Experiment;
+
+import JISA.Devices.MCSMU;
+import JISA.Devices.SMU;
+import JISA.VISA.VISADevice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps a record, next to a results file, of how far through a sweep we have got, so that an interrupted sweep can be
+ * picked up again where it left off. The journal is a text file (results file + ".journal") like so:
+ * <pre>
+ * type transfer
+ * param minGate 0.0
+ * param ...
+ * instrument sd [driver] at [address] channel [n]
+ * instrument ...
+ * point 122 2 61        (rows written so far, outer index, index into the inner sweep(s) of that outer step)
+ * point ...
+ * complete
+ * </pre>
+ * Results reach the results file some time after the journal records them (they are written in batches), so when
+ * resuming, the last point recorded in the journal that the results file (and binary file, if any) also has all the
+ * rows for is used, and anything in the files after it is cut off. A binary file that has gone missing does not count
+ * against this (it is written afresh, starting with the rows already in the results file).
+ */
+public class SweepJournal implements AutoCloseable {
+
+    /**
+     * A point in a sweep to resume from.
+     */
+    public static class Position {
+
+        public final String              type;
+        public final SweepParameters     params;
+        public final Map<String, String> instruments;
+        public final boolean             complete;
+        public final long                rows;    // Rows already measured
+        public final int                 outer;   // Index of the outer-loop step to carry on from
+        public final int                 inner;   // Index into that step's inner sweep(s) to carry on from
+
+        Position(String type, SweepParameters params, Map<String, String> instruments, boolean complete, long rows, int outer, int inner) {
+            this.type        = type;
+            this.params      = params;
+            this.instruments = instruments;
+            this.complete    = complete;
+            this.rows        = rows;
+            this.outer       = outer;
+            this.inner       = inner;
+        }
+
+        /**
+         * Checks that the interrupted sweep was of the given type, using the same instruments as now.
+         *
+         * @param type        Type of sweep about to be run
+         * @param instruments Description of the instrument now used for each role
+         *
+         * @throws IOException If not
+         */
+        public void check(String type, Map<String, String> instruments) throws IOException {
+
+            if (!this.type.equals(type)) {
+                throw new IOException(String.format("The interrupted run was a %s sweep, not a %s sweep.", this.type, type));
+            }
+
+            for (Map.Entry<String, String> entry : this.instruments.entrySet()) {
+
+                String now = instruments.get(entry.getKey());
+
+                if (!entry.getValue().equals(now)) {
+                    throw new IOException(String.format("The interrupted run used %s for %s, not %s.", entry.getValue(), entry.getKey(), now));
+                }
+
+            }
+
+        }
+
+    }
+
+    private final FileChannel channel;
+
+    private SweepJournal(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Returns the path of the journal for the given results file.
+     *
+     * @param file Results file
+     *
+     * @return Journal path
+     */
+    public static String pathFor(String file) {
+        return file + ".journal";
+    }
+
+    /**
+     * Starts a new journal for the given results file, replacing any old one, recording the sweep type, parameters and
+     * what instruments are in use.
+     *
+     * @param file        Results file
+     * @param type        Sweep type (eg "transfer" or "output")
+     * @param params      Sweep parameters
+     * @param instruments Description of the instrument used for each role
+     *
+     * @return Journal to record progress in
+     *
+     * @throws IOException Upon the journal not being writable
+     */
+    public static SweepJournal create(String file, String type, SweepParameters params, Map<String, String> instruments) throws IOException {
+
+        FileChannel channel = FileChannel.open(
+                Paths.get(pathFor(file)),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        );
+
+        SweepJournal  journal = new SweepJournal(channel);
+        StringBuilder header  = new StringBuilder();
+
+        header.append("type ").append(type).append('\n');
+
+        for (Map.Entry<String, String> entry : params.toMap().entrySet()) {
+            header.append("param ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+
+        for (Map.Entry<String, String> entry : instruments.entrySet()) {
+            header.append("instrument ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+
+        journal.write(header.toString());
+        channel.force(true);
+
+        return journal;
+
+    }
+
+    /**
+     * Re-opens the journal for an interrupted sweep to carry on recording in it, after cutting it back to the given
+     * position (so that it always matches the results files).
+     *
+     * @param file     Results file
+     * @param position Position being resumed from (see resume(...))
+     *
+     * @return Journal to record further progress in
+     *
+     * @throws IOException Upon the journal not being writable
+     */
+    public static SweepJournal reopen(String file, Position position) throws IOException {
+
+        // Lose any half-written last line before adding to the end
+        long        end     = endOfRow(pathFor(file), Long.MAX_VALUE)[0];
+        FileChannel channel = FileChannel.open(Paths.get(pathFor(file)), StandardOpenOption.WRITE);
+
+        channel.truncate(end);
+        channel.position(end);
+
+        SweepJournal journal = new SweepJournal(channel);
+        journal.point(position.rows, position.outer, position.inner);
+
+        return journal;
+
+    }
+
+    /**
+     * Works out where an interrupted sweep should be resumed from, and cuts the results file (and binary file, if
+     * given) back to exactly the rows measured up to that point.
+     *
+     * @param file   Results (CSV) file
+     * @param binary Binary results file also being written, or null if none
+     *
+     * @return Position to resume from, or null if there is nothing to resume (no results file yet)
+     *
+     * @throws IOException Upon the results file having no journal or its sweep having completed (so that resuming into
+     *                     it does not start again and overwrite it), any of the files not being readable, or the journal
+     *                     not making sense
+     */
+    public static Position resume(String file, String binary) throws IOException {
+
+        if (!Files.exists(Paths.get(file))) {
+            return null;
+        }
+
+        Position position = read(file, binary);
+
+        if (position == null) {
+            throw new IOException(String.format("%s has no journal (%s), so cannot be resumed.", file, pathFor(file)));
+        }
+
+        if (position.complete) {
+            throw new IOException(String.format("The sweep in %s is already complete, there is nothing to resume.", file));
+        }
+
+        truncateCSV(file, position.rows);
+
+        if (binary != null && Files.exists(Paths.get(binary))) {
+            BinaryResultWriter.truncate(binary, position.rows);
+        }
+
+        return position;
+
+    }
+
+    /**
+     * Returns whether the journal for the given results file says its sweep was completed (with all of its rows making
+     * it into the file).
+     *
+     * @param file Results (CSV) file
+     *
+     * @return Completed?
+     *
+     * @throws IOException Upon the files not being readable, or the journal not making sense
+     */
+    public static boolean isComplete(String file) throws IOException {
+        Position position = read(file, null);
+        return position != null && position.complete;
+    }
+
+    private static Position read(String file, String binary) throws IOException {
+
+        Path path = Paths.get(pathFor(file));
+
+        if (!Files.exists(path) || !Files.exists(Paths.get(file))) {
+            return null;
+        }
+
+        // Ignore the last line if it is only half-written (ie we died while writing it)
+        String              text        = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        String[]            lines       = text.substring(0, text.lastIndexOf('\n') + 1).split("\n");
+        SweepParameters     params      = new SweepParameters();
+        Map<String, String> instruments = new LinkedHashMap<>();
+        String              type        = null;
+        boolean             complete    = false;
+        long                stored      = countRows(file);
+        long                last        = 0;
+        long                rows        = 0;
+        int                 outer       = 0;
+        int                 inner       = 0;
+
+        // A missing binary file is written afresh when resuming, so only one that exists can hold us back
+        if (binary != null && Files.exists(Paths.get(binary))) {
+            stored = Math.min(stored, BinaryResultWriter.rowCount(binary));
+        }
+
+        for (String line : lines) {
+
+            // Values may be empty (eg no device name) or contain spaces, so only split as far as the first space
+            String[] words = split(line);
+
+            switch (words[0]) {
+
+                case "type":
+                    type = words[1];
+                    break;
+
+                case "param":
+                    words = split(words[1]);
+                    params.set(words[0], words[1]);
+                    break;
+
+                case "instrument":
+                    words = split(words[1]);
+                    instruments.put(words[0], words[1]);
+                    break;
+
+                case "point":
+
+                    String[] numbers = line.trim().split(" ");
+                    long     done    = Long.parseLong(numbers[1]);
+
+                    last = done;
+
+                    // Only points whose rows have all made it into the results file(s) count
+                    if (done <= stored) {
+                        rows  = done;
+                        outer = Integer.parseInt(numbers[2]);
+                        inner = Integer.parseInt(numbers[3]);
+                    }
+
+                    break;
+
+                case "complete":
+                    complete = true;
+                    break;
+
+            }
+
+        }
+
+        if (type == null) {
+            throw new IOException(path + " is not a sweep journal.");
+        }
+
+        // A sweep only counts as complete if all of its rows also made it into the results file(s)
+        return new Position(type, params, instruments, complete && last <= stored, rows, outer, inner);
+
+    }
+
+    /**
+     * Splits a line at its first space, into what comes before and what comes after (which is empty if there is no
+     * space).
+     */
+    private static String[] split(String line) {
+
+        int space = line.indexOf(' ');
+
+        return space < 0 ? new String[]{line, ""} : new String[]{line.substring(0, space), line.substring(space + 1)};
+
+    }
+
+    /**
+     * Returns a description of which instrument a channel is, for recording in (and checking against) a journal: the
+     * driver, the address and which of its channels it is (0 for a single-channel SMU). So a sweep cannot be resumed
+     * with its SMUs swapped round, or on a different unit of the same model.
+     *
+     * @param channel Channel (or null)
+     *
+     * @return Description
+     *
+     * @throws Exception Upon the channels of a multi-channel SMU not being retrievable
+     */
+    public static String describe(Channel channel) throws Exception {
+
+        if (channel == null) {
+            return "none";
+        }
+
+        Channel base = channel.unwrap();
+
+        if (base instanceof SimulatedSMU) {
+
+            SimulatedInstrument instrument = ((SimulatedSMU) base).getInstrument();
+            int                 number     = 0;
+
+            while (number < instrument.getNumChannels() && instrument.getChannel(number) != base) {
+                number++;
+            }
+
+            return describe(SimulatedInstrument.class.getName(), instrument.getName(), number);
+
+        }
+
+        if (base instanceof SMUChannel) {
+
+            SMU    smu        = ((SMUChannel) base).getSMU();
+            Object instrument = base.getInstrument();
+            int    number     = 0;
+
+            if (instrument instanceof MCSMU) {
+
+                MCSMU mcsmu = (MCSMU) instrument;
+
+                while (number < mcsmu.getNumChannels() && mcsmu.getChannel(number) != smu) {
+                    number++;
+                }
+
+            }
+
+            // The instrument may not be known (see Main.getInstrument(...)), in which case all we have is the SMU
+            Object device = instrument instanceof SMU ? instrument : smu;
+
+            return describe(device.getClass().getName(), address(device, smu), number);
+
+        }
+
+        return describe(base.getClass().getName(), "unknown", 0);
+
+    }
+
+    private static String describe(String driver, String address, int channel) {
+        return String.format("%s at %s channel %d", driver, address, channel);
+    }
+
+    private static String address(Object... devices) {
+
+        for (Object device : devices) {
+
+            if (device instanceof VISADevice && ((VISADevice) device).getAddress() != null) {
+                return ((VISADevice) device).getAddress().getVISAAddress();
+            }
+
+        }
+
+        return "unknown";
+
+    }
+
+    /**
+     * Records that the given number of rows have been measured, taking us up to the given position.
+     *
+     * @param rows  Total rows measured so far (including any from before resuming)
+     * @param outer Index of the outer-loop step to carry on from
+     * @param inner Index into that step's inner sweep(s) to carry on from
+     *
+     * @throws IOException Upon the journal not being writable
+     */
+    public synchronized void point(long rows, int outer, int inner) throws IOException {
+        write(String.format("point %d %d %d%n", rows, outer, inner));
+    }
+
+    /**
+     * Records that the sweep finished, so there is nothing to resume.
+     *
+     * @throws IOException Upon the journal not being writable
+     */
+    public synchronized void complete() throws IOException {
+        write("complete\n");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+        }
+
+    }
+
+    private void write(String text) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+    }
+
+    /**
+     * Returns the number of complete rows (ie lines ending in a new-line, after the header) in a CSV file.
+     */
+    private static long countRows(String file) throws IOException {
+        return Math.max(0, endOfRow(file, Long.MAX_VALUE)[1] - 1);
+    }
+
+    /**
+     * Cuts a CSV file back to its header and the given number of rows.
+     */
+    private static void truncateCSV(String file, long rows) throws IOException {
+
+        long end = endOfRow(file, rows + 1)[0];
+
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+        }
+
+    }
+
+    /**
+     * Finds the end (ie just after the new-line) of the given line of a file, or of the last complete line if there are
+     * not that many.
+     *
+     * @return {position of the end of that line, number of lines up to there}
+     */
+    private static long[] endOfRow(String file, long lines) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+
+            ByteBuffer buffer   = ByteBuffer.allocateDirect(64 * 1024);
+            long       position = 0;
+            long       end      = 0;
+            long       count    = 0;
+
+            while (count < lines && channel.read(buffer) > 0) {
+
+                buffer.flip();
+
+                while (buffer.hasRemaining() && count < lines) {
+
+                    position++;
+
+                    if (buffer.get() == '\n') {
+                        end = position;
+                        count++;
+                    }
+
+                }
+
+                buffer.clear();
+
+            }
+
+            return new long[]{end, count};
+
+        }
+
+    }
+
+}
@@ -0,0 +1,389 @@
+package Experiment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the parameters for a single transfer or output sweep, as entered in the GUI (or read from elsewhere).
+ */
+public class SweepParameters {
+
+    public double  minGate;
+    public double  maxGate;
+    public int     gateSteps;
+    public double  minSD;
+    public double  maxSD;
+    public int     sdSteps;
+    public int     averageCount;
+    public double  delay;               // Delay between setting and measuring [s]
+    public double  integrationTime;     // [s]
+    public boolean fourProbe = false;
+    public boolean buffered  = false;   // Use instrument-side buffered sweeps where possible?
+    public String  device    = "";      // Name of the device measured (see RunStore)
+
+    // ==== Adaptive Settling ==========================================================================================
+    public boolean adaptiveSettling   = false;  // Stop waiting as soon as the drain current has settled?
+    public double  settleRelTolerance = 0.01;   // Relative agreement between successive readings to count as settled
+    public double  settleAbsTolerance = 1e-12;  // Absolute agreement between successive readings to count as settled [A]
+
+    // ==== Adaptive Gate Sampling (transfer curves only, gateSteps becomes the maximum number of points) ==============
+    public boolean adaptiveGate       = false;  // Concentrate gate voltages where the transfer curve changes fastest?
+    public int     coarseGateSteps    = 9;      // Number of evenly-spaced gate voltages to start with
+    public double  logTolerance       = 0.5;    // Max. change in log10|Id| between neighbouring points [decades]
+    public double  sqrtTolerance      = 0.1;    // Max. change in sqrt|Id| between neighbouring points [fraction of range]
+
+    // ==== Step-Size-Aware Settling (see SweepPlanner) ================================================================
+    public boolean stepSettling       = false;  // Scale the delay with the size of the voltage step just taken?
+    public double  minSettleFactor    = 0.2;    // Smallest fraction of the delay to wait (eg after a step of zero)
+    public double  maxSettleFactor    = 5.0;    // Largest multiple of the delay to wait (eg after a big jump)
+
+    // ==== Sequential Averaging (see SequentialAverager, replaces averageCount when on) ===============================
+    public boolean sequentialAveraging = false; // Keep taking readings until the mean is precise enough?
+    public double  targetPrecision     = 0.01;  // Standard error of the mean to aim for, relative to the mean
+    public double  precisionFloor      = 1e-13; // Standard error of the mean that is always good enough [A]
+    public int     minSamples          = 3;     // Fewest readings to take at each point
+    public int     maxSamples          = 50;    // Most readings to take at each point
+    public double  outlierThreshold    = 5.0;   // Drop readings this many robust std. devs from the median (0 = never)
+
+    // ==== Current Range Planning (see RangePlanner) ==================================================================
+    public boolean rangePlanning      = false;  // Pick the drain current range for each point instead of auto-ranging?
+    public double  rangeHeadroom      = 3.0;    // How far above the predicted current the range must go
+    public double  lowestRange        = 1e-9;   // Smallest current range to use [A]
+
+    // ==== Device Geometry (see ParameterExtractor, transfer curves only) =============================================
+    public double  channelWidth       = 1e-3;    // [m]
+    public double  channelLength      = 20e-6;   // [m]
+    public double  gateCapacitance    = 1.15e-4; // Per unit area [F/m^2] (eg 300 nm of SiO2)
+
+    // ==== Bias Stress (see SweepEngine.runStress(...)) ===============================================================
+    public double  stressGate         = -60.0;  // Gate voltage to hold [V]
+    public double  stressSD           = -5.0;   // SD voltage to hold [V]
+    public double  stressTime         = 3600.0; // How long to hold them for [s]
+    public double  firstCheck         = 10.0;   // Stress time of the first transfer sweep after the start [s]
+    public int     checksPerDecade    = 0;      // Transfer sweeps per decade of stress time after that (0 = none)
+
+    /**
+     * Returns the default parameters for a transfer curve sweep.
+     *
+     * @return Default transfer curve parameters
+     */
+    public static SweepParameters transferDefaults() {
+
+        SweepParameters params = new SweepParameters();
+
+        params.minGate         = 0.0;
+        params.maxGate         = -60.0;
+        params.gateSteps       = 61;
+        params.minSD           = -5.0;
+        params.maxSD           = -60.0;
+        params.sdSteps         = 2;
+        params.averageCount    = 5;
+        params.delay           = 0.5;
+        params.integrationTime = 1D / 50D;
+
+        return params;
+
+    }
+
+    /**
+     * Returns the default parameters for an output curve sweep.
+     *
+     * @return Default output curve parameters
+     */
+    public static SweepParameters outputDefaults() {
+
+        SweepParameters params = new SweepParameters();
+
+        params.minGate         = 0.0;
+        params.maxGate         = -60.0;
+        params.gateSteps       = 7;
+        params.minSD           = 0.0;
+        params.maxSD           = -60.0;
+        params.sdSteps         = 61;
+        params.averageCount    = 5;
+        params.delay           = 0.5;
+        params.integrationTime = 1D / 50D;
+
+        return params;
+
+    }
+
+    /**
+     * Returns the default parameters for a bias stress run (see SweepEngine.runStress(...)).
+     *
+     * @return Default bias stress parameters
+     */
+    public static SweepParameters stressDefaults() {
+
+        SweepParameters params = new SweepParameters();
+
+        params.averageCount    = 1;
+        params.integrationTime = 1D / 50D;
+
+        return params;
+
+    }
+
+    /**
+     * Sets the parameter with the given name (the same as the field name, eg "minGate") from its text representation.
+     *
+     * @param name  Name of the parameter
+     * @param value Value, as text
+     *
+     * @throws IllegalArgumentException If there is no such parameter, or the value cannot be parsed
+     */
+    public void set(String name, String value) {
+
+        try {
+
+            switch (name) {
+
+                case "minGate":
+                    minGate = Double.parseDouble(value);
+                    break;
+
+                case "maxGate":
+                    maxGate = Double.parseDouble(value);
+                    break;
+
+                case "gateSteps":
+                    gateSteps = Integer.parseInt(value);
+                    break;
+
+                case "minSD":
+                    minSD = Double.parseDouble(value);
+                    break;
+
+                case "maxSD":
+                    maxSD = Double.parseDouble(value);
+                    break;
+
+                case "sdSteps":
+                    sdSteps = Integer.parseInt(value);
+                    break;
+
+                case "averageCount":
+                    averageCount = Integer.parseInt(value);
+                    break;
+
+                case "delay":
+                    delay = Double.parseDouble(value);
+                    break;
+
+                case "integrationTime":
+                    integrationTime = Double.parseDouble(value);
+                    break;
+
+                case "fourProbe":
+                    fourProbe = Boolean.parseBoolean(value);
+                    break;
+
+                case "buffered":
+                    buffered = Boolean.parseBoolean(value);
+                    break;
+
+                case "adaptiveSettling":
+                    adaptiveSettling = Boolean.parseBoolean(value);
+                    break;
+
+                case "settleRelTolerance":
+                    settleRelTolerance = Double.parseDouble(value);
+                    break;
+
+                case "settleAbsTolerance":
+                    settleAbsTolerance = Double.parseDouble(value);
+                    break;
+
+                case "adaptiveGate":
+                    adaptiveGate = Boolean.parseBoolean(value);
+                    break;
+
+                case "coarseGateSteps":
+                    coarseGateSteps = Integer.parseInt(value);
+                    break;
+
+                case "logTolerance":
+                    logTolerance = Double.parseDouble(value);
+                    break;
+
+                case "sqrtTolerance":
+                    sqrtTolerance = Double.parseDouble(value);
+                    break;
+
+                case "stepSettling":
+                    stepSettling = Boolean.parseBoolean(value);
+                    break;
+
+                case "minSettleFactor":
+                    minSettleFactor = Double.parseDouble(value);
+                    break;
+
+                case "maxSettleFactor":
+                    maxSettleFactor = Double.parseDouble(value);
+                    break;
+
+                case "sequentialAveraging":
+                    sequentialAveraging = Boolean.parseBoolean(value);
+                    break;
+
+                case "targetPrecision":
+                    targetPrecision = Double.parseDouble(value);
+                    break;
+
+                case "precisionFloor":
+                    precisionFloor = Double.parseDouble(value);
+                    break;
+
+                case "minSamples":
+                    minSamples = Integer.parseInt(value);
+                    break;
+
+                case "maxSamples":
+                    maxSamples = Integer.parseInt(value);
+                    break;
+
+                case "device":
+                    device = value;
+                    break;
+
+                case "outlierThreshold":
+                    outlierThreshold = Double.parseDouble(value);
+                    break;
+
+                case "rangePlanning":
+                    rangePlanning = Boolean.parseBoolean(value);
+                    break;
+
+                case "rangeHeadroom":
+                    rangeHeadroom = Double.parseDouble(value);
+                    break;
+
+                case "lowestRange":
+                    lowestRange = Double.parseDouble(value);
+                    break;
+
+                case "channelWidth":
+                    channelWidth = Double.parseDouble(value);
+                    break;
+
+                case "channelLength":
+                    channelLength = Double.parseDouble(value);
+                    break;
+
+                case "gateCapacitance":
+                    gateCapacitance = Double.parseDouble(value);
+                    break;
+
+                case "stressGate":
+                    stressGate = Double.parseDouble(value);
+                    break;
+
+                case "stressSD":
+                    stressSD = Double.parseDouble(value);
+                    break;
+
+                case "stressTime":
+                    stressTime = Double.parseDouble(value);
+                    break;
+
+                case "firstCheck":
+                    firstCheck = Double.parseDouble(value);
+                    break;
+
+                case "checksPerDecade":
+                    checksPerDecade = Integer.parseInt(value);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown sweep parameter \"" + name + "\".");
+
+            }
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value \"" + value + "\" for sweep parameter \"" + name + "\".");
+        }
+
+    }
+
+    /**
+     * Returns every parameter by name (the same names as accepted by set(...)), with its value as text.
+     *
+     * @return Map of parameter name to value, in declaration order
+     */
+    public Map<String, String> toMap() {
+
+        Map<String, String> map = new LinkedHashMap<>();
+
+        map.put("minGate", String.valueOf(minGate));
+        map.put("maxGate", String.valueOf(maxGate));
+        map.put("gateSteps", String.valueOf(gateSteps));
+        map.put("minSD", String.valueOf(minSD));
+        map.put("maxSD", String.valueOf(maxSD));
+        map.put("sdSteps", String.valueOf(sdSteps));
+        map.put("averageCount", String.valueOf(averageCount));
+        map.put("delay", String.valueOf(delay));
+        map.put("integrationTime", String.valueOf(integrationTime));
+        map.put("fourProbe", String.valueOf(fourProbe));
+        map.put("buffered", String.valueOf(buffered));
+        map.put("device", device);
+        map.put("adaptiveSettling", String.valueOf(adaptiveSettling));
+        map.put("settleRelTolerance", String.valueOf(settleRelTolerance));
+        map.put("settleAbsTolerance", String.valueOf(settleAbsTolerance));
+        map.put("adaptiveGate", String.valueOf(adaptiveGate));
+        map.put("coarseGateSteps", String.valueOf(coarseGateSteps));
+        map.put("logTolerance", String.valueOf(logTolerance));
+        map.put("sqrtTolerance", String.valueOf(sqrtTolerance));
+        map.put("stepSettling", String.valueOf(stepSettling));
+        map.put("minSettleFactor", String.valueOf(minSettleFactor));
+        map.put("maxSettleFactor", String.valueOf(maxSettleFactor));
+        map.put("sequentialAveraging", String.valueOf(sequentialAveraging));
+        map.put("targetPrecision", String.valueOf(targetPrecision));
+        map.put("precisionFloor", String.valueOf(precisionFloor));
+        map.put("minSamples", String.valueOf(minSamples));
+        map.put("maxSamples", String.valueOf(maxSamples));
+        map.put("outlierThreshold", String.valueOf(outlierThreshold));
+        map.put("rangePlanning", String.valueOf(rangePlanning));
+        map.put("rangeHeadroom", String.valueOf(rangeHeadroom));
+        map.put("lowestRange", String.valueOf(lowestRange));
+        map.put("channelWidth", String.valueOf(channelWidth));
+        map.put("channelLength", String.valueOf(channelLength));
+        map.put("gateCapacitance", String.valueOf(gateCapacitance));
+        map.put("stressGate", String.valueOf(stressGate));
+        map.put("stressSD", String.valueOf(stressSD));
+        map.put("stressTime", String.valueOf(stressTime));
+        map.put("firstCheck", String.valueOf(firstCheck));
+        map.put("checksPerDecade", String.valueOf(checksPerDecade));
+
+        return map;
+
+    }
+
+    /**
+     * Returns the delay time, converted to milli-seconds.
+     *
+     * @return Delay [ms]
+     */
+    public int getDelayMSec() {
+        return (int) (delay * 1000);
+    }
+
+    /**
+     * Returns how many readings the instruments should average for each measurement they return (just one when
+     * averaging sequentially, as the averaging is then done in software instead).
+     *
+     * @return Instrument averaging count
+     */
+    public int getInstrumentAverageCount() {
+        return sequentialAveraging ? 1 : averageCount;
+    }
+
+    /**
+     * Returns the most readings that could be taken at each point (with sequential averaging, usually fewer are).
+     *
+     * @return Max. readings per point
+     */
+    public int getMaxReadingsPerPoint() {
+        return sequentialAveraging ? maxSamples : averageCount;
+    }
+
+}
@@ -0,0 +1,158 @@
+package Experiment;
+
+import JISA.Util;
+
+/**
+ * Works out how long to wait before measuring each point of a sweep, and predicts how long a whole sweep will take.
+ * <p>
+ * With step-size-aware settling (SweepParameters.stepSettling), the delay before each point is scaled by the size of
+ * the voltage step just taken (the larger of the SD and gate steps) relative to the regular step of the inner sweep,
+ * limited to between minSettleFactor and maxSettleFactor times the delay. So the first point after a jump between inner
+ * sweeps gets longer to settle, and repeated points (eg at the turn-around of a forward/reverse sweep) hardly any. The
+ * very first point comes straight after the outputs are turned on, the biggest step of all, so always gets the longest.
+ * <p>
+ * The order of points is not changed: both sweep types already come back to where they started on their reverse pass,
+ * so each inner sweep begins where the last one ended and the only jumps are the outer steps between them. Serpentine
+ * ordering (running every other inner sweep reverse-pass first) would not remove any jumps, and would change which way
+ * round the hysteresis loop is measured.
+ */
+public class SweepPlanner {
+
+    private final SweepParameters params;
+    private final double          nominalStep;
+    private       double          lastSD;
+    private       double          lastGate;
+    private       boolean         first = true;
+
+    /**
+     * Creates a planner.
+     *
+     * @param params      Sweep parameters
+     * @param nominalStep Regular step size of the inner sweep [V]
+     * @param startSD     SD voltage the sweep starts from [V]
+     * @param startGate   Gate voltage the sweep starts from [V]
+     */
+    public SweepPlanner(SweepParameters params, double nominalStep, double startSD, double startGate) {
+        this.params      = params;
+        this.nominalStep = nominalStep;
+        this.lastSD      = startSD;
+        this.lastGate    = startGate;
+    }
+
+    /**
+     * Returns a planner for a transfer sweep (where the gate is the inner sweep).
+     *
+     * @param params Sweep parameters
+     *
+     * @return Planner
+     */
+    public static SweepPlanner forTransfer(SweepParameters params) {
+        return new SweepPlanner(params, step(params.minGate, params.maxGate, params.gateSteps), params.minSD, params.minGate);
+    }
+
+    /**
+     * Returns a planner for an output sweep (where SD is the inner sweep).
+     *
+     * @param params Sweep parameters
+     *
+     * @return Planner
+     */
+    public static SweepPlanner forOutput(SweepParameters params) {
+        return new SweepPlanner(params, step(params.minSD, params.maxSD, params.sdSteps), params.minSD, params.minGate);
+    }
+
+    /**
+     * Returns how long to wait before measuring at the given voltages, given the voltages of the previous point (and
+     * remembers these for next time).
+     *
+     * @param VSD SD voltage being measured at [V]
+     * @param VG  Gate voltage being measured at [V]
+     *
+     * @return Delay [ms]
+     */
+    public long settleMSec(double VSD, double VG) {
+
+        double step = Math.max(Math.abs(VSD - lastSD), Math.abs(VG - lastGate));
+
+        boolean start = first;
+
+        lastSD   = VSD;
+        lastGate = VG;
+        first    = false;
+
+        if (!params.stepSettling || nominalStep <= 0) {
+            return params.getDelayMSec();
+        }
+
+        // The outputs have only just been turned on (from 0 V, not from the start voltages), so wait as long as we can
+        double factor = start ? Math.max(1.0, params.maxSettleFactor) : Math.min(params.maxSettleFactor, Math.max(params.minSettleFactor, step / nominalStep));
+
+        return Math.round(params.getDelayMSec() * factor);
+
+    }
+
+    /**
+     * Predicts how long a transfer sweep will take, counting only time spent settling and integrating (not talking to
+     * the instruments). With adaptive gate sampling or sequential averaging this is the longest it could take.
+     *
+     * @param params   Sweep parameters
+     * @param buffered Whether it will be run as buffered sweeps (which always use the fixed delay)
+     *
+     * @return Predicted duration [s]
+     */
+    public static double predictTransfer(SweepParameters params, boolean buffered) {
+
+        SweepPlanner planner = forTransfer(params);
+        double       total   = 0.0;
+
+        for (double VSD : Util.makeLinearArray(params.minSD, params.maxSD, params.sdSteps)) {
+            for (double VG : Util.symArray(Util.makeLinearArray(params.minGate, params.maxGate, params.gateSteps))) {
+                total += planner.predictPoint(VSD, VG, buffered);
+            }
+        }
+
+        return total;
+
+    }
+
+    /**
+     * Predicts how long an output sweep will take, counting only time spent settling and integrating (not talking to the
+     * instruments). With sequential averaging this is the longest it could take.
+     *
+     * @param params   Sweep parameters
+     * @param buffered Whether it will be run as buffered sweeps (which always use the fixed delay)
+     *
+     * @return Predicted duration [s]
+     */
+    public static double predictOutput(SweepParameters params, boolean buffered) {
+
+        SweepPlanner planner = forOutput(params);
+        double       total   = 0.0;
+
+        double[] forward = Util.makeLinearArray(params.minSD, params.maxSD, params.sdSteps);
+        double[] reverse = Util.makeLinearArray(params.maxSD, params.minSD, params.sdSteps);
+
+        for (double VG : Util.makeLinearArray(params.minGate, params.maxGate, params.gateSteps)) {
+
+            for (double[] pass : new double[][]{forward, reverse}) {
+                for (double VSD : pass) {
+                    total += planner.predictPoint(VSD, VG, buffered);
+                }
+            }
+
+        }
+
+        return total;
+
+    }
+
+    private double predictPoint(double VSD, double VG, boolean buffered) {
+        long settle = settleMSec(VSD, VG);
+        return (buffered ? params.getDelayMSec() : settle) / 1e3 + params.getMaxReadingsPerPoint() * params.integrationTime;
+    }
+
+    private static double step(double from, double to, int steps) {
+        return steps > 1 ? Math.abs(to - from) / (steps - 1) : Math.abs(to - from);
+    }
+
+}
@@ -0,0 +1,30 @@
+package Experiment;
+
+/**
+ * A multi-channel instrument that can set, or measure, several of its channels in one synchronised operation (one
+ * command and one trigger) rather than one channel at a time.
+ */
+public interface SynchronousInstrument {
+
+    /**
+     * Sets the source voltage of each given channel simultaneously, as one command.
+     *
+     * @param channels Channels to set (must all belong to this instrument)
+     * @param voltages Voltage to set each channel to [V]
+     *
+     * @throws Exception Upon something going wrong
+     */
+    void setVoltages(Channel[] channels, double[] voltages) throws Exception;
+
+    /**
+     * Measures the current on each given channel simultaneously, as one command with one trigger.
+     *
+     * @param channels Channels to measure (must all belong to this instrument)
+     *
+     * @return Currents [A], in the same order as the channels
+     *
+     * @throws Exception Upon something going wrong
+     */
+    double[] measureCurrents(Channel... channels) throws Exception;
+
+}
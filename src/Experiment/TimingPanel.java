@@ -0,0 +1,93 @@
+package Experiment;
+
+import JISA.Control.Field;
+import JISA.GUI.Fields;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows a live summary of the phase timings of the sweep in progress: one line per phase plus the instrumentation
+ * overhead.
+ * <p>
+ * Added to a pipeline as a (lossy) consumer, it ignores the rows themselves and just refreshes the summary, at most
+ * once every REFRESH_TIME, so it costs the acquisition thread nothing.
+ */
+public class TimingPanel implements Pipeline.Consumer {
+
+    private static final double REFRESH_TIME = 1.0; // Min. time between refreshes [s]
+
+    private final Fields                               fields;
+    private final Map<PhaseTimer.Phase, Field<String>> phases    = new EnumMap<>(PhaseTimer.Phase.class);
+    private final Field<String>                        overhead;
+    private       PhaseTimer                           timer;
+    private       long                                 refreshed = 0;
+
+    /**
+     * Creates a timing panel.
+     *
+     * @param title Title of the panel
+     */
+    public TimingPanel(String title) {
+
+        fields = new Fields(title);
+
+        for (PhaseTimer.Phase phase : PhaseTimer.Phase.values()) {
+            phases.put(phase, fields.addTextField(phase.getDescription()));
+        }
+
+        fields.addSeparator();
+        overhead = fields.addTextField("Instrumentation Overhead");
+
+    }
+
+    public Fields getFields() {
+        return fields;
+    }
+
+    /**
+     * Starts showing the given timer's timings (eg at the start of a new run).
+     *
+     * @param timer Phase timer
+     */
+    public synchronized void setTimer(PhaseTimer timer) {
+        this.timer     = timer;
+        this.refreshed = 0;
+        refresh();
+    }
+
+    @Override
+    public synchronized void consume(List<double[]> rows) {
+
+        if (System.nanoTime() - refreshed >= REFRESH_TIME * 1e9) {
+            refresh();
+        }
+
+    }
+
+    /**
+     * Shows the latest timings straight away.
+     */
+    public synchronized void refresh() {
+
+        refreshed = System.nanoTime();
+
+        if (timer == null) {
+            return;
+        }
+
+        for (Map.Entry<PhaseTimer.Phase, Field<String>> entry : phases.entrySet()) {
+            entry.getValue().set(timer.getCount(entry.getKey()) > 0 ? timer.getSummary(entry.getKey()) : "-");
+        }
+
+        overhead.set(String.format(
+                "%d timings, %.3f ms (%.4f%% of run)",
+                timer.getTotalCount(),
+                timer.getOverhead() * 1e3,
+                100.0 * timer.getOverhead() / timer.getElapsed()
+        ));
+
+    }
+
+}